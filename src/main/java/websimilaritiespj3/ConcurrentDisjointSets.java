@@ -0,0 +1,137 @@
+package websimilaritiespj3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free union-find over the elements 0 .. n - 1, so that many threads can
+ * union edges as they produce them. Parents live in an
+ * {@link AtomicIntegerArray} and every change is a compare-and-set, in the
+ * style of Anderson and Woll.
+ * <p>
+ * A union links the root with the lower priority under the one with the
+ * higher priority, where the priority is a fixed pseudo-random permutation of
+ * the element numbers. Priorities therefore rise along every path, so
+ * concurrent links can never form a cycle, and random linking keeps the trees
+ * shallow in expectation without a rank field. Finds halve the path they walk
+ * with compare-and-set, which only ever moves a node to a higher ancestor, and
+ * a lost race is simply ignored.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class ConcurrentDisjointSets {
+    private final AtomicIntegerArray parent; // parent[x] == x for a root
+    private final AtomicInteger setCount;
+
+    /**
+     * Constructs a ConcurrentDisjointSets instance with each element in a set
+     * of its own.
+     *
+     * @param elementCount The number of elements.
+     */
+    public ConcurrentDisjointSets(int elementCount) {
+        parent = new AtomicIntegerArray(elementCount);
+        for (int x = 0; x < elementCount; x++) {
+            parent.set(x, x);
+        }
+        setCount = new AtomicInteger(elementCount);
+    }
+
+    /**
+     * Finds the current root of the set that contains an element. Another
+     * thread may link that root under a new one at any time.
+     *
+     * @param x The element.
+     * @return The root of its set.
+     */
+    public int find(int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            int grandparent = parent.get(p);
+            if (p != grandparent) {
+                parent.compareAndSet(x, p, grandparent); // Halve the path; fine if another thread got there first
+            }
+            x = grandparent;
+        }
+    }
+
+    /**
+     * Merges the sets that contain two elements. Safe to call from any number
+     * of threads at once.
+     *
+     * @param a The first element.
+     * @param b The second element.
+     * @return True if this call merged two different sets.
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            a = find(a);
+            b = find(b);
+            if (a == b) {
+                return false;
+            }
+            if (priority(a) > priority(b)) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            // Link a under b, unless another thread has linked a meanwhile
+            if (parent.compareAndSet(a, a, b)) {
+                setCount.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether two elements are in the same set. With unions running
+     * concurrently, the answer holds at some moment during the call.
+     *
+     * @param a The first element.
+     * @param b The second element.
+     * @return True if they are.
+     */
+    public boolean connected(int a, int b) {
+        while (true) {
+            a = find(a);
+            b = find(b);
+            if (a == b) {
+                return true;
+            }
+            if (parent.get(a) == a) {
+                return false; // a was still a root after b's root was found
+            }
+        }
+    }
+
+    /**
+     * Returns the number of disjoint sets.
+     *
+     * @return The set count.
+     */
+    public int setCount() {
+        return setCount.get();
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return The element count.
+     */
+    public int elementCount() {
+        return parent.length();
+    }
+
+    /**
+     * Returns the linking priority of an element: a multiplicative hash, which
+     * is a bijection on int, compared as unsigned so no two elements tie.
+     */
+    private static long priority(int x) {
+        return (x * 0x9E3779B9) & 0xffffffffL;
+    }
+}
@@ -0,0 +1,132 @@
+package websimilaritiespj3;
+
+import java.util.Arrays;
+
+/**
+ * A union-find (disjoint-set forest) over the elements 0 .. n - 1, held in two
+ * int arrays. Unions attach the smaller tree under the larger one and finds
+ * halve the path they walk, so every operation takes nearly constant amortized
+ * time. The number of sets is kept up to date on every union, and the size of
+ * each set is stored at its root.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class DisjointSets {
+    private int[] parent; // parent[x] == x for a root
+    private int[] size; // Size of the set, valid at roots only
+    private int elementCount;
+    private int setCount;
+
+    /**
+     * Constructs a DisjointSets instance with each element in a set of its own.
+     *
+     * @param elementCount The number of elements.
+     */
+    public DisjointSets(int elementCount) {
+        parent = new int[Math.max(elementCount, 16)];
+        size = new int[parent.length];
+        for (int x = 0; x < elementCount; x++) {
+            parent[x] = x;
+            size[x] = 1;
+        }
+        this.elementCount = elementCount;
+        this.setCount = elementCount;
+    }
+
+    /**
+     * Adds an element in a set of its own.
+     *
+     * @return The new element, which is the previous element count.
+     */
+    public int add() {
+        if (elementCount == parent.length) {
+            parent = Arrays.copyOf(parent, elementCount * 2);
+            size = Arrays.copyOf(size, elementCount * 2);
+        }
+        int x = elementCount++;
+        parent[x] = x;
+        size[x] = 1;
+        setCount++;
+        return x;
+    }
+
+    /**
+     * Finds the root of the set that contains an element, pointing every other
+     * node on the way at its grandparent.
+     *
+     * @param x The element.
+     * @return The root of its set.
+     */
+    public int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * Merges the sets that contain two elements.
+     *
+     * @param a The first element.
+     * @param b The second element.
+     * @return True if they were in different sets.
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (size[rootA] < size[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        setCount--;
+        return true;
+    }
+
+    /**
+     * Checks whether two elements are in the same set.
+     *
+     * @param a The first element.
+     * @param b The second element.
+     * @return True if they are.
+     */
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /**
+     * Returns the size of the set that contains an element.
+     *
+     * @param x The element.
+     * @return The number of elements in its set.
+     */
+    public int setSize(int x) {
+        return size[find(x)];
+    }
+
+    /**
+     * Returns the number of disjoint sets.
+     *
+     * @return The set count.
+     */
+    public int setCount() {
+        return setCount;
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return The element count.
+     */
+    public int elementCount() {
+        return elementCount;
+    }
+}
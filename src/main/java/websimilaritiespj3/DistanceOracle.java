@@ -0,0 +1,241 @@
+package websimilaritiespj3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The shortest-path distance between every pair of vertices of a
+ * {@link SiteGraph}, with the next hop of every shortest path, so a path
+ * length is a single array read and a path is rebuilt one hop at a time
+ * without any search.
+ * <p>
+ * Row t of the table holds, for every vertex v, the distance from v to t as a
+ * float and the vertex after v on a shortest path to t as a char, six bytes
+ * per pair in all. Since the graph is undirected, row t is exactly the
+ * shortest-path tree of t, and the rows are computed by running Dijkstra from
+ * every vertex in parallel.
+ * <p>
+ * The table can be saved to a file and mapped back into memory on a later
+ * run, so it costs no heap and no startup time as long as the graph has not
+ * changed. Like {@link Landmarks}, it records the signature of its graph, and
+ * only a file whose signature matches is mapped.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class DistanceOracle {
+    public static final int MAX_VERTICES = 4096; // About 100 MB of table
+    private static final int MAGIC = 0x57534430; // "WSD0"
+    private static final int HEADER_SIZE = 24; // Magic, vertex count, signature, padding
+    private static final char NO_HOP = Character.MAX_VALUE; // Unreachable, or the target itself
+    private static final int CHUNK_SIZE = 16; // Rows per parallel task
+    private static final int WRITE_BUFFER_SIZE = 1 << 16; // Bytes written to the file at a time
+
+    private final long graphSignature; // SiteGraph.signature() of the graph
+    private final int vertexCount;
+    private final FloatBuffer distances; // [target * n + vertex], infinity if unreachable
+    private final CharBuffer nextHops; // [target * n + vertex]
+
+    private DistanceOracle(long graphSignature, int vertexCount, FloatBuffer distances, CharBuffer nextHops) {
+        this.graphSignature = graphSignature;
+        this.vertexCount = vertexCount;
+        this.distances = distances;
+        this.nextHops = nextHops;
+    }
+
+    /**
+     * Computes the table of a graph.
+     *
+     * @param graph The graph, with at most {@link #MAX_VERTICES} vertices.
+     * @return The table.
+     * @throws IllegalArgumentException If the graph has too many vertices.
+     */
+    public static DistanceOracle compute(SiteGraph graph) {
+        int n = graph.vertexCount();
+        if (n > MAX_VERTICES) {
+            throw new IllegalArgumentException("Too many vertices for a distance table: " + n);
+        }
+        float[] distances = new float[n * n];
+        char[] nextHops = new char[n * n];
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            double[] tree = new double[n];
+            int[] parents = new int[n];
+            int[] entries = new int[n];
+            int end = Math.min(n, (chunk + 1) * CHUNK_SIZE);
+            for (int target = chunk * CHUNK_SIZE; target < end; target++) {
+                ShortestPathEngine.shortestPathTree(graph, target, tree, parents, entries);
+                int row = target * n;
+                for (int v = 0; v < n; v++) {
+                    boolean reached = tree[v] != Double.MAX_VALUE;
+                    distances[row + v] = reached ? (float) tree[v] : Float.POSITIVE_INFINITY;
+                    nextHops[row + v] = reached && parents[v] >= 0 ? (char) parents[v] : NO_HOP;
+                }
+            }
+        });
+        return new DistanceOracle(graph.signature(), n, FloatBuffer.wrap(distances), CharBuffer.wrap(nextHops));
+    }
+
+    /**
+     * Returns whether this table was computed for the given graph.
+     *
+     * @param graph The graph.
+     * @return True if the graph is unchanged since the table was computed.
+     */
+    public boolean matches(SiteGraph graph) {
+        return graph.vertexCount() == vertexCount && graph.signature() == graphSignature;
+    }
+
+    /**
+     * Returns the length of a shortest path between two vertices.
+     *
+     * @param source The starting vertex.
+     * @param target The destination vertex.
+     * @return The total similarity score of the path, 0 if the vertices are
+     *         the same, or infinity if there is no path.
+     */
+    public double distance(int source, int target) {
+        return distances.get(target * vertexCount + source);
+    }
+
+    /**
+     * Returns the vertex after the source on a shortest path to the target.
+     *
+     * @param source The starting vertex.
+     * @param target The destination vertex.
+     * @return The next vertex, or -1 if there is no path or the vertices are
+     *         the same.
+     */
+    public int nextHop(int source, int target) {
+        char hop = nextHops.get(target * vertexCount + source);
+        return hop == NO_HOP ? -1 : hop;
+    }
+
+    /**
+     * Rebuilds a shortest path by following next hops. Each hop takes the
+     * lightest edge to the next vertex, the one a shortest path uses.
+     *
+     * @param graph  The graph the table was computed for.
+     * @param source The starting vertex.
+     * @param target The destination vertex.
+     * @return The edges of the path in order, or an empty list if there is no
+     *         path or the two vertices are the same.
+     */
+    public List<SiteEdge> path(SiteGraph graph, int source, int target) {
+        int[] offsets = graph.offsets();
+        int[] ends = graph.ends();
+        int[] targets = graph.targets();
+        float[] weights = graph.weights();
+        SerializableList<SiteEdge> path = new SerializableList<>();
+        for (int at = source, hop = nextHop(at, target); hop >= 0; at = hop, hop = nextHop(at, target)) {
+            int entry = -1;
+            for (int p = offsets[at]; p < ends[at]; p++) {
+                if (targets[p] == hop && (entry < 0 || weights[p] < weights[entry])) {
+                    entry = p;
+                }
+            }
+            path.add(graph.edgeAt(at, entry));
+        }
+        return path;
+    }
+
+    /**
+     * Saves the table to a file, in a form that {@link #load} maps into
+     * memory. The file is written through the channel from a heap buffer
+     * under a temporary name and then renamed, so the temporary file is never
+     * mapped.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        Path file = Paths.get(path);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int cells = vertexCount * vertexCount;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(vertexCount).putLong(graphSignature);
+            buffer.position(HEADER_SIZE); // Zero padding
+            for (int i = 0; i < cells; i++) {
+                if (buffer.remaining() < 4) {
+                    write(channel, buffer);
+                }
+                buffer.putFloat(distances.get(i));
+            }
+            for (int i = 0; i < cells; i++) {
+                if (buffer.remaining() < 2) {
+                    write(channel, buffer);
+                }
+                buffer.putChar(nextHops.get(i));
+            }
+            write(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes out and clears a buffer.
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps a table saved with {@link #save} into memory, if it was computed
+     * for the given graph. The header is read and checked first, so a table
+     * for another graph is never mapped. The table is read from the file as
+     * it is used, rather than loaded up front.
+     *
+     * @param path  The file to read.
+     * @param graph The graph the table must match.
+     * @return The table, or null if it was computed for another graph.
+     * @throws IOException If the file cannot be read or does not hold a table.
+     */
+    public static DistanceOracle load(String path, SiteGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read until the header is full or the file ends
+            }
+            if (header.hasRemaining()) {
+                throw new IOException("Not a distance table: " + path);
+            }
+            header.flip();
+            int magic = header.getInt();
+            int n = header.getInt();
+            long signature = header.getLong();
+            long cells = (long) n * n;
+            if (magic != MAGIC || n < 0 || n > MAX_VERTICES || size != HEADER_SIZE + cells * 6) {
+                throw new IOException("Not a distance table: " + path);
+            }
+            if (n != graph.vertexCount() || signature != graph.signature()) {
+                return null; // Stale, and left unmapped so it can be replaced
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(HEADER_SIZE);
+            FloatBuffer distances = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            buffer.position(HEADER_SIZE + (int) cells * 4);
+            CharBuffer nextHops = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+            return new DistanceOracle(signature, n, distances, nextHops); // The mapping outlives the channel
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package websimilaritiespj3;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Set;
 
@@ -14,14 +18,37 @@ import java.util.Set;
  */
 public class FrequencyTable implements Serializable {
     private static final long serialVersionUID = 1L;
+    // "counts" holds the current form; "table" is the boxed HT<String, Integer>
+    // written by earlier versions and is only read, never written. "minHash" is
+    // the MinHash signature, written when it has been computed.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("counts", TermCountMap.class),
+            new ObjectStreamField("table", HT.class),
+            new ObjectStreamField("minHash", int[].class)
+    };
     private transient DataPersistenceManager dataPersistenceManager;
-    private HT<String, Integer> table;
+    private transient volatile TermCountMap table; // Word counts, or null while the frozen vector stands in
+    private transient int totalWordCount; // Sum of all counts, kept up to date on every change
+    private transient long sumOfSquares; // Sum of squared counts, i.e. the squared L2 norm
+    private transient volatile SparseTermVector frozen; // Cached result of freeze(), cleared on change
+    private transient volatile int[] minHash; // MinHash signature, cleared on change
 
     /**
      * Constructs an empty FrequencyTable.
      */
     public FrequencyTable() {
-        table = new HT<>();
+        table = new TermCountMap();
+        dataPersistenceManager = new DataPersistenceManager();
+    }
+
+    /**
+     * Constructs an empty FrequencyTable sized for the given number of unique
+     * words.
+     * 
+     * @param expectedSize The number of unique words expected.
+     */
+    FrequencyTable(int expectedSize) {
+        table = new TermCountMap(expectedSize);
         dataPersistenceManager = new DataPersistenceManager();
     }
 
@@ -32,12 +59,36 @@ public class FrequencyTable implements Serializable {
      * @param frequency The frequency of the word.
      */
     public void addWord(String word, int frequency) {
-        word = word.toLowerCase().replaceAll("[^a-zA-Z0-9]", "");
+        word = WordTokenizer.normalize(word);
         if (!word.isEmpty()) {
-            table.put(word, table.getOrDefault(word, 0) + frequency);
+            recordIncrement(table().add(word, frequency), frequency);
         }
     }
 
+    /**
+     * Adds an already normalized word held in a character buffer, without
+     * creating a String unless the word is new to the table.
+     * 
+     * @param chars     The buffer holding the word.
+     * @param length    The length of the word.
+     * @param frequency The frequency of the word.
+     */
+    void addWord(char[] chars, int length, int frequency) {
+        recordIncrement(table().add(chars, length, frequency), frequency);
+    }
+
+    /**
+     * Updates the cached totals after a word's count grew by {@code delta} to
+     * {@code newCount}.
+     */
+    private void recordIncrement(int newCount, int delta) {
+        frozen = null;
+        minHash = null;
+        long oldCount = newCount - delta;
+        totalWordCount += delta;
+        sumOfSquares += (long) newCount * newCount - oldCount * oldCount;
+    }
+
     /**
      * Gets the frequency of a specific word in the table.
      * 
@@ -45,7 +96,8 @@ public class FrequencyTable implements Serializable {
      * @return The frequency of the word.
      */
     public int getFrequency(String word) {
-        return table.getOrDefault(word.toLowerCase(), 0);
+        TermCountMap counts = table;
+        return counts != null ? counts.get(word.toLowerCase()) : frozen.getFrequency(word.toLowerCase());
     }
 
     /**
@@ -54,11 +106,14 @@ public class FrequencyTable implements Serializable {
      * @param other The other frequency table to merge with.
      */
     public void merge(FrequencyTable other) {
-        Set<String> otherKeys = other.keySet();
-        for (String word : otherKeys) {
-            int frequency = this.getFrequency(word);
-            int otherFrequency = other.getFrequency(word);
-            this.table.put(word, frequency + otherFrequency);
+        TermCountMap otherTable = other.counts();
+        TermCountMap table = table();
+        for (int slot = 0; slot < otherTable.capacity(); slot++) {
+            String word = otherTable.keyAt(slot);
+            if (word != null) {
+                int otherFrequency = otherTable.countAt(slot);
+                recordIncrement(table.add(word, otherFrequency), otherFrequency);
+            }
         }
     }
 
@@ -73,10 +128,18 @@ public class FrequencyTable implements Serializable {
             throw new IllegalArgumentException("Divisor cannot be zero.");
         }
 
-        Set<String> keys = table.keySet();
-        for (String word : keys) {
-            int currentFrequency = table.get(word);
-            table.put(word, currentFrequency / divisor); // Assuming integer division
+        TermCountMap table = table();
+        frozen = null;
+        minHash = null;
+        totalWordCount = 0;
+        sumOfSquares = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.keyAt(slot) != null) {
+                int frequency = table.countAt(slot) / divisor; // Assuming integer division
+                table.setCountAt(slot, frequency);
+                totalWordCount += frequency;
+                sumOfSquares += (long) frequency * frequency;
+            }
         }
     }
 
@@ -96,14 +159,9 @@ public class FrequencyTable implements Serializable {
             }
             System.out.println("Extracted content length: " + content.length());
 
-            String[] words = content.split("\\s+");
-            System.out.println("Extracted " + words.length + " words from URL: " + url);
-
-            for (String word : words) {
-                if (word != null && !word.isEmpty()) {
-                    addWord(word, 1);
-                }
-            }
+            int words = new WordTokenizer().tokenize(content, this);
+            System.out.println("Extracted " + words + " words from URL: " + url);
+            getMinHashSignature(); // Computed at ingest so it is saved with the table
         } catch (Exception e) {
             System.err.println("Error processing URL: " + url);
             e.printStackTrace();
@@ -116,11 +174,26 @@ public class FrequencyTable implements Serializable {
      * @return The total word count.
      */
     public int getTotalWordCount() {
-        int total = 0;
-        for (Integer frequency : table.values()) {
-            total += frequency;
-        }
-        return total;
+        return totalWordCount;
+    }
+
+    /**
+     * Returns the sum of the squared frequencies, i.e. the squared Euclidean
+     * norm of the table viewed as a vector.
+     * 
+     * @return The sum of squares.
+     */
+    public long getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    /**
+     * Returns the Euclidean (L2) norm of the table viewed as a vector.
+     * 
+     * @return The norm.
+     */
+    public double getNorm() {
+        return Math.sqrt(sumOfSquares);
     }
 
     /**
@@ -129,7 +202,8 @@ public class FrequencyTable implements Serializable {
      * @return The size of the frequency table.
      */
     public int size() {
-        return table.size();
+        TermCountMap counts = table;
+        return counts != null ? counts.size() : frozen.size();
     }
 
     /**
@@ -138,7 +212,82 @@ public class FrequencyTable implements Serializable {
      * @return A set view of the keys.
      */
     public Set<String> keySet() {
-        return table.keySet();
+        return counts().keySet();
+    }
+
+    /**
+     * Returns the compact, immutable form of this frequency table, with words
+     * replaced by their IDs in the shared {@link TermDictionary}. The vector is
+     * cached until the table is next modified, and it replaces the word count
+     * map, so a loaded page holds only one form. Reads that need the map
+     * rebuild a temporary one from the vector; the first change rebuilds it
+     * for good.
+     * 
+     * @return The frozen vector.
+     */
+    public SparseTermVector freeze() {
+        SparseTermVector vector = frozen;
+        if (vector == null) {
+            vector = SparseTermVector.of(this, TermDictionary.getShared());
+            frozen = vector; // Set before the map is dropped, so one of the two is always present
+            table = null;
+        }
+        return vector;
+    }
+
+    /**
+     * Returns the MinHash signature of the words in this table, computing it if
+     * the table has changed since it was last computed. The signature is
+     * serialized with the table.
+     * 
+     * @return The signature; callers must not modify it.
+     */
+    public int[] getMinHashSignature() {
+        int[] signature = minHash;
+        if (signature == null) {
+            signature = MinHash.signature(this);
+            minHash = signature;
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the word counts for reading. While the table is frozen they are
+     * rebuilt from the vector and not kept.
+     * 
+     * @return The word counts; callers must not modify them.
+     */
+    TermCountMap counts() {
+        TermCountMap counts = table;
+        return counts != null ? counts : thaw(frozen);
+    }
+
+    /**
+     * Returns the word counts for changing, rebuilding them from the frozen
+     * vector and keeping them if the table is frozen. The caller clears the
+     * vector.
+     */
+    private TermCountMap table() {
+        TermCountMap counts = table;
+        if (counts == null) {
+            counts = thaw(frozen);
+            table = counts;
+        }
+        return counts;
+    }
+
+    /**
+     * Builds a word count map holding the words and counts of a vector.
+     */
+    private static TermCountMap thaw(SparseTermVector vector) {
+        TermDictionary dictionary = vector.getDictionary();
+        int[] termIds = vector.termIds();
+        int[] counts = vector.counts();
+        TermCountMap map = new TermCountMap(termIds.length);
+        for (int i = 0; i < termIds.length; i++) {
+            map.put(dictionary.termOf(termIds[i]), counts[i]);
+        }
+        return map;
     }
 
     /**
@@ -146,9 +295,58 @@ public class FrequencyTable implements Serializable {
      * debugging purposes.
      */
     public void printContents() {
+        TermCountMap table = counts();
         System.out.println("Frequency Table Contents:");
-        for (HT.Node<String, Integer> node : table.entrySet()) {
-            System.out.println(node.key + ": " + node.value);
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.keyAt(slot) != null) {
+                System.out.println(table.keyAt(slot) + ": " + table.countAt(slot));
+            }
+        }
+    }
+
+    /**
+     * Serialization of the frequency table.
+     *
+     * @param oos the ObjectOutputStream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        ObjectOutputStream.PutField fields = oos.putFields();
+        fields.put("counts", counts());
+        fields.put("minHash", minHash);
+        oos.writeFields();
+    }
+
+    /**
+     * Deserialization of the frequency table. Tables serialized before the
+     * switch to {@link TermCountMap} are converted from their HT form.
+     *
+     * @param ois the ObjectInputStream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if the class of a serialized object cannot be
+     *                                found
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = ois.readFields();
+        table = (TermCountMap) fields.get("counts", null);
+        minHash = (int[]) fields.get("minHash", null);
+        if (table == null) {
+            HT<String, Integer> legacy = (HT<String, Integer>) fields.get("table", null);
+            table = new TermCountMap(legacy == null ? 0 : legacy.size());
+            if (legacy != null) {
+                for (HT.Node<String, Integer> node : legacy.entrySet()) {
+                    table.put(node.key, node.value);
+                }
+            }
+        }
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.keyAt(slot) != null) {
+                int frequency = table.countAt(slot);
+                totalWordCount += frequency;
+                sumOfSquares += (long) frequency * frequency;
+            }
         }
+        dataPersistenceManager = new DataPersistenceManager();
     }
 }
@@ -1,6 +1,7 @@
 package websimilaritiespj3;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * Holds the graph data structure for the website comparison application.
@@ -41,6 +42,27 @@ public class GraphData {
         edges.add(edge);
     }
 
+    /**
+     * Adds a batch of edges to the graph in one step.
+     * 
+     * @param newEdges The SiteEdge objects to add.
+     */
+    public void addEdges(Collection<SiteEdge> newEdges) {
+        edges.addAll(newEdges);
+    }
+
+    /**
+     * Removes a site and every edge that touches it.
+     * 
+     * @param url The URL of the site to remove.
+     * @return True if a site or an edge was removed.
+     */
+    public boolean removeSite(String url) {
+        boolean removedSite = sites.removeIf(site -> site.getUrl().equals(url));
+        boolean removedEdges = edges.removeIf(edge -> edge.getSite1().equals(url) || edge.getSite2().equals(url));
+        return removedSite || removedEdges;
+    }
+
     /**
      * Retrieves the list of site records in the graph.
      * 
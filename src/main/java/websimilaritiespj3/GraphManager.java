@@ -1,10 +1,14 @@
 package websimilaritiespj3;
 
-import java.util.PriorityQueue;
-import java.util.Set;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
 
 /**
  * Manages the graph structure for the website similarity application.
@@ -16,10 +20,36 @@ import java.util.List;
  * @since 11-10-2023
  */
 public class GraphManager {
+    /**
+     * The algorithm used for point-to-point shortest path queries.
+     */
+    public enum PathMode {
+        DIJKSTRA, // One-sided Dijkstra with early exit
+        BIDIRECTIONAL, // Dijkstra from both ends
+        ALT // A* with landmark lower bounds
+    }
+
+    public static final int DEFAULT_PATH_TREE_CACHE_SIZE = 16;
+
     private GraphData graphData; // Graph data containing sites and edges
-    private HT<String, SiteRecord> siteMap; // Maps site URLs to SiteRecord objects
-    private HT<String, SerializableList<SiteEdge>> adjacencyList;// Adjacency list representation of the graph
+    private SiteGraph siteGraph; // Compressed sparse row form of the graph, updated in place
     private UnionFind unionFind; // UnionFind for disjoint set operations
+    private boolean componentsStale; // A site was removed, so unionFind must be rebuilt before use
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Queries read, updates write
+    private PathMode pathMode = PathMode.DIJKSTRA; // Algorithm used by findShortestPath
+    private Landmarks landmarks; // Landmark table for ALT, or null until first needed
+    private String landmarksFilePath; // Where the landmark table is persisted, or null
+    private SpanningForest maximumForest; // Similarity backbone, or null until first needed
+    private SpanningForest minimumForest;
+    private String backboneFilePath; // Where the maximum spanning forest is persisted, or null
+    private boolean useDistanceOracle; // Answer queries from an all-pairs table when the graph is small enough
+    private DistanceOracle distanceOracle; // All-pairs table, or null until first needed
+    private String distanceOracleFilePath; // Where the all-pairs table is persisted, or null
+    private int graphVersion; // Bumped by every update; cached path trees of older versions are stale
+    private int pathTreeCacheSize = DEFAULT_PATH_TREE_CACHE_SIZE;
+    private final LinkedHashMap<Integer, PathTree> pathTrees = new LinkedHashMap<>(16, 0.75f, true); // LRU by source
+    // Sources of recent queries not answered from a cached tree, LRU; a second miss caches the source's tree
+    private final LinkedHashMap<Integer, Boolean> recentMisses = new LinkedHashMap<>(16, 0.75f, true);
 
     /**
      * Constructs a GraphManager with the provided graph data.
@@ -28,110 +58,539 @@ public class GraphManager {
      */
     public GraphManager(GraphData graphData) {
         this.graphData = graphData;
-        this.siteMap = new HT<>();
-        this.adjacencyList = new HT<>();
-        buildSiteMap();
-        buildAdjacencyList();
+        this.siteGraph = SiteGraph.build(graphData);
         initializeUnionFind();
     }
 
     /**
-     * Builds a map from site URLs to SiteRecord objects.
+     * Initializes the UnionFind data structure with the graph's sites, keyed
+     * by their vertex numbers in the site graph.
      */
-    private void buildSiteMap() {
+    private void initializeUnionFind() {
+        unionFind = new UnionFind(siteGraph);
         for (SiteRecord site : graphData.getSites()) {
-            siteMap.put(site.getUrl(), site);
+            unionFind.add(siteGraph.vertexOf(site.getUrl()));
         }
     }
 
     /**
-     * Builds the adjacency list for the graph.
+     * Rebuilds the graph structure from the graph data after modifications
+     * made directly to it. Bumps the graph version, which discards every
+     * cached shortest-path tree.
      */
-    private void buildAdjacencyList() {
-        for (SiteEdge edge : graphData.getEdges()) {
-            String site1 = edge.getSite1();
-            String site2 = edge.getSite2();
+    public void updateGraphStructure() {
+        lock.writeLock().lock();
+        try {
+            siteGraph = SiteGraph.build(graphData);
+            rebuildUnionFind();
+            graphChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-            adjacencyList.putIfAbsent(site1, new SerializableList<>());
-            adjacencyList.putIfAbsent(site2, new SerializableList<>());
+    /**
+     * Adds a site to the graph data and the graph structure, without
+     * rebuilding either.
+     * 
+     * @param site The site to add.
+     */
+    public void addSite(SiteRecord site) {
+        lock.writeLock().lock();
+        try {
+            graphData.addSite(site);
+            unionFind.add(siteGraph.addVertex(site.getUrl()));
+            graphChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-            adjacencyList.get(site1).add(edge);
-            adjacencyList.get(site2).add(edge);
+    /**
+     * Adds a batch of edges to the graph data and the graph structure, without
+     * rebuilding either. Each edge costs amortized constant time.
+     * 
+     * @param edges The edges to add.
+     */
+    public void addEdges(Collection<SiteEdge> edges) {
+        lock.writeLock().lock();
+        try {
+            graphData.addEdges(edges);
+            for (SiteEdge edge : edges) {
+                siteGraph.addEdge(edge.getSite1(), edge.getSite2(), edge.getSimilarityScore());
+                unionFind.union(edge.getSite1(), edge.getSite2());
+            }
+            graphChanged();
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     /**
-     * Initializes the UnionFind data structure with the graph's vertices.
+     * Removes a site and all of its edges from the graph data and the graph
+     * structure. The graph structure is updated in time proportional to the
+     * site's degree, but the graph data's edge list is scanned in full, and
+     * the disjoint sets are rebuilt from the whole graph the next time they
+     * are counted, since union-find cannot split a set.
+     * 
+     * @param url The URL of the site to remove.
+     * @return True if the site was in the graph.
      */
-    private void initializeUnionFind() {
-        Set<String> vertices = new HashSet<>();
-        for (String url : siteMap.keySet()) {
-            vertices.add(url);
+    public boolean removeSite(String url) {
+        lock.writeLock().lock();
+        try {
+            if (siteGraph.vertexOf(url) < 0) {
+                return false; // Nothing is changed
+            }
+            graphData.removeSite(url);
+            siteGraph.removeVertex(url);
+            componentsStale = true;
+            graphChanged();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        unionFind = new UnionFind(vertices);
     }
 
     /**
-     * Updates the graph structure after modifications.
+     * Rebuilds the disjoint sets from the graph. The edges are unioned in
+     * parallel over the graph's vertex numbers, and the UnionFind, which
+     * shares those numbers, then only needs one union per site, to its set's
+     * root. As before, edges to URLs that are not sites do not join sets.
+     * <p>
+     * The edge producers do not union as they emit edges. Each numbers pages
+     * by its own list, and their edges reach this class through GraphData.
+     * The sets must also be rebuilt from the graph after a site is removed,
+     * with no producer running. One parallel pass over the adjacency arrays
+     * serves every case, and it costs about as much as the producers'
+     * unions would.
      */
-    public void updateGraphStructure() {
-        buildSiteMap();
-        buildAdjacencyList();
-        initializeUnionFind();
+    private void rebuildUnionFind() {
+        SiteGraph graph = siteGraph;
+        int n = graph.vertexCount();
+        boolean[] isSite = new boolean[n];
+        unionFind = new UnionFind(graph);
+        for (SiteRecord site : graphData.getSites()) {
+            int v = graph.vertexOf(site.getUrl());
+            isSite[v] = true;
+            unionFind.add(v);
+        }
+        int[] offsets = graph.offsets();
+        int[] ends = graph.ends();
+        int[] targets = graph.targets();
+        ConcurrentDisjointSets sets = new ConcurrentDisjointSets(n);
+        IntStream.range(0, n).parallel().filter(v -> isSite[v]).forEach(v -> {
+            for (int p = offsets[v]; p < ends[v]; p++) {
+                int neighbor = targets[p];
+                if (neighbor > v && isSite[neighbor]) { // Each edge from its lower end only
+                    sets.union(v, neighbor);
+                }
+            }
+        });
+        for (int v = 0; v < n; v++) {
+            int root = sets.find(v);
+            if (isSite[v] && root != v) {
+                unionFind.union(v, root);
+            }
+        }
+        componentsStale = false;
+    }
+
+    /**
+     * Bumps the graph version and discards the cached path trees.
+     */
+    private void graphChanged() {
+        synchronized (pathTrees) {
+            graphVersion++;
+            pathTrees.clear();
+            recentMisses.clear();
+        }
+    }
+
+    /**
+     * Returns the current graph in compressed sparse row form. The graph is
+     * updated in place by the methods of this class.
+     * 
+     * @return The graph.
+     */
+    public SiteGraph getSiteGraph() {
+        return siteGraph;
+    }
 
-        for (SiteEdge edge : graphData.getEdges()) {
-            unionFind.union(edge.getSite1(), edge.getSite2());
+    /**
+     * Sets the algorithm used for shortest path queries. All modes return a
+     * path of the same, smallest, total weight.
+     * 
+     * @param pathMode The path mode.
+     */
+    public void setPathMode(PathMode pathMode) {
+        this.pathMode = pathMode;
+    }
+
+    /**
+     * Returns the algorithm used for shortest path queries.
+     * 
+     * @return The path mode.
+     */
+    public PathMode getPathMode() {
+        return pathMode;
+    }
+
+    /**
+     * Sets the file the ALT landmark table is saved to and loaded from. A
+     * saved table is reused as long as the graph has not changed since it was
+     * computed.
+     * 
+     * @param landmarksFilePath The file path, or null to keep the table in memory only.
+     */
+    public void setLandmarksFilePath(String landmarksFilePath) {
+        this.landmarksFilePath = landmarksFilePath;
+    }
+
+    /**
+     * Sets the file the maximum spanning forest, the similarity backbone, is
+     * saved to and loaded from. A saved forest is reused as long as the graph
+     * has not changed since it was computed.
+     * 
+     * @param backboneFilePath The file path, or null to keep the forest in memory only.
+     */
+    public void setBackboneFilePath(String backboneFilePath) {
+        this.backboneFilePath = backboneFilePath;
+    }
+
+    /**
+     * Sets whether shortest path queries are answered from a table of the
+     * distances between all pairs of sites. The table is computed on the
+     * first query after the graph changes, by a search from every site, and
+     * then answers each query without any search. It is only used for graphs
+     * of at most {@link DistanceOracle#MAX_VERTICES} sites.
+     * 
+     * @param useDistanceOracle True to use the table.
+     */
+    public void setUseDistanceOracle(boolean useDistanceOracle) {
+        this.useDistanceOracle = useDistanceOracle;
+    }
+
+    /**
+     * Sets the file the all-pairs distance table is saved to and mapped from.
+     * A saved table is reused as long as the graph has not changed since it
+     * was computed.
+     * 
+     * @param distanceOracleFilePath The file path, or null to keep the table in memory only.
+     */
+    public void setDistanceOracleFilePath(String distanceOracleFilePath) {
+        this.distanceOracleFilePath = distanceOracleFilePath;
+    }
+
+    /**
+     * Returns the graph version, which every call to updateGraphStructure
+     * increments.
+     * 
+     * @return The graph version.
+     */
+    public int getGraphVersion() {
+        return graphVersion;
+    }
+
+    /**
+     * Sets how many shortest-path trees are cached, one per source site. The
+     * least recently used tree is dropped when the cache is full.
+     * 
+     * @param pathTreeCacheSize The number of trees to keep, or 0 to disable the cache.
+     */
+    public void setPathTreeCacheSize(int pathTreeCacheSize) {
+        synchronized (pathTrees) {
+            this.pathTreeCacheSize = Math.max(0, pathTreeCacheSize);
+            trimPathTrees();
         }
     }
 
     /**
-     * Finds the shortest path between two sites using Dijkstra's algorithm.
+     * Finds the shortest path between two sites. A query whose source (or,
+     * since the graph is undirected, destination) has a cached shortest-path
+     * tree is answered by walking the tree. A source that missed the cache
+     * recently, among as many recent sources as twice the cache size, has its
+     * tree computed and cached on its next query, outside the cache's lock;
+     * any other query runs a point-to-point search in the current path mode,
+     * which is cheaper for a one-off query. With the distance
+     * oracle in use, every query is answered from its table instead.
      * 
      * @param fromSite The starting site URL.
      * @param toSite   The destination site URL.
      * @return A list of SiteEdge objects representing the shortest path.
      */
     public List<SiteEdge> findShortestPath(String fromSite, String toSite) {
-        if (!siteMap.contains(fromSite) || !siteMap.contains(toSite)) {
-            return new SerializableList<>(); // Return an empty list if either site is not in the graph
+        lock.readLock().lock();
+        try {
+            if (useDistanceOracle) {
+                DistanceOracle oracle = getDistanceOracle();
+                if (oracle != null) {
+                    int source = siteGraph.vertexOf(fromSite);
+                    int target = siteGraph.vertexOf(toSite);
+                    if (source < 0 || target < 0) {
+                        return new SerializableList<>();
+                    }
+                    return oracle.path(siteGraph, source, target);
+                }
+            }
+            SiteGraph graph;
+            int version;
+            PathTree tree;
+            boolean reversed = false;
+            boolean build = false;
+            int source;
+            int target;
+            synchronized (pathTrees) {
+                graph = siteGraph;
+                version = graphVersion;
+                source = graph.vertexOf(fromSite);
+                target = graph.vertexOf(toSite);
+                if (source < 0 || target < 0) {
+                    return new SerializableList<>();
+                }
+                tree = pathTrees.get(source);
+                if (tree == null && (tree = pathTrees.get(target)) != null) {
+                    reversed = true;
+                }
+                if (tree == null && pathTreeCacheSize > 0) {
+                    build = recentMisses.remove(source) != null;
+                    if (!build) {
+                        recentMisses.put(source, Boolean.TRUE);
+                        while (recentMisses.size() > 2 * pathTreeCacheSize) {
+                            recentMisses.remove(recentMisses.keySet().iterator().next());
+                        }
+                    }
+                }
+            }
+            if (build) {
+                tree = new PathTree(graph, source, version); // A full Dijkstra, so other queries are not held up
+                synchronized (pathTrees) {
+                    if (graphVersion == version && pathTreeCacheSize > 0) {
+                        pathTrees.put(source, tree);
+                        trimPathTrees();
+                    }
+                }
+            }
+            if (tree != null && tree.version == version) {
+                return reversed ? tree.pathFrom(graph, source) : tree.pathTo(graph, target);
+            }
+            return findPointToPointPath(graph, source, target);
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        HT<String, Double> distances = new HT<>();
-        HT<String, SiteEdge> edgeTo = new HT<>();
-        PriorityQueue<SiteRecord> pq = new PriorityQueue<>(
-                (a, b) -> Double.compare(distances.getOrDefault(a.getUrl(), Double.MAX_VALUE),
-                        distances.getOrDefault(b.getUrl(), Double.MAX_VALUE)));
+    /**
+     * Returns the length of the shortest path between two sites: a single
+     * table lookup with the distance oracle in use, and otherwise the total
+     * score of the path findShortestPath returns.
+     * 
+     * @param fromSite The starting site URL.
+     * @param toSite   The destination site URL.
+     * @return The total similarity score of the path, 0 if the sites are the
+     *         same, or infinity if either site is missing or there is no path.
+     */
+    public double getShortestPathLength(String fromSite, String toSite) {
+        lock.readLock().lock();
+        try {
+            SiteGraph graph = siteGraph;
+            int source = graph.vertexOf(fromSite);
+            int target = graph.vertexOf(toSite);
+            if (source < 0 || target < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (source == target) {
+                return 0.0;
+            }
+            if (useDistanceOracle) {
+                DistanceOracle oracle = getDistanceOracle();
+                if (oracle != null) {
+                    return oracle.distance(source, target);
+                }
+            }
+            List<SiteEdge> path = findShortestPath(fromSite, toSite);
+            if (path.isEmpty()) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double length = 0.0;
+            for (SiteEdge edge : path) {
+                length += edge.getSimilarityScore();
+            }
+            return length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        for (String url : siteMap.keySet()) {
-            distances.put(url, Double.MAX_VALUE);
+    /**
+     * Drops the least recently used path trees until the cache fits its size.
+     */
+    private void trimPathTrees() {
+        while (pathTrees.size() > pathTreeCacheSize) {
+            Map.Entry<Integer, PathTree> eldest = pathTrees.entrySet().iterator().next();
+            pathTrees.remove(eldest.getKey());
         }
-        distances.put(fromSite, 0.0);
+    }
 
-        pq.add(siteMap.get(fromSite));
+    /**
+     * Finds a path with a point-to-point search in the current path mode.
+     */
+    private List<SiteEdge> findPointToPointPath(SiteGraph graph, int source, int target) {
+        switch (pathMode) {
+            case BIDIRECTIONAL:
+                return ShortestPathEngine.bidirectionalPath(graph, source, target);
+            case ALT:
+                return ShortestPathEngine.altPath(graph, getLandmarks(), source, target);
+            default:
+                return ShortestPathEngine.shortestPath(graph, source, target);
+        }
+    }
 
-        while (!pq.isEmpty()) {
-            SiteRecord current = pq.poll();
-            SerializableList<SiteEdge> edges = adjacencyList.getOrDefault(current.getUrl(), new SerializableList<>());
+    /**
+     * Returns the landmark table of the current graph, loading it from disk
+     * or computing and saving it only if the graph has changed since the
+     * table was last computed.
+     * 
+     * @return The landmark table.
+     */
+    public synchronized Landmarks getLandmarks() {
+        SiteGraph graph = siteGraph;
+        if (landmarks != null && landmarks.matches(graph)) {
+            return landmarks;
+        }
+        if (landmarksFilePath != null && new File(landmarksFilePath).isFile()) {
+            try {
+                Landmarks saved = Landmarks.load(landmarksFilePath);
+                if (saved.matches(graph)) {
+                    landmarks = saved;
+                    return landmarks;
+                }
+            } catch (IOException e) {
+                System.err.println("Error loading landmarks: " + e.getMessage());
+            }
+        }
+        landmarks = Landmarks.compute(graph, Landmarks.DEFAULT_COUNT);
+        if (landmarksFilePath != null) {
+            try {
+                landmarks.save(landmarksFilePath);
+            } catch (IOException e) {
+                System.err.println("Error saving landmarks: " + e.getMessage());
+            }
+        }
+        return landmarks;
+    }
 
-            for (SiteEdge edge : edges) {
-                String neighborUrl = edge.getOtherSite(current.getUrl());
-                SiteRecord neighbor = siteMap.get(neighborUrl);
-                double newDist = distances.get(current.getUrl()) + edge.getSimilarityScore();
+    /**
+     * Returns the all-pairs distance table of the current graph, mapping it
+     * from disk or computing and saving it only if the graph has changed
+     * since the table was last computed.
+     * 
+     * @return The table, or null if the graph has more than
+     *         {@link DistanceOracle#MAX_VERTICES} vertices.
+     */
+    public DistanceOracle getDistanceOracle() {
+        lock.readLock().lock(); // Taken before the monitor, as by findShortestPath and getLandmarks
+        try {
+            synchronized (this) {
+                SiteGraph graph = siteGraph;
+                if (graph.vertexCount() > DistanceOracle.MAX_VERTICES) {
+                    return null;
+                }
+                if (distanceOracle != null && distanceOracle.matches(graph)) {
+                    return distanceOracle;
+                }
+                if (distanceOracleFilePath != null && new File(distanceOracleFilePath).isFile()) {
+                    try {
+                        DistanceOracle saved = DistanceOracle.load(distanceOracleFilePath, graph);
+                        if (saved != null) {
+                            distanceOracle = saved;
+                            return distanceOracle;
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error loading distance table: " + e.getMessage());
+                    }
+                }
+                distanceOracle = DistanceOracle.compute(graph);
+                if (distanceOracleFilePath != null) {
+                    try {
+                        distanceOracle.save(distanceOracleFilePath);
+                    } catch (IOException e) {
+                        System.err.println("Error saving distance table: " + e.getMessage());
+                    }
+                }
+                return distanceOracle;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-                if (newDist < distances.getOrDefault(neighborUrl, Double.MAX_VALUE)) {
-                    distances.put(neighborUrl, newDist);
-                    edgeTo.put(neighborUrl, edge);
-                    pq.add(neighbor);
+    /**
+     * Returns the maximum or minimum spanning forest of the current graph,
+     * computing it only if the graph has changed since it was last computed.
+     * The maximum forest is also loaded from and saved to the backbone file.
+     * 
+     * @param maximum True for the forest of largest total similarity, false
+     *                for the smallest.
+     * @return The spanning forest.
+     */
+    public SpanningForest getSpanningForest(boolean maximum) {
+        lock.readLock().lock(); // Taken before the monitor, as by findShortestPath and getLandmarks
+        try {
+            synchronized (this) {
+                SiteGraph graph = siteGraph;
+                SpanningForest forest = maximum ? maximumForest : minimumForest;
+                if (forest != null && forest.matches(graph)) {
+                    return forest;
                 }
+                forest = null;
+                if (maximum && backboneFilePath != null && new File(backboneFilePath).isFile()) {
+                    try {
+                        SpanningForest saved = SpanningForest.load(backboneFilePath);
+                        if (saved.isMaximum() && saved.matches(graph)) {
+                            forest = saved;
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error loading spanning forest: " + e.getMessage());
+                    }
+                }
+                if (forest == null) {
+                    forest = SpanningForest.compute(graph, maximum);
+                    if (maximum && backboneFilePath != null) {
+                        try {
+                            forest.save(backboneFilePath);
+                        } catch (IOException e) {
+                            System.err.println("Error saving spanning forest: " + e.getMessage());
+                        }
+                    }
+                }
+                if (maximum) {
+                    maximumForest = forest;
+                } else {
+                    minimumForest = forest;
+                }
+                return forest;
             }
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        SerializableList<SiteEdge> path = new SerializableList<>();
-        for (String at = toSite; edgeTo.contains(at); at = edgeTo.get(at).getOtherSite(at)) {
-            path.add(edgeTo.get(at));
+    /**
+     * Returns the sites of the graph with only the edges of its maximum or
+     * minimum spanning forest. The result can be given to a new GraphManager
+     * for path queries, or plotted, just like the full graph data.
+     * 
+     * @param maximum True for the maximum spanning forest, false for the minimum.
+     * @return The sparse graph data.
+     */
+    public GraphData getSpanningForestGraphData(boolean maximum) {
+        lock.readLock().lock();
+        try {
+            return getSpanningForest(maximum).toGraphData(siteGraph, graphData.getSites());
+        } finally {
+            lock.readLock().unlock();
         }
-        Collections.reverse(path);
-        return path;
     }
 
     /**
@@ -140,6 +599,84 @@ public class GraphManager {
      * @return The number of disjoint sets.
      */
     public int getNumberOfDisjointSets() {
-        return unionFind.countDisjointSets();
+        lock.writeLock().lock(); // The sets may have to be rebuilt
+        try {
+            if (componentsStale) {
+                rebuildUnionFind();
+            }
+            return unionFind.countDisjointSets();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of sites in the disjoint set that contains a site.
+     * 
+     * @param url The URL of the site.
+     * @return The size of its set, or 0 if the site is not in the graph.
+     */
+    public int getComponentSize(String url) {
+        lock.writeLock().lock(); // Finding a root halves the path to it
+        try {
+            if (componentsStale) {
+                rebuildUnionFind();
+            }
+            return unionFind.componentSize(url);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The shortest-path tree of one source, as of one graph version.
+     */
+    private static final class PathTree {
+        private final int version;
+        private final int source;
+        private final double[] distances; // From the source, or Double.MAX_VALUE if unreachable
+        private final int[] parents;
+        private final int[] entries; // Edge position from each vertex's parent to it
+
+        PathTree(SiteGraph graph, int source, int version) {
+            int n = graph.vertexCount();
+            this.version = version;
+            this.source = source;
+            this.distances = new double[n];
+            this.parents = new int[n];
+            this.entries = new int[n];
+            ShortestPathEngine.shortestPathTree(graph, source, distances, parents, entries);
+        }
+
+        /**
+         * Returns the path from the source to a vertex by walking predecessors.
+         */
+        List<SiteEdge> pathTo(SiteGraph graph, int target) {
+            SerializableList<SiteEdge> path = new SerializableList<>();
+            if (distances[target] == Double.MAX_VALUE) {
+                return path;
+            }
+            for (int at = target; at != source; at = parents[at]) {
+                path.add(graph.edgeAt(parents[at], entries[at]));
+            }
+            Collections.reverse(path);
+            return path;
+        }
+
+        /**
+         * Returns the path from a vertex to the source by walking
+         * predecessors, with every edge pointing towards the source.
+         */
+        List<SiteEdge> pathFrom(SiteGraph graph, int start) {
+            SerializableList<SiteEdge> path = new SerializableList<>();
+            if (distances[start] == Double.MAX_VALUE) {
+                return path;
+            }
+            float[] weights = graph.weights();
+            for (int at = start; at != source; at = parents[at]) {
+                path.add(new SiteEdge(graph.urlOf(at), graph.urlOf(parents[at]), weights[entries[at]]));
+            }
+            return path;
+        }
     }
 }
@@ -10,6 +10,7 @@ import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import javax.swing.JPanel;
@@ -84,13 +85,23 @@ public class GraphPlotter {
         // Obtain the frequency table for the user input URL
         FrequencyTable userInputTable = frequencyTables.get(userInput);
 
+        // Compare the user input with every table in one batch
+        List<FrequencyTable> tables = new ArrayList<>(entries.size());
+        for (HT.Node<String, FrequencyTable> entry : entries) {
+            tables.add(entry.value);
+        }
+        double[] similarities = userInputTable != null
+                ? SimilarityMetricCalculator.similarities(userInputTable, tables)
+                : null;
+
+        int position = 0;
         for (HT.Node<String, FrequencyTable> entry : entries) {
             int index = getIndexForURL(entry.key);
             double similarity;
             if (userInput != null && entry.key.equals(userInput)) {
                 similarity = 1.0; // The similarity of the URL with itself is 1
-            } else if (userInputTable != null) {
-                similarity = SimilarityMetricCalculator.calculateCosineSimilarity(entry.value, userInputTable);
+            } else if (similarities != null) {
+                similarity = similarities[position];
             } else {
                 similarity = 0; // If there's no user input, default to 0
             }
@@ -104,6 +115,7 @@ public class GraphPlotter {
             }
 
             System.out.println("URL Index: " + index + ", URL: " + entry.key + ", Similarity: " + similarity);
+            position++;
         }
 
         cosineDataset.addSeries(userSeries);
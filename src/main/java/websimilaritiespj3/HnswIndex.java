@@ -0,0 +1,585 @@
+package websimilaritiespj3;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A hierarchical navigable small world (HNSW) graph over document vectors, for
+ * approximate top-N cosine similarity queries in roughly logarithmic time.
+ * <p>
+ * Every document is a node on layer 0 and, with geometrically decreasing
+ * probability, on the layers above it. A query walks greedily down from the
+ * top layer and then runs a best-first search of width efSearch on layer 0.
+ * Neighbours are chosen with the diversity heuristic of Malkov and Yashunin, so
+ * that the graph stays navigable between clusters of similar pages.
+ * <p>
+ * Documents can be added at any time and are identified by URL. The index can
+ * be saved to and loaded from disk with its vectors, so it does not have to be
+ * rebuilt on start-up.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class HnswIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF_SEARCH = 64;
+    private static final int MAX_LEVEL = 16;
+
+    private final int m; // Neighbours per node on the upper layers
+    private final int maxM0; // Neighbours per node on layer 0
+    private final int efConstruction;
+    private volatile int efSearch = DEFAULT_EF_SEARCH;
+    private final double levelMultiplier;
+
+    private SparseTermVector[] vectors; // By document
+    private String[] urls; // By document
+    private HT<String, Integer> urlToDoc;
+    // links[doc][level]: neighbour count followed by the neighbour IDs
+    private int[][][] links;
+    private float[][][] linkScores; // linkScores[doc][level][i]: similarity of doc with links[doc][level][i]
+    private int size;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    private transient double[] inverseNorms; // By document; 0 for documents without words
+    private transient Random random;
+    private transient ReentrantReadWriteLock lock;
+    private transient ThreadLocal<Workspace> workspaces;
+
+    /**
+     * Constructs an empty index with 16 neighbours per node and an
+     * efConstruction of 100.
+     */
+    public HnswIndex() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION);
+    }
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param m              The number of neighbours per node on the upper
+     *                       layers; layer 0 keeps twice as many.
+     * @param efConstruction The search width used when inserting documents.
+     * @throws IllegalArgumentException If either parameter is less than 2.
+     */
+    public HnswIndex(int m, int efConstruction) {
+        if (m < 2 || efConstruction < 2) {
+            throw new IllegalArgumentException("M and efConstruction must be at least 2.");
+        }
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.vectors = new SparseTermVector[16];
+        this.urls = new String[16];
+        this.urlToDoc = new HT<>();
+        this.links = new int[16][][];
+        this.linkScores = new float[16][][];
+        this.inverseNorms = new double[16];
+        initTransients();
+    }
+
+    /**
+     * Creates the state that is not serialized.
+     */
+    private void initTransients() {
+        random = new Random(0x45_4E_53_57L + size);
+        lock = new ReentrantReadWriteLock();
+        workspaces = ThreadLocal.withInitial(Workspace::new);
+    }
+
+    /**
+     * Sets the search width used by queries that do not give their own. Larger
+     * values find the true nearest neighbours more often but visit more nodes.
+     *
+     * @param efSearch The default search width.
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    /**
+     * Returns the search width used by queries that do not give their own.
+     *
+     * @return The default search width.
+     */
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return The document count.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the URL of a document.
+     *
+     * @param doc The document ID.
+     * @return The URL the document was added with.
+     */
+    public String urlAt(int doc) {
+        lock.readLock().lock();
+        try {
+            return urls[doc];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ID of the document added with the given URL.
+     *
+     * @param url The URL to look up.
+     * @return The document ID, or -1 if the URL is not indexed.
+     */
+    public int docOf(String url) {
+        lock.readLock().lock();
+        try {
+            return urlToDoc.getOrDefault(url, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a document to the index. A URL that is already indexed is left
+     * unchanged.
+     *
+     * @param url   The URL of the document.
+     * @param table The frequency table of the document.
+     * @return The ID of the document.
+     */
+    public int add(String url, FrequencyTable table) {
+        SparseTermVector vector = table.freeze();
+        lock.writeLock().lock();
+        try {
+            Integer existing = urlToDoc.get(url);
+            return existing != null ? existing : addLocked(url, vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int addLocked(String url, SparseTermVector vector) {
+        int doc = size;
+        if (doc == vectors.length) {
+            vectors = Arrays.copyOf(vectors, doc * 2);
+            urls = Arrays.copyOf(urls, doc * 2);
+            links = Arrays.copyOf(links, doc * 2);
+            linkScores = Arrays.copyOf(linkScores, doc * 2);
+            inverseNorms = Arrays.copyOf(inverseNorms, doc * 2);
+        }
+        double norm = vector.getNorm();
+        int level = Math.min(MAX_LEVEL, (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier));
+        vectors[doc] = vector;
+        urls[doc] = url;
+        inverseNorms[doc] = norm == 0.0 ? 0.0 : 1.0 / norm;
+        links[doc] = new int[level + 1][];
+        linkScores[doc] = new float[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[doc][l] = new int[1 + (l == 0 ? maxM0 : m)];
+            linkScores[doc][l] = new float[1 + (l == 0 ? maxM0 : m)];
+        }
+        urlToDoc.put(url, doc);
+        size++;
+
+        if (norm == 0.0) {
+            return doc; // A page without words has no neighbours and is never returned
+        }
+        if (entryPoint < 0) {
+            entryPoint = doc;
+            topLevel = level;
+            return doc;
+        }
+
+        double[] weights = SimilarityMetricCalculator.scatter(vector);
+        try {
+            Workspace workspace = workspaces.get();
+            int current = entryPoint;
+            float currentScore = score(weights, current);
+            for (int l = topLevel; l > level; l--) {
+                current = greedy(weights, current, currentScore, l);
+                currentScore = score(weights, current);
+            }
+            for (int l = Math.min(level, topLevel); l >= 0; l--) {
+                InvertedIndex.Matches found = searchLayer(weights, current, efConstruction, l, -1, workspace);
+                int maxLinks = l == 0 ? maxM0 : m;
+                int[] selected = selectNeighbours(found, m);
+                int[] own = links[doc][l];
+                float[] ownScores = linkScores[doc][l];
+                own[0] = selected.length;
+                for (int k = 0; k < selected.length; k++) {
+                    own[k + 1] = found.docAt(selected[k]);
+                    ownScores[k + 1] = found.scoreAt(selected[k]);
+                    connect(own[k + 1], doc, ownScores[k + 1], l, maxLinks);
+                }
+                current = found.docAt(0);
+            }
+        } finally {
+            SimilarityMetricCalculator.clear(weights, vector);
+        }
+        if (level > topLevel) {
+            entryPoint = doc;
+            topLevel = level;
+        }
+        return doc;
+    }
+
+    /**
+     * Finds the documents most similar to a query using the default search
+     * width.
+     *
+     * @param query      The query vector.
+     * @param topN       The maximum number of documents to return.
+     * @param excludeDoc A document ID to leave out, such as the query itself, or
+     *                   -1.
+     * @return The documents found with their cosine similarity, most similar
+     *         first.
+     */
+    public InvertedIndex.Matches search(SparseTermVector query, int topN, int excludeDoc) {
+        return search(query, topN, efSearch, excludeDoc);
+    }
+
+    /**
+     * Finds the documents most similar to a query.
+     *
+     * @param query      The query vector.
+     * @param topN       The maximum number of documents to return.
+     * @param ef         The search width; values below topN are raised to it.
+     * @param excludeDoc A document ID to leave out, such as the query itself, or
+     *                   -1.
+     * @return The documents found with their cosine similarity, most similar
+     *         first.
+     */
+    public InvertedIndex.Matches search(SparseTermVector query, int topN, int ef, int excludeDoc) {
+        InvertedIndex.Matches result = new InvertedIndex.Matches();
+        if (topN <= 0 || query.getNorm() == 0.0) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return result;
+            }
+            double[] weights = SimilarityMetricCalculator.scatter(query);
+            try {
+                int current = entryPoint;
+                float currentScore = score(weights, current);
+                for (int l = topLevel; l > 0; l--) {
+                    current = greedy(weights, current, currentScore, l);
+                    currentScore = score(weights, current);
+                }
+                InvertedIndex.Matches found = searchLayer(weights, current, Math.max(ef, topN), 0, excludeDoc,
+                        workspaces.get());
+                for (int i = 0; i < found.size() && result.size() < topN; i++) {
+                    result.add(found.docAt(i), found.scoreAt(i));
+                }
+            } finally {
+                SimilarityMetricCalculator.clear(weights, query);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Saves the index, including its vectors, to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        lock.readLock().lock();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+            out.writeObject(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads an index saved with {@link #save}.
+     *
+     * @param path The file to read.
+     * @return The index.
+     * @throws IOException If the file cannot be read or does not hold an index.
+     */
+    public static HnswIndex load(String path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+            return (HnswIndex) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not an HNSW index: " + path, e);
+        }
+    }
+
+    /**
+     * Returns the cosine similarity of the scattered query with a document.
+     */
+    private float score(double[] weights, int doc) {
+        return (float) (SimilarityMetricCalculator.gather(weights, vectors[doc]) * inverseNorms[doc]);
+    }
+
+    /**
+     * Returns the cosine similarity of two indexed documents.
+     */
+    private float score(int doc1, int doc2) {
+        return (float) (SimilarityMetricCalculator.dotProduct(vectors[doc1], vectors[doc2])
+                * inverseNorms[doc1] * inverseNorms[doc2]);
+    }
+
+    /**
+     * Moves from a node to its most similar neighbour on one layer until no
+     * neighbour is more similar to the query.
+     */
+    private int greedy(double[] weights, int current, float currentScore, int level) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = score(weights, neighbours[i]);
+                if (score > currentScore) {
+                    current = neighbours[i];
+                    currentScore = score;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Runs a best-first search of the given width on one layer, starting from
+     * one node.
+     *
+     * @return The best documents found, most similar first.
+     */
+    private InvertedIndex.Matches searchLayer(double[] weights, int start, int ef, int level, int excludeDoc,
+            Workspace workspace) {
+        workspace.reset(size);
+        InvertedIndex.TopHeap best = new InvertedIndex.TopHeap(ef);
+        CandidateQueue candidates = workspace.candidates;
+        float startScore = score(weights, start);
+        workspace.visit(start);
+        candidates.push(start, startScore);
+        if (start != excludeDoc) {
+            best.offer(start, startScore);
+        }
+        while (candidates.size() > 0) {
+            float score = candidates.topScore();
+            if (best.isFull() && score < best.minScore()) {
+                break; // No candidate left can improve the results
+            }
+            int current = candidates.pop();
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!workspace.visit(neighbour)) {
+                    continue;
+                }
+                float neighbourScore = score(weights, neighbour);
+                if (!best.isFull() || neighbourScore > best.minScore()) {
+                    candidates.push(neighbour, neighbourScore);
+                    if (neighbour != excludeDoc) {
+                        best.offer(neighbour, neighbourScore);
+                    }
+                }
+            }
+        }
+        InvertedIndex.Matches found = new InvertedIndex.Matches();
+        best.drainDescending(found);
+        return found;
+    }
+
+    /**
+     * Picks up to {@code max} neighbours from candidates sorted by decreasing
+     * similarity. A candidate is skipped if it is more similar to an already
+     * picked neighbour than to the base node, which keeps links pointing in
+     * different directions; skipped candidates fill any remaining places.
+     *
+     * @return The positions of the picked neighbours in {@code candidates}.
+     */
+    private int[] selectNeighbours(InvertedIndex.Matches candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        boolean[] taken = new boolean[candidates.size()];
+        int count = 0;
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            int candidate = candidates.docAt(i);
+            float toBase = candidates.scoreAt(i);
+            boolean diverse = true;
+            for (int j = 0; j < count && diverse; j++) {
+                diverse = score(candidate, candidates.docAt(selected[j])) <= toBase;
+            }
+            if (diverse) {
+                selected[count++] = i;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = i;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Adds a link from a node to a new neighbour with the given similarity,
+     * reselecting the node's neighbours if it already has the maximum number.
+     */
+    private void connect(int node, int neighbour, float score, int level, int maxLinks) {
+        int[] own = links[node][level];
+        float[] ownScores = linkScores[node][level];
+        int count = own[0];
+        if (count < maxLinks) {
+            own[++count] = neighbour;
+            ownScores[count] = score;
+            own[0] = count;
+            return;
+        }
+        InvertedIndex.TopHeap heap = new InvertedIndex.TopHeap(count + 1);
+        for (int i = 1; i <= count; i++) {
+            heap.offer(own[i], ownScores[i]);
+        }
+        heap.offer(neighbour, score);
+        InvertedIndex.Matches candidates = new InvertedIndex.Matches();
+        heap.drainDescending(candidates);
+        int[] selected = selectNeighbours(candidates, maxLinks);
+        own[0] = selected.length;
+        for (int k = 0; k < selected.length; k++) {
+            own[k + 1] = candidates.docAt(selected[k]);
+            ownScores[k + 1] = candidates.scoreAt(selected[k]);
+        }
+    }
+
+    /**
+     * Restores the state that is not serialized after the index is read.
+     *
+     * @param ois the ObjectInputStream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if a class cannot be found
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        inverseNorms = new double[vectors.length];
+        for (int doc = 0; doc < size; doc++) {
+            double norm = vectors[doc].getNorm();
+            inverseNorms[doc] = norm == 0.0 ? 0.0 : 1.0 / norm;
+        }
+        initTransients();
+    }
+
+    /**
+     * A growable max-heap of (document, score) pairs holding the nodes still to
+     * be expanded.
+     */
+    private static final class CandidateQueue {
+        private int[] docs = new int[64];
+        private float[] scores = new float[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int doc, float score) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && scores[(i - 1) >>> 1] < score) {
+                int parent = (i - 1) >>> 1;
+                docs[i] = docs[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            docs[i] = doc;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = docs[0];
+            int doc = docs[--size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] > scores[child]) {
+                    child++;
+                }
+                if (scores[child] <= score) {
+                    break;
+                }
+                docs[i] = docs[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            docs[i] = doc;
+            scores[i] = score;
+            return top;
+        }
+    }
+
+    /**
+     * Per-thread search state: visit marks stamped with a search number, so they
+     * never have to be cleared, and the candidate queue.
+     */
+    private static final class Workspace {
+        int[] visited = new int[0];
+        int stamp;
+        final CandidateQueue candidates = new CandidateQueue();
+
+        void reset(int documents) {
+            if (visited.length < documents) {
+                visited = Arrays.copyOf(visited, Math.max(documents, visited.length * 2));
+            }
+            if (++stamp == 0) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            candidates.size = 0;
+        }
+
+        /**
+         * Marks a node as visited.
+         *
+         * @return False if it had been visited already.
+         */
+        boolean visit(int doc) {
+            if (visited[doc] == stamp) {
+                return false;
+            }
+            visited[doc] = stamp;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An inverted index from term ID to the documents containing the term, used to
+ * find similar documents without comparing against the whole corpus. Each
+ * posting holds a document ID and the term's weight in that document
+ * (count / norm), so summing postings gives cosine similarity directly.
+ * <p>
+ * Queries only look at documents that share a term with the query, and use
+ * each term's maximum weight to bound how much similarity the remaining query
+ * terms could still add. Once that bound falls below the threshold no new
+ * candidates are admitted, and candidates whose partial score plus the bound
+ * cannot reach the threshold are dropped without a full comparison.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class InvertedIndex {
+    // Tolerance for the float rounding of stored weights when pruning
+    private static final double SLACK = 1e-6;
+
+    private final SparseTermVector[] vectors; // Documents by ID
+    private final int[] postingStart; // Postings of term t are [postingStart[t], postingStart[t + 1])
+    private final int[] postingDocs; // Ascending within each term
+    private final float[] postingWeights;
+    private final float[] maxWeight; // Largest weight of each term over all documents
+    private final ThreadLocal<Workspace> workspaces;
+
+    private InvertedIndex(SparseTermVector[] vectors, int termCount) {
+        this.vectors = vectors;
+        this.postingStart = new int[termCount + 1];
+        this.maxWeight = new float[termCount];
+        for (SparseTermVector vector : vectors) {
+            for (int i = 0; i < vector.size(); i++) {
+                postingStart[vector.termIdAt(i) + 1]++;
+            }
+        }
+        for (int t = 0; t < termCount; t++) {
+            postingStart[t + 1] += postingStart[t];
+        }
+        this.postingDocs = new int[postingStart[termCount]];
+        this.postingWeights = new float[postingStart[termCount]];
+        int[] next = Arrays.copyOf(postingStart, termCount);
+        for (int doc = 0; doc < vectors.length; doc++) {
+            SparseTermVector vector = vectors[doc];
+            double norm = vector.getNorm();
+            for (int i = 0; i < vector.size(); i++) {
+                int term = vector.termIdAt(i);
+                float weight = norm == 0.0 ? 0.0f : (float) (vector.countAt(i) / norm);
+                int p = next[term]++;
+                postingDocs[p] = doc;
+                postingWeights[p] = weight;
+                maxWeight[term] = Math.max(maxWeight[term], weight);
+            }
+        }
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(vectors.length));
+    }
+
+    /**
+     * Builds an index over the given frequency tables. Document IDs are the
+     * positions in the list.
+     *
+     * @param tables The documents to index.
+     * @return The index.
+     */
+    public static InvertedIndex build(List<FrequencyTable> tables) {
+        SparseTermVector[] vectors = new SparseTermVector[tables.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = tables.get(i).freeze();
+        }
+        return new InvertedIndex(vectors, TermDictionary.getShared().size());
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return The document count.
+     */
+    public int size() {
+        return vectors.length;
+    }
+
+    /**
+     * Finds every document whose cosine similarity with the query is at least
+     * the threshold.
+     *
+     * @param query      The document to compare against.
+     * @param threshold  The minimum similarity to report.
+     * @param minDoc     Documents with a smaller ID are ignored.
+     * @param excludeDoc A document ID to ignore, such as the query itself, or -1.
+     * @return The matching documents in no particular order.
+     */
+    public Matches query(SparseTermVector query, double threshold, int minDoc, int excludeDoc) {
+        Workspace ws = workspaces.get();
+        Matches matches = new Matches();
+        double queryNorm = query.getNorm();
+        if (queryNorm == 0.0) {
+            return matches;
+        }
+        int terms = ws.prepare(this, query, queryNorm);
+        int stop = ws.accumulate(this, terms, threshold, 0, minDoc, excludeDoc);
+        double rest = ws.remaining[stop];
+        for (int c = 0; c < ws.touchedCount; c++) {
+            int doc = ws.touched[c];
+            double score = ws.score[doc];
+            if (stop < terms || Math.abs(score - threshold) < SLACK) {
+                if (score + rest < threshold - SLACK) {
+                    continue; // Even the remaining terms could not lift it to the threshold
+                }
+                score = exactSimilarity(query, queryNorm, doc);
+            }
+            if (score >= threshold) {
+                matches.add(doc, (float) score);
+            }
+        }
+        ws.reset();
+        return matches;
+    }
+
+    /**
+     * Finds the documents most similar to the query, most similar first. The
+     * result is exact: pruning only skips documents that provably cannot enter
+     * the top N.
+     *
+     * @param query         The document to compare against.
+     * @param topN          The maximum number of documents to return.
+     * @param minSimilarity The minimum similarity to report.
+     * @param excludeDoc    A document ID to ignore, such as the query itself, or
+     *                      -1.
+     * @return Up to {@code topN} matching documents in descending similarity.
+     */
+    public Matches top(SparseTermVector query, int topN, double minSimilarity, int excludeDoc) {
+        Workspace ws = workspaces.get();
+        Matches matches = new Matches();
+        double queryNorm = query.getNorm();
+        if (queryNorm == 0.0 || topN <= 0) {
+            return matches;
+        }
+        int terms = ws.prepare(this, query, queryNorm);
+        int stop = ws.accumulate(this, terms, minSimilarity, topN, 0, excludeDoc);
+        double rest = ws.remaining[stop];
+
+        // Verify candidates in order of their upper bound, keeping the best N in a
+        // min-heap, until no remaining bound can beat the heap's minimum
+        long[] order = new long[ws.touchedCount];
+        for (int c = 0; c < ws.touchedCount; c++) {
+            int doc = ws.touched[c];
+            float bound = (float) Math.min(ws.score[doc] + rest, 2.0);
+            order[c] = ((long) Float.floatToIntBits(bound) << 32) | doc; // Non-negative floats sort as ints
+        }
+        Arrays.sort(order);
+        TopHeap heap = new TopHeap(topN);
+        for (int c = order.length - 1; c >= 0; c--) {
+            int doc = (int) order[c];
+            double bound = ws.score[doc] + rest + SLACK;
+            if (bound < minSimilarity || (heap.isFull() && bound < heap.minScore())) {
+                break;
+            }
+            double score = stop < terms ? exactSimilarity(query, queryNorm, doc) : ws.score[doc];
+            if (score >= minSimilarity) {
+                heap.offer(doc, (float) score);
+            }
+        }
+        ws.reset();
+        heap.drainDescending(matches);
+        return matches;
+    }
+
+    /**
+     * Adds an edge for every pair of documents whose similarity is at least the
+     * threshold. Documents are queried in parallel and the edges are added to
+     * the graph in one step.
+     *
+     * @param urls      The URL of each document, in index order.
+     * @param graphData The graph to add the edges to.
+     * @param threshold The minimum similarity for an edge.
+     */
+    public void addEdgesTo(List<String> urls, GraphData graphData, double threshold) {
+        Matches[] rows = new Matches[vectors.length];
+        IntStream.range(0, vectors.length).parallel()
+                .forEach(i -> rows[i] = query(vectors[i], threshold, i + 1, -1));
+        List<SiteEdge> edges = new ArrayList<>();
+        for (int i = 0; i < rows.length; i++) {
+            for (int m = 0; m < rows[i].size(); m++) {
+                edges.add(new SiteEdge(urls.get(i), urls.get(rows[i].docAt(m)), rows[i].scoreAt(m)));
+            }
+        }
+        graphData.addEdges(edges);
+    }
+
+    private double exactSimilarity(SparseTermVector query, double queryNorm, int doc) {
+        return SimilarityMetricCalculator.dotProduct(query, vectors[doc]) / (queryNorm * vectors[doc].getNorm());
+    }
+
+    /**
+     * The documents found by a query and their similarities.
+     */
+    public static final class Matches {
+        private int[] docs = new int[8];
+        private float[] scores = new float[8];
+        private int size;
+
+        void add(int doc, float score) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            docs[size] = doc;
+            scores[size] = score;
+            size++;
+        }
+
+        /**
+         * Returns the number of matches.
+         *
+         * @return The match count.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the document ID of a match.
+         *
+         * @param index The position of the match.
+         * @return The document ID.
+         */
+        public int docAt(int index) {
+            return docs[index];
+        }
+
+        /**
+         * Returns the similarity of a match.
+         *
+         * @param index The position of the match.
+         * @return The cosine similarity.
+         */
+        public float scoreAt(int index) {
+            return scores[index];
+        }
+    }
+
+    /**
+     * A bounded min-heap of (document, score) pairs that keeps the best scores.
+     */
+    static final class TopHeap {
+        private final int[] docs;
+        private final float[] scores;
+        private int size;
+
+        TopHeap(int capacity) {
+            docs = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        boolean isFull() {
+            return size == docs.length;
+        }
+
+        float minScore() {
+            return scores[0];
+        }
+
+        /**
+         * Adds a pair if the heap has room or the score beats the current
+         * minimum. A NaN score, the similarity of a page with no words, is
+         * never kept, since it would block every later score from the root.
+         */
+        void offer(int doc, float score) {
+            if (Float.isNaN(score)) {
+                return;
+            }
+            if (size < docs.length) {
+                int i = size++;
+                while (i > 0 && scores[(i - 1) >>> 1] > score) {
+                    int parent = (i - 1) >>> 1;
+                    docs[i] = docs[parent];
+                    scores[i] = scores[parent];
+                    i = parent;
+                }
+                docs[i] = doc;
+                scores[i] = score;
+            } else if (score > scores[0]) {
+                siftDown(doc, score);
+            }
+        }
+
+        /**
+         * Empties the heap into {@code out}, highest score first.
+         */
+        void drainDescending(Matches out) {
+            int count = size;
+            int[] sortedDocs = new int[count];
+            float[] sortedScores = new float[count];
+            for (int i = count - 1; i >= 0; i--) {
+                sortedDocs[i] = docs[0];
+                sortedScores[i] = scores[0];
+                size--;
+                if (size > 0) {
+                    siftDown(docs[size], scores[size]);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                out.add(sortedDocs[i], sortedScores[i]);
+            }
+        }
+
+        /**
+         * Replaces the root with the given pair and restores heap order.
+         */
+        private void siftDown(int doc, float score) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (scores[child] >= score) {
+                    break;
+                }
+                docs[i] = docs[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            docs[i] = doc;
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Per-thread scratch space for queries: score accumulators indexed by
+     * document, the list of documents touched, and the ordered query terms.
+     */
+    private static final class Workspace {
+        final double[] score;
+        final boolean[] seen;
+        int[] touched = new int[64];
+        int touchedCount;
+        int[] termIds = new int[64];
+        double[] termWeights = new double[64];
+        double[] remaining = new double[65]; // remaining[k]: bound of terms k .. end
+
+        Workspace(int documents) {
+            score = new double[documents];
+            seen = new boolean[documents];
+        }
+
+        /**
+         * Orders the query terms by decreasing bound (query weight times the
+         * term's maximum weight) and computes the suffix sums of the bounds.
+         *
+         * @return The number of query terms present in the index.
+         */
+        int prepare(InvertedIndex index, SparseTermVector query, double queryNorm) {
+            int n = query.size();
+            if (termIds.length < n) {
+                termIds = new int[n];
+                termWeights = new double[n];
+                remaining = new double[n + 1];
+            }
+            long[] order = new long[n];
+            int terms = 0;
+            for (int i = 0; i < n; i++) {
+                int term = query.termIdAt(i);
+                if (term < index.maxWeight.length && index.maxWeight[term] > 0.0f && query.countAt(i) > 0) {
+                    float bound = (float) (query.countAt(i) / queryNorm * index.maxWeight[term]);
+                    order[terms++] = ((long) Float.floatToIntBits(bound) << 32) | i;
+                }
+            }
+            Arrays.sort(order, 0, terms);
+            for (int k = 0; k < terms; k++) {
+                int i = (int) order[terms - 1 - k];
+                termIds[k] = query.termIdAt(i);
+                termWeights[k] = query.countAt(i) / queryNorm;
+            }
+            remaining[terms] = 0.0;
+            for (int k = terms - 1; k >= 0; k--) {
+                remaining[k] = remaining[k + 1] + termWeights[k] * index.maxWeight[termIds[k]];
+            }
+            return terms;
+        }
+
+        /**
+         * Accumulates partial scores term by term until the remaining bound drops
+         * below the threshold. When {@code topN} is positive the threshold is
+         * raised to the N-th best partial score as it grows, since partial scores
+         * only increase.
+         *
+         * @return The position of the first query term not processed.
+         */
+        int accumulate(InvertedIndex index, int terms, double threshold, int topN, int minDoc, int excludeDoc) {
+            double bar = threshold;
+            double lastCheck = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < terms; k++) {
+                if (remaining[k] + SLACK < bar) {
+                    return k;
+                }
+                int term = termIds[k];
+                double weight = termWeights[k];
+                int start = index.postingStart[term];
+                int end = index.postingStart[term + 1];
+                if (minDoc > 0) {
+                    int found = Arrays.binarySearch(index.postingDocs, start, end, minDoc);
+                    start = found >= 0 ? found : -found - 1;
+                }
+                for (int p = start; p < end; p++) {
+                    int doc = index.postingDocs[p];
+                    if (doc == excludeDoc) {
+                        continue;
+                    }
+                    if (!seen[doc]) {
+                        seen[doc] = true;
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    score[doc] += weight * index.postingWeights[p];
+                }
+                // Re-estimate the N-th best partial score whenever the bound halves
+                if (topN > 0 && touchedCount >= topN && remaining[k + 1] < lastCheck / 2) {
+                    lastCheck = remaining[k + 1];
+                    TopHeap heap = new TopHeap(topN);
+                    for (int c = 0; c < touchedCount; c++) {
+                        heap.offer(touched[c], (float) score[touched[c]]);
+                    }
+                    bar = Math.max(bar, heap.minScore());
+                }
+            }
+            return terms;
+        }
+
+        void reset() {
+            for (int c = 0; c < touchedCount; c++) {
+                score[touched[c]] = 0.0;
+                seen[touched[c]] = false;
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -1,23 +1,66 @@
 package websimilaritiespj3;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
  * This class implements the K-Means clustering algorithm for clustering
  * frequency tables.
  * It groups frequency tables into a specified number of clusters based on their
  * similarity.
- * 
+ * <p>
+ * Documents are compared by cosine similarity, so this is spherical k-means:
+ * every document counts as its unit-length vector, and every centroid is the
+ * normalized mean of its documents. The centroids are dense float arrays over
+ * the term dictionary, laid out term by term so that the k weights of a term
+ * sit side by side; scoring a document against all centroids reads one short
+ * run of floats per term of the document, in parallel across documents.
+ * Iteration stops when at most a tolerated fraction of the documents changes
+ * cluster, or after a maximum number of iterations.
+ * <p>
+ * The initial centroids are chosen by k-means++: each is a document drawn
+ * with probability proportional to its squared distance from the nearest
+ * centroid chosen so far, which spreads them over the data. Assignment skips
+ * most similarity computations with Elkan's bounds. Between unit vectors the
+ * Euclidean distance is sqrt(2 - 2 cos), a metric, so every document keeps an
+ * upper bound on the distance to its own centroid and a lower bound on the
+ * distance to each other centroid, all moved by how far the centroids moved.
+ * A centroid is only scored for a document if neither its lower bound nor
+ * half its distance from the document's centroid rules it out, so a document
+ * torn between two or three centroids is scored against those alone.
+ *
  * @author Joel Santos
  * @version 3.0
  * @since 11-10-2023
  */
 public class KMeansClustering {
-    private int k; // Number of clusters
-    private List<FrequencyTable> data; // The data to be clustered
-    private List<FrequencyTable> centroids; // The centroids of the clusters
+    public static final int DEFAULT_K = 10;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    public static final int MAX_BOUNDS = 1 << 26; // Documents times clusters up to which bounds are kept, 256 MB
+    private static final double SLACK = 1e-5; // Bounds must win by this much, for the rounding of float centroids
+    // Per-thread dense buffer for building a centroid, shared by all clusterings and kept all zero between uses
+    private static final ThreadLocal<double[]> SUMS = ThreadLocal.withInitial(() -> new double[0]);
+
+    private final int k; // Number of clusters
+    private final SparseTermVector[] vectors; // The data to be clustered
+    private final float[] inverseNorms; // 1 / norm of each vector, or 0 for an empty one
+    private final int dimension; // Term IDs of the data are below this
+    private final float[] centroids; // [term * k + cluster], each centroid of unit length
+    private final int[][] centroidTerms; // Terms with a nonzero weight, by cluster
+    private final int[] assignments; // Cluster of each document
+    private final double[] upper; // Bound on the distance from each document to its centroid
+    private float[] lower; // [doc * k + cluster], bound on the distance to each centroid, or null
+    private final Random random;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double tolerance = 0.0; // Fraction of documents allowed to move in the last iteration
+    private boolean verbose = true; // Print a line per iteration
+    private boolean accelerated = true; // Skip similarities with Elkan's bounds
+    private int iterations; // Iterations run by the last call to cluster
+    private long distanceComputations; // Document-centroid similarities computed by the last call to cluster
+    private long distanceComputationsAvoided; // Skipped, compared with scoring every document every time
 
     /**
      * Constructor for KMeansClustering.
@@ -25,108 +68,799 @@ public class KMeansClustering {
      * @param data The data (list of frequency tables) to be clustered.
      */
     public KMeansClustering(List<FrequencyTable> data) {
-        this.k = 10; // Default number of clusters
-        this.data = data;
-        this.centroids = initializeCentroids();
+        this(data, DEFAULT_K, new Random().nextLong());
+    }
+
+    /**
+     * Constructor for KMeansClustering with a given number of clusters and
+     * random seed.
+     *
+     * @param data The data (list of frequency tables) to be clustered.
+     * @param k    The number of clusters, at most the number of documents.
+     * @param seed The seed for choosing the initial centroids.
+     */
+    public KMeansClustering(List<FrequencyTable> data, int k, long seed) {
+        this(freeze(data), k, seed, null);
     }
 
     /**
-     * Initializes centroids randomly from the data points.
-     * 
-     * @return A list of initial centroids.
+     * Constructor for KMeansClustering over frozen documents, optionally
+     * starting from given centroids instead of k-means++ seeding.
+     *
+     * @param vectors          The documents, which are not copied.
+     * @param k                The number of clusters, at most the number of
+     *                         documents.
+     * @param seed             The seed for choosing the initial centroids.
+     * @param initialCentroids Centroids laid out term by term with k weights
+     *                         per term, as {@link #centroids()} returns them,
+     *                         or null to seed with k-means++.
      */
-    private List<FrequencyTable> initializeCentroids() {
-        List<FrequencyTable> initialCentroids = new ArrayList<>();
-        Random rand = new Random();
-        for (int i = 0; i < k; i++) {
-            initialCentroids.add(data.get(rand.nextInt(data.size())));
+    KMeansClustering(SparseTermVector[] vectors, int k, long seed, float[] initialCentroids) {
+        this(vectors, inverseNorms(vectors), maxTerm(vectors), k, seed, initialCentroids);
+    }
+
+    /**
+     * Constructor for KMeansClustering over frozen documents whose inverse
+     * norms are already known, so that many clusterings of the same documents
+     * can share them.
+     *
+     * @param vectors          The documents, which are not copied.
+     * @param inverseNorms     1 / norm of each document, or 0 for an empty
+     *                         one, as {@link #inverseNorms} computes them;
+     *                         not copied either.
+     * @param maxTerm          The largest term ID of any document, or -1.
+     * @param k                The number of clusters, at most the number of
+     *                         documents.
+     * @param seed             The seed for choosing the initial centroids.
+     * @param initialCentroids Centroids laid out term by term, or null to
+     *                         seed with k-means++.
+     */
+    KMeansClustering(SparseTermVector[] vectors, float[] inverseNorms, int maxTerm, int k, long seed,
+            float[] initialCentroids) {
+        int n = vectors.length;
+        this.k = Math.max(1, Math.min(k, n));
+        this.vectors = vectors;
+        this.inverseNorms = inverseNorms;
+        boolean warm = initialCentroids != null && this.k == k;
+        this.dimension = Math.max(maxTerm + 1, warm ? initialCentroids.length / k : 0);
+        this.centroids = new float[dimension * this.k];
+        this.centroidTerms = new int[this.k][0];
+        this.assignments = new int[n];
+        this.upper = new double[n];
+        this.random = new Random(seed);
+        if (warm) {
+            initializeCentroids(initialCentroids);
+        } else {
+            initializeCentroids();
         }
-        return initialCentroids;
     }
 
     /**
-     * Executes the clustering process.
-     * 
-     * @return A mapping of centroids to their corresponding clusters (group of
-     *         frequency tables).
+     * Returns this thread's buffer for building a centroid, grown to the
+     * dimension if needed.
+     */
+    private double[] sums() {
+        double[] sum = SUMS.get();
+        if (sum.length < dimension) {
+            sum = new double[dimension];
+            SUMS.set(sum);
+        }
+        return sum;
+    }
+
+    /**
+     * Computes 1 / norm of every document, or 0 for an empty one.
+     *
+     * @param vectors The documents.
+     * @return The inverse norms, by document.
      */
-    public HT<FrequencyTable, ArrayList<FrequencyTable>> cluster() {
-        HT<FrequencyTable, ArrayList<FrequencyTable>> clusters = new HT<>();
+    static float[] inverseNorms(SparseTermVector[] vectors) {
+        float[] inverseNorms = new float[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            double norm = vectors[i].getNorm();
+            inverseNorms[i] = norm == 0.0 ? 0.0f : (float) (1.0 / norm);
+        }
+        return inverseNorms;
+    }
 
-        boolean centroidsChanged;
-        do {
-            // Clear existing clusters and reassign data points to nearest centroids
-            clusters.clear();
-            for (FrequencyTable centroid : centroids) {
-                clusters.put(centroid, new ArrayList<>());
+    /**
+     * Returns the largest term ID of any document.
+     *
+     * @param vectors The documents.
+     * @return The largest term ID, or -1 if every document is empty.
+     */
+    static int maxTerm(SparseTermVector[] vectors) {
+        int maxTerm = -1;
+        for (SparseTermVector vector : vectors) {
+            if (vector.size() > 0) {
+                maxTerm = Math.max(maxTerm, vector.termIdAt(vector.size() - 1));
             }
+        }
+        return maxTerm;
+    }
 
-            for (FrequencyTable dataPoint : data) {
-                FrequencyTable nearestCentroid = findNearestCentroid(dataPoint);
-                clusters.get(nearestCentroid).add(dataPoint);
+    /**
+     * Freezes a list of frequency tables.
+     *
+     * @param data The frequency tables.
+     * @return Their vectors, in list order.
+     */
+    static SparseTermVector[] freeze(List<FrequencyTable> data) {
+        SparseTermVector[] vectors = new SparseTermVector[data.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = data.get(i).freeze();
+        }
+        return vectors;
+    }
+
+    /**
+     * Initializes centroids from given ones, normalizing each.
+     */
+    private void initializeCentroids(float[] initialCentroids) {
+        double[] sum = sums();
+        int[][] terms = new int[k][16];
+        int[] termCounts = new int[k];
+        for (int term = 0; term < initialCentroids.length / k; term++) {
+            for (int c = 0; c < k; c++) {
+                if (initialCentroids[term * k + c] != 0.0f) {
+                    if (termCounts[c] == terms[c].length) {
+                        terms[c] = Arrays.copyOf(terms[c], termCounts[c] * 2);
+                    }
+                    terms[c][termCounts[c]++] = term;
+                }
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            for (int t = 0; t < termCounts[c]; t++) {
+                sum[terms[c][t]] = initialCentroids[terms[c][t] * k + c];
             }
+            store(c, sum, terms[c], termCounts[c]);
+        }
+    }
 
-            // Recalculate centroids and check for changes
-            centroidsChanged = false;
-            List<FrequencyTable> newCentroids = recalculateCentroids(clusters);
-            for (int i = 0; i < centroids.size(); i++) {
-                if (!newCentroids.get(i).equals(centroids.get(i))) {
-                    centroidsChanged = true;
-                    break;
+    /**
+     * Initializes centroids from the data points with k-means++ seeding. Each
+     * centroid after the first is drawn with probability proportional to the
+     * squared distance from the nearest centroid so far, and the distances are
+     * updated in parallel. Empty documents are never drawn.
+     */
+    private void initializeCentroids() {
+        int n = vectors.length;
+        if (n == 0) {
+            return;
+        }
+        double[] weights = new double[n]; // Squared distance to the nearest centroid so far
+        for (int i = 0; i < n; i++) {
+            weights[i] = inverseNorms[i] == 0.0f ? 0.0 : 1.0;
+        }
+        for (int c = 0; c < k; c++) {
+            int doc = sample(weights);
+            setCentroid(c, doc);
+            if (c + 1 < k) {
+                int centroid = c;
+                IntStream.range(0, n).parallel().forEach(i -> {
+                    if (weights[i] > 0.0) {
+                        double similarity = similarity(vectors[i], inverseNorms[i], centroid);
+                        weights[i] = Math.min(weights[i], Math.max(0.0, 2.0 - 2.0 * similarity));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Draws a document with probability proportional to its weight, or any
+     * document if every weight is 0.
+     */
+    private int sample(double[] weights) {
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        if (total == 0.0) {
+            return random.nextInt(weights.length); // Fewer distinct documents than clusters
+        }
+        double target = random.nextDouble() * total;
+        int last = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0.0) {
+                last = i;
+                target -= weights[i];
+                if (target < 0.0) {
+                    return i;
                 }
             }
-            centroids = newCentroids;
-        } while (centroidsChanged);
+        }
+        return last; // Rounding left a little of the total over
+    }
+
+    /**
+     * Sets the maximum number of iterations.
+     *
+     * @param maxIterations The maximum, at least 1.
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = Math.max(1, maxIterations);
+    }
+
+    /**
+     * Sets the fraction of documents that may still change cluster in an
+     * iteration for the clustering to count as converged. With 0, iteration
+     * goes on until no document moves.
+     *
+     * @param tolerance The fraction, between 0 and 1.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Sets whether a line of progress is printed for every iteration.
+     *
+     * @param verbose True to print progress.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets whether assignment skips the similarities that Elkan's bounds prove
+     * cannot change a document's cluster. Without it, or with more than
+     * {@link #MAX_BOUNDS} documents times clusters, every document is scored
+     * against every centroid in every iteration, as in Lloyd's algorithm.
+     *
+     * @param accelerated True to use the bounds.
+     */
+    public void setAccelerated(boolean accelerated) {
+        this.accelerated = accelerated;
+    }
+
+    /**
+     * Executes the clustering process.
+     *
+     * @return The cluster of each document, in list order; callers must not
+     *         modify it.
+     */
+    public int[] cluster() {
+        int n = vectors.length;
+        Arrays.fill(assignments, -1);
+        iterations = 0;
+        distanceComputations = 0;
+        distanceComputationsAvoided = 0;
+        lower = accelerated && (long) n * k <= MAX_BOUNDS ? new float[n * k] : null;
+        long start = System.nanoTime();
+        while (iterations < maxIterations && n > 0) {
+            long iterationStart = System.nanoTime();
+            LongAdder computed = new LongAdder();
+            int moved = lower != null && iterations > 0 ? assignBounded(computed) : assign(computed);
+            iterations++;
+            distanceComputations += computed.sum();
+            distanceComputationsAvoided += (long) n * k - computed.sum();
+            boolean converged = moved <= tolerance * n;
+            if (!converged) {
+                recalculateCentroids();
+            }
+            if (verbose) {
+                System.out.println("K-means iteration " + iterations + ": " + moved + " of " + n
+                        + " documents moved, " + computed.sum() + " similarities computed, "
+                        + (System.nanoTime() - iterationStart) / 1_000_000 + " ms");
+            }
+            if (converged) {
+                break;
+            }
+        }
+        if (verbose) {
+            System.out.println("K-means clustered " + n + " documents into " + k + " clusters in " + iterations
+                    + " iterations, " + (System.nanoTime() - start) / 1_000_000 + " ms; "
+                    + distanceComputationsAvoided + " of " + (distanceComputations + distanceComputationsAvoided)
+                    + " similarities avoided");
+        }
+        return assignments;
+    }
 
-        return clusters;
+    /**
+     * Assigns every document to the centroid it is most similar to, in
+     * parallel, scoring every document against every centroid. The bounds are
+     * set to the exact distances to the nearest and second nearest centroids.
+     *
+     * @param computed Receives the number of similarities computed.
+     * @return The number of documents whose cluster changed.
+     */
+    private int assign(LongAdder computed) {
+        return IntStream.range(0, vectors.length).parallel().map(i -> {
+            if (inverseNorms[i] == 0.0f) {
+                return moveTo(i, 0); // Equally far from every centroid
+            }
+            computed.add(k);
+            return moveTo(i, nearest(i, new double[k]));
+        }).sum();
     }
 
     /**
-     * Finds the nearest centroid for a given data point.
-     * 
-     * @param dataPoint The data point for which to find the nearest centroid.
+     * Assigns every document to the centroid it is most similar to, in
+     * parallel, scoring only the centroids that the bounds cannot rule out.
+     * When more than a quarter of them remain, all are scored in one pass,
+     * which reads the centroids no more than scoring a few of them one by one.
+     *
+     * @param computed Receives the number of similarities computed.
+     * @return The number of documents whose cluster changed.
+     */
+    private int assignBounded(LongAdder computed) {
+        double[] gaps = centroidDistances();
+        double[] halfGaps = new double[k];
+        for (int c = 0; c < k; c++) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for (int other = 0; other < k; other++) {
+                if (other != c) {
+                    nearest = Math.min(nearest, gaps[c * k + other]);
+                }
+            }
+            halfGaps[c] = nearest / 2.0;
+        }
+        return IntStream.range(0, vectors.length).parallel().map(i -> {
+            int current = assignments[i];
+            if (inverseNorms[i] == 0.0f || upper[i] <= halfGaps[current] - SLACK) {
+                return 0;
+            }
+            int base = i * k;
+            double bound = upper[i];
+            int candidates = 0;
+            for (int c = 0; c < k; c++) {
+                if (c != current && bound > lower[base + c] - SLACK && bound > gaps[current * k + c] / 2.0 - SLACK) {
+                    candidates++;
+                }
+            }
+            if (candidates == 0) {
+                return 0;
+            }
+            if (candidates > k / 4) {
+                computed.add(k);
+                return moveTo(i, nearest(i, new double[k]));
+            }
+            computed.increment();
+            double distance = distance(similarity(vectors[i], inverseNorms[i], current)); // Tighten the upper bound
+            upper[i] = distance;
+            lower[base + current] = (float) distance;
+            int best = current;
+            for (int c = 0; c < k; c++) {
+                if (c != current && upper[i] > lower[base + c] - SLACK
+                        && upper[i] > gaps[best * k + c] / 2.0 - SLACK) { // Against the nearest centroid so far
+                    computed.increment();
+                    double other = distance(similarity(vectors[i], inverseNorms[i], c));
+                    lower[base + c] = (float) other;
+                    if (other < upper[i]) {
+                        upper[i] = other;
+                        best = c;
+                    }
+                }
+            }
+            return moveTo(i, best);
+        }).sum();
+    }
+
+    /**
+     * Finds the centroid nearest to a document and sets the document's bounds
+     * to the exact distances to every centroid.
+     *
      * @return The nearest centroid.
      */
-    private FrequencyTable findNearestCentroid(FrequencyTable dataPoint) {
-        FrequencyTable nearestCentroid = null;
-        double maxSimilarity = Double.NEGATIVE_INFINITY;
-        for (FrequencyTable centroid : centroids) {
-            double similarity = SimilarityMetricCalculator.calculateCosineSimilarity(dataPoint, centroid);
-            if (similarity > maxSimilarity) {
-                maxSimilarity = similarity;
-                nearestCentroid = centroid;
+    private int nearest(int i, double[] scores) {
+        scoreAll(vectors[i], inverseNorms[i], scores);
+        int best = 0;
+        for (int c = 1; c < k; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        upper[i] = distance(scores[best]);
+        if (lower != null) {
+            for (int c = 0; c < k; c++) {
+                lower[i * k + c] = (float) distance(scores[c]);
             }
         }
-        return nearestCentroid;
+        return best;
     }
 
     /**
-     * Recalculates the centroids based on the current clusters.
-     * 
-     * @param clusters The current clusters.
-     * @return A list of new centroids.
+     * Moves a document to a cluster.
+     *
+     * @return 1 if its cluster changed, or 0.
      */
-    private List<FrequencyTable> recalculateCentroids(HT<FrequencyTable, ArrayList<FrequencyTable>> clusters) {
-        List<FrequencyTable> newCentroids = new ArrayList<>();
-        for (HT.Node<FrequencyTable, ArrayList<FrequencyTable>> entry : clusters.entrySet()) {
-            FrequencyTable newCentroid = calculateAverageCentroid(entry.value);
-            newCentroids.add(newCentroid);
+    private int moveTo(int i, int c) {
+        if (assignments[i] == c) {
+            return 0;
         }
-        return newCentroids;
+        assignments[i] = c;
+        return 1;
+    }
+
+    /**
+     * Returns the distance between every pair of centroids, as a k by k
+     * matrix. A centroid more than twice as far from a document's centroid as
+     * the document itself cannot be nearer to the document.
+     */
+    private double[] centroidDistances() {
+        double[] distances = new double[k * k];
+        IntStream.range(0, k).parallel().forEach(c -> {
+            double[] dots = new double[k];
+            for (int term : centroidTerms[c]) {
+                int base = term * k;
+                double weight = centroids[base + c];
+                for (int other = 0; other < k; other++) {
+                    dots[other] += weight * centroids[base + other];
+                }
+            }
+            for (int other = 0; other < k; other++) {
+                distances[c * k + other] = distance(dots[other]);
+            }
+        });
+        return distances;
     }
 
     /**
-     * Calculates the average centroid of a given cluster.
-     * 
-     * @param cluster The cluster for which to calculate the average centroid.
-     * @return The average centroid.
+     * Converts the cosine similarity of two unit vectors into their Euclidean
+     * distance.
+     */
+    private static double distance(double similarity) {
+        return Math.sqrt(Math.max(0.0, 2.0 - 2.0 * similarity));
+    }
+
+    /**
+     * Computes the cosine similarity of a vector with every centroid.
+     */
+    private void scoreAll(SparseTermVector vector, float inverseNorm, double[] scores) {
+        int[] ids = vector.termIds();
+        int[] counts = vector.counts();
+        for (int j = 0; j < ids.length; j++) {
+            if (ids[j] >= dimension) {
+                continue; // A term no centroid has
+            }
+            double weight = counts[j] * (double) inverseNorm;
+            int base = ids[j] * k;
+            for (int c = 0; c < k; c++) {
+                scores[c] += weight * centroids[base + c];
+            }
+        }
+    }
+
+    /**
+     * Recalculates the centroids based on the current clusters, in parallel
+     * over the clusters. A cluster left empty takes the document that is least
+     * similar to its own centroid, so that no cluster is lost. The bounds of
+     * every document are then loosened by how far the centroids moved.
+     */
+    private void recalculateCentroids() {
+        int n = vectors.length;
+        int[] memberStart = new int[k + 1];
+        for (int i = 0; i < n; i++) {
+            if (inverseNorms[i] != 0.0f) { // Empty documents do not move a centroid
+                memberStart[assignments[i] + 1]++;
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+        int[] members = new int[memberStart[k]];
+        int[] next = Arrays.copyOf(memberStart, k);
+        for (int i = 0; i < n; i++) {
+            if (inverseNorms[i] != 0.0f) {
+                members[next[assignments[i]]++] = i;
+            }
+        }
+
+        double[] moves = new double[k];
+        IntStream.range(0, k).parallel().forEach(c -> {
+            if (memberStart[c] < memberStart[c + 1]) {
+                moves[c] = setCentroid(c, members, memberStart[c], memberStart[c + 1]);
+            }
+        });
+        for (int c = 0; c < k; c++) {
+            if (memberStart[c] == memberStart[c + 1]) {
+                int farthest = leastSimilarDocument();
+                if (farthest >= 0) {
+                    moves[c] = setCentroid(c, farthest);
+                    assignments[farthest] = c;
+                    upper[farthest] = 0.0; // It is its centroid
+                    if (lower != null) {
+                        Arrays.fill(lower, farthest * k, farthest * k + k, 0.0f);
+                    }
+                }
+            }
+        }
+
+        if (lower != null) {
+            float[] bounds = lower;
+            IntStream.range(0, n).parallel().forEach(i -> {
+                upper[i] += moves[assignments[i]];
+                int base = i * k;
+                for (int c = 0; c < k; c++) {
+                    bounds[base + c] = (float) Math.max(0.0, bounds[base + c] - moves[c]);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the document least similar to the centroid of its cluster, or
+     * -1 if every document is empty.
+     */
+    private int leastSimilarDocument() {
+        int farthest = -1;
+        double lowest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < vectors.length; i++) {
+            if (inverseNorms[i] == 0.0f) {
+                continue;
+            }
+            double similarity = similarity(vectors[i], inverseNorms[i], assignments[i]);
+            if (similarity < lowest) {
+                lowest = similarity;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Makes a centroid the normalized sum of the unit vectors of a range of
+     * documents.
+     *
+     * @return The distance the centroid moved.
+     */
+    private double setCentroid(int c, int[] members, int from, int to) {
+        double[] sum = sums();
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (int m = from; m < to; m++) {
+            int i = members[m];
+            int[] ids = vectors[i].termIds();
+            int[] counts = vectors[i].counts();
+            double inverseNorm = inverseNorms[i];
+            for (int j = 0; j < ids.length; j++) {
+                if (sum[ids[j]] == 0.0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = ids[j];
+                }
+                sum[ids[j]] += counts[j] * inverseNorm;
+            }
+        }
+        return store(c, sum, touched, touchedCount);
+    }
+
+    /**
+     * Makes a centroid the normalized form of a sparse sum, and clears the
+     * sum.
+     *
+     * @param sum          The sum, indexed by term.
+     * @param touched      The terms with a nonzero sum.
+     * @param touchedCount The number of such terms.
+     * @return The distance the centroid moved.
+     */
+    private double store(int c, double[] sum, int[] touched, int touchedCount) {
+        double sumOfSquares = 0.0;
+        for (int t = 0; t < touchedCount; t++) {
+            sumOfSquares += sum[touched[t]] * sum[touched[t]];
+        }
+        double scale = sumOfSquares == 0.0 ? 0.0 : 1.0 / Math.sqrt(sumOfSquares);
+        float[] weights = new float[touchedCount];
+        double dot = 0.0; // With the old centroid
+        for (int t = 0; t < touchedCount; t++) {
+            int term = touched[t];
+            weights[t] = (float) (sum[term] * scale);
+            dot += weights[t] * (double) centroids[term * k + c];
+            sum[term] = 0.0;
+        }
+        for (int term : centroidTerms[c]) {
+            centroids[term * k + c] = 0.0f;
+        }
+        for (int t = 0; t < touchedCount; t++) {
+            centroids[touched[t] * k + c] = weights[t];
+        }
+        centroidTerms[c] = Arrays.copyOf(touched, touchedCount);
+        return distance(dot);
+    }
+
+    /**
+     * Makes a centroid the unit vector of a single document.
+     *
+     * @return The distance the centroid moved.
+     */
+    private double setCentroid(int c, int doc) {
+        return setCentroid(c, new int[] { doc }, 0, 1);
+    }
+
+    /**
+     * Computes the cosine similarity of a vector with one centroid.
+     */
+    private double similarity(SparseTermVector vector, float inverseNorm, int c) {
+        int[] ids = vector.termIds();
+        int[] counts = vector.counts();
+        double dot = 0.0;
+        for (int j = 0; j < ids.length; j++) {
+            if (ids[j] < dimension) {
+                dot += counts[j] * (double) centroids[ids[j] * k + c];
+            }
+        }
+        return dot * inverseNorm;
+    }
+
+    /**
+     * Computes the cosine similarity of a document with a cluster's centroid.
+     *
+     * @param table The document.
+     * @param c     The cluster.
+     * @return The similarity, or 0 for an empty document.
+     */
+    public double similarity(FrequencyTable table, int c) {
+        SparseTermVector vector = table.freeze();
+        double norm = vector.getNorm();
+        return norm == 0.0 ? 0.0 : similarity(vector, (float) (1.0 / norm), c);
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the centroids, laid out term by term with k weights per term.
+     *
+     * @return The centroids, which must not be modified.
+     */
+    float[] centroids() {
+        return centroids;
+    }
+
+    /**
+     * Returns the cluster of each document, as the last call to cluster left
+     * them.
+     *
+     * @return The clusters, which must not be modified.
+     */
+    int[] assignments() {
+        return assignments;
+    }
+
+    /**
+     * Returns the number of documents in every cluster.
+     *
+     * @return The cluster sizes, by cluster.
+     */
+    public int[] getClusterSizes() {
+        int[] sizes = new int[k];
+        for (int c : assignments) {
+            if (c >= 0) {
+                sizes[c]++;
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns the number of document-centroid similarities the last call to
+     * cluster computed.
+     *
+     * @return The similarity count.
+     */
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+
+    /**
+     * Returns the number of document-centroid similarities the last call to
+     * cluster skipped thanks to the bounds, compared with scoring every
+     * document against every centroid in every iteration.
+     *
+     * @return The number of similarities avoided.
+     */
+    public long getDistanceComputationsAvoided() {
+        return distanceComputationsAvoided;
+    }
+
+    /**
+     * Returns the number of iterations the last call to cluster ran.
+     *
+     * @return The iteration count.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the mean silhouette of a random sample of the documents, with
+     * cosine distance. A document's silhouette compares its mean distance a to
+     * the other documents of its cluster with its mean distance b to the
+     * documents of the nearest other cluster, as (b - a) / max(a, b): near 1
+     * when it sits well inside its cluster, near 0 on a border, and negative
+     * when it would fit better elsewhere.
+     * <p>
+     * Since cosine distance is 1 minus a dot product with a unit vector, the
+     * mean distance from a document to a cluster is 1 minus its dot product
+     * with the mean of the cluster's unit vectors, and that mean is the
+     * centroid scaled by the members' total similarity to it. So each sampled
+     * document costs one scoring against all centroids, and its silhouette is
+     * exact over every document, not just the sample. Empty documents are
+     * left out.
+     *
+     * @param sampleSize The number of documents to average over; all of them
+     *                   if there are no more than this.
+     * @param seed       The seed for drawing the sample.
+     * @return The mean silhouette, between -1 and 1, or NaN before the first
+     *         call to cluster.
+     */
+    public double getSilhouette(int sampleSize, long seed) {
+        if (iterations == 0) {
+            return Double.NaN;
+        }
+        int n = vectors.length;
+        int[] sizes = new int[k];
+        double[] lengths = new double[k]; // Norm of the sum of each cluster's unit vectors
+        int count = 0;
+        int[] documents = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (inverseNorms[i] != 0.0f) {
+                sizes[assignments[i]]++;
+                documents[count++] = i;
+            }
+        }
+        double[] similarities = IntStream.range(0, count).parallel()
+                .mapToDouble(d -> similarity(vectors[documents[d]], inverseNorms[documents[d]],
+                        assignments[documents[d]]))
+                .toArray();
+        for (int d = 0; d < count; d++) {
+            lengths[assignments[documents[d]]] += similarities[d];
+        }
+        Random sampler = new Random(seed);
+        int sampled = Math.min(count, Math.max(1, sampleSize));
+        for (int d = 0; d < sampled; d++) { // Partial Fisher-Yates shuffle
+            int other = d + sampler.nextInt(count - d);
+            int swap = documents[d];
+            documents[d] = documents[other];
+            documents[other] = swap;
+        }
+        if (sampled == 0) {
+            return 0.0;
+        }
+        return IntStream.range(0, sampled).parallel().mapToDouble(d -> {
+            int i = documents[d];
+            int own = assignments[i];
+            if (sizes[own] < 2) {
+                return 0.0; // A document alone in its cluster
+            }
+            double[] scores = new double[k];
+            scoreAll(vectors[i], inverseNorms[i], scores);
+            double a = 1.0 - (lengths[own] * scores[own] - 1.0) / (sizes[own] - 1);
+            double b = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < k; c++) {
+                if (c != own && sizes[c] > 0) {
+                    b = Math.min(b, 1.0 - lengths[c] * scores[c] / sizes[c]);
+                }
+            }
+            double larger = Math.max(a, b);
+            return b == Double.POSITIVE_INFINITY || larger <= 0.0 ? 0.0 : (b - a) / larger;
+        }).sum() / sampled;
+    }
+
+    /**
+     * Returns the sum over all documents of the squared Euclidean distance
+     * between the document's unit vector and its centroid, which is 2 minus
+     * twice their cosine similarity.
+     *
+     * @return The inertia of the current clustering, or NaN before the
+     *         first call to cluster.
      */
-    private FrequencyTable calculateAverageCentroid(ArrayList<FrequencyTable> cluster) {
-        FrequencyTable averageCentroid = new FrequencyTable();
-        for (FrequencyTable dataPoint : cluster) {
-            averageCentroid.merge(dataPoint);
+    public double getInertia() {
+        if (iterations == 0) {
+            return Double.NaN;
         }
-        averageCentroid.divide(cluster.size());
-        return averageCentroid;
+        return IntStream.range(0, vectors.length).parallel()
+                .mapToDouble(i -> inverseNorms[i] == 0.0f ? 0.0
+                        : 2.0 - 2.0 * similarity(vectors[i], inverseNorms[i], assignments[i]))
+                .sum();
     }
 }
@@ -0,0 +1,229 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses the number of clusters, and the best of several random starts, by
+ * running many k-means clusterings of the same pages at once.
+ * <p>
+ * Every configuration is a number of clusters and a seed for k-means++
+ * seeding. The configurations run concurrently, each on its own
+ * {@link KMeansClustering} that itself assigns documents in parallel. All
+ * runs read the same frozen vectors and inverse norms, built once here, so
+ * only the centroids and the per-document assignments and bounds of the runs
+ * in flight take memory of their own. Each run is scored by the mean
+ * silhouette of a sample of documents, ties going to the lower inertia, and
+ * only the best run so far is kept.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public class KMeansModelSelection {
+    public static final int DEFAULT_MIN_K = 2;
+    public static final int DEFAULT_MAX_K = 20;
+    public static final int DEFAULT_RESTARTS = 3; // Seeds tried for every k
+    public static final int DEFAULT_SAMPLE_SIZE = 2000; // Documents whose silhouette is averaged
+
+    // Silhouette highest first, then inertia lowest first
+    private static final Comparator<Run> RANKING = (a, b) -> {
+        int order = Double.compare(b.silhouette, a.silhouette);
+        return order != 0 ? order : Double.compare(a.inertia, b.inertia);
+    };
+
+    private final List<String> urls;
+    private final SparseTermVector[] vectors; // Shared by every run
+    private final float[] inverseNorms; // Shared by every run
+    private final int maxTerm;
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+    private int maxIterations = KMeansClustering.DEFAULT_MAX_ITERATIONS;
+    private boolean verbose = true; // Print a line per run
+    private final List<Run> runs = new ArrayList<>(); // Of the last selection
+    private KMeansClustering best; // Best clustering of the last selection
+    private Run bestRun;
+
+    /**
+     * Constructor for KMeansModelSelection.
+     *
+     * @param urls   The URLs of the pages.
+     * @param tables The frequency tables of the pages, in the same order.
+     */
+    public KMeansModelSelection(List<String> urls, List<FrequencyTable> tables) {
+        this.urls = new ArrayList<>(urls);
+        this.vectors = KMeansClustering.freeze(tables);
+        this.inverseNorms = KMeansClustering.inverseNorms(vectors);
+        this.maxTerm = KMeansClustering.maxTerm(vectors);
+    }
+
+    /**
+     * Sets the number of documents whose silhouette scores a run.
+     *
+     * @param sampleSize The sample size, at least 1.
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    /**
+     * Sets the maximum number of iterations of every run.
+     *
+     * @param maxIterations The maximum, at least 1.
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = Math.max(1, maxIterations);
+    }
+
+    /**
+     * Sets whether a line is printed as every run finishes.
+     *
+     * @param verbose True to print progress.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Runs every configuration from minK to maxK clusters with the given
+     * number of seeds each, concurrently, and keeps the best.
+     *
+     * @param minK     The smallest number of clusters, at least 2.
+     * @param maxK     The largest number of clusters; values above the number
+     *                 of pages are skipped.
+     * @param restarts The number of seeds tried for every k, at least 1.
+     * @param seed     The seed the runs' seeds are derived from.
+     * @return The runs, best first.
+     */
+    public List<Run> select(int minK, int maxK, int restarts, long seed) {
+        int low = Math.max(2, minK);
+        int high = Math.min(maxK, vectors.length);
+        int seeds = Math.max(1, restarts);
+        int configurations = Math.max(0, high - low + 1) * seeds;
+        runs.clear();
+        best = null;
+        bestRun = null;
+        long start = System.nanoTime();
+        IntStream.range(0, configurations).parallel().forEach(configuration -> {
+            int k = low + configuration / seeds;
+            long runSeed = seed + configuration;
+            long runStart = System.nanoTime();
+            KMeansClustering clustering = new KMeansClustering(vectors, inverseNorms, maxTerm, k, runSeed, null);
+            clustering.setVerbose(false);
+            clustering.setMaxIterations(maxIterations);
+            clustering.cluster();
+            Run run = new Run(k, runSeed, clustering.getIterations(), clustering.getInertia(),
+                    clustering.getSilhouette(sampleSize, runSeed));
+            if (verbose) {
+                System.out.printf("K-means k = %d, seed %d: %d iterations, inertia %.1f, silhouette %.4f, %d ms%n",
+                        run.k, run.seed, run.iterations, run.inertia, run.silhouette,
+                        (System.nanoTime() - runStart) / 1_000_000);
+            }
+            synchronized (this) {
+                runs.add(run);
+                if (bestRun == null || RANKING.compare(run, bestRun) < 0) {
+                    best = clustering;
+                    bestRun = run;
+                }
+            }
+        });
+        Collections.sort(runs, RANKING);
+        if (verbose && bestRun != null) {
+            System.out.printf("Selected k = %d (seed %d, silhouette %.4f) from %d runs in %d ms%n", bestRun.k,
+                    bestRun.seed, bestRun.silhouette, runs.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        return new ArrayList<>(runs);
+    }
+
+    /**
+     * Returns the best run of the last selection.
+     *
+     * @return The run, or null before the first selection or if it ran
+     *         nothing.
+     */
+    public Run getBestRun() {
+        return bestRun;
+    }
+
+    /**
+     * Returns an online model holding the best clustering of the last
+     * selection, which can be saved and kept up to date as pages are added.
+     *
+     * @return The model, or null before the first selection or if it ran
+     *         nothing.
+     */
+    public OnlineKMeansClustering getBestModel() {
+        return best == null ? null : OnlineKMeansClustering.fromClustering(urls, vectors, best, bestRun.seed + 1);
+    }
+
+    /**
+     * The outcome of one configuration.
+     */
+    public static final class Run {
+        private final int k;
+        private final long seed;
+        private final int iterations;
+        private final double inertia;
+        private final double silhouette;
+
+        Run(int k, long seed, int iterations, double inertia, double silhouette) {
+            this.k = k;
+            this.seed = seed;
+            this.iterations = iterations;
+            this.inertia = inertia;
+            this.silhouette = silhouette;
+        }
+
+        /**
+         * Returns the number of clusters.
+         *
+         * @return k.
+         */
+        public int getK() {
+            return k;
+        }
+
+        /**
+         * Returns the seed of the k-means++ seeding.
+         *
+         * @return The seed.
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Returns the number of iterations the run took.
+         *
+         * @return The iteration count.
+         */
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Returns the inertia of the clustering.
+         *
+         * @return The inertia.
+         */
+        public double getInertia() {
+            return inertia;
+        }
+
+        /**
+         * Returns the mean silhouette of the sampled documents.
+         *
+         * @return The silhouette, between -1 and 1.
+         */
+        public double getSilhouette() {
+            return silhouette;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("k = %d, seed %d: silhouette %.4f, inertia %.1f", k, seed, silhouette, inertia);
+        }
+    }
+}
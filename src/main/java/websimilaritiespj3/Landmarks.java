@@ -0,0 +1,187 @@
+package websimilaritiespj3;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Shortest-path distances from a few landmark vertices of a {@link SiteGraph}
+ * to every vertex, used as A* lower bounds: by the triangle inequality the
+ * distance from v to t is at least |d(L, t) - d(L, v)| for every landmark L.
+ * <p>
+ * Landmarks are picked by farthest-point selection, so they sit on the edge of
+ * the graph and give tight bounds for most queries. The table records the
+ * signature of the graph it was computed for and can be saved to disk, so it
+ * only has to be recomputed when the graph changes.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class Landmarks implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_COUNT = 8;
+
+    private final long graphSignature; // SiteGraph.signature() of the graph
+    private final int vertexCount;
+    private final int[] vertices; // The landmark vertices
+    private final double[][] distances; // [landmark][vertex], or infinity if unreachable
+
+    private Landmarks(long graphSignature, int vertexCount, int[] vertices, double[][] distances) {
+        this.graphSignature = graphSignature;
+        this.vertexCount = vertexCount;
+        this.vertices = vertices;
+        this.distances = distances;
+    }
+
+    /**
+     * Picks landmarks for a graph and computes their distances to every
+     * vertex. Each landmark after the first is the vertex farthest from the
+     * ones already chosen, preferring vertices that none of them can reach so
+     * that every component gets a landmark.
+     *
+     * @param graph The graph.
+     * @param count The number of landmarks wanted.
+     * @return The landmark table.
+     */
+    public static Landmarks compute(SiteGraph graph, int count) {
+        int n = graph.vertexCount();
+        double[] nearest = new double[n]; // Distance to the closest landmark so far
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        double[] tree = new double[n];
+        int[] parents = new int[n];
+        int[] entries = new int[n];
+
+        // Start from the vertex farthest from the first vertex rather than that vertex itself
+        count = Math.min(count, graph.liveVertexCount());
+        int next = 0;
+        while (next < n && graph.urlOf(next) == null) {
+            next++;
+        }
+        if (count > 0) {
+            ShortestPathEngine.shortestPathTree(graph, next, tree, parents, entries);
+            next = farthest(graph, tree, false);
+        }
+        int[] vertices = new int[count];
+        double[][] distances = new double[count][];
+        for (int l = 0; l < count; l++) {
+            vertices[l] = next;
+            ShortestPathEngine.shortestPathTree(graph, next, tree, parents, entries);
+            double[] row = new double[n];
+            for (int v = 0; v < n; v++) {
+                row[v] = tree[v] == Double.MAX_VALUE ? Double.POSITIVE_INFINITY : tree[v];
+                nearest[v] = Math.min(nearest[v], row[v]);
+            }
+            distances[l] = row;
+            next = farthest(graph, nearest, true);
+            if (next < 0) { // Every vertex is a landmark already
+                vertices = Arrays.copyOf(vertices, l + 1);
+                distances = Arrays.copyOf(distances, l + 1);
+                break;
+            }
+        }
+        return new Landmarks(graph.signature(), n, vertices, distances);
+    }
+
+    /**
+     * Returns the vertex with the largest distance, skipping removed vertices
+     * and, if asked, vertices at distance 0, which are the chosen landmarks.
+     * Returns -1 if no vertex qualifies.
+     */
+    private static int farthest(SiteGraph graph, double[] distances, boolean skipZero) {
+        int best = -1;
+        double bestDistance = -1.0;
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            if (graph.urlOf(v) == null) {
+                continue;
+            }
+            double d = distances[v] == Double.MAX_VALUE ? Double.POSITIVE_INFINITY : distances[v];
+            if (d > bestDistance && (!skipZero || d > 0.0)) {
+                best = v;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns whether this table was computed for the given graph.
+     *
+     * @param graph The graph.
+     * @return True if the graph is unchanged since the table was computed.
+     */
+    public boolean matches(SiteGraph graph) {
+        return graph.vertexCount() == vertexCount && graph.signature() == graphSignature;
+    }
+
+    /**
+     * Returns a lower bound on the distance between two vertices.
+     *
+     * @param vertex The vertex.
+     * @param target The target vertex.
+     * @return The largest landmark bound, or 0 if no landmark reaches both.
+     */
+    public double lowerBound(int vertex, int target) {
+        double bound = 0.0;
+        for (double[] row : distances) {
+            double d = row[target] - row[vertex]; // NaN if both are unreachable
+            if (d < 0.0) {
+                d = -d;
+            }
+            if (d > bound && d != Double.POSITIVE_INFINITY) {
+                bound = d;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the number of landmarks.
+     *
+     * @return The landmark count.
+     */
+    public int size() {
+        return vertices.length;
+    }
+
+    /**
+     * Returns a landmark vertex.
+     *
+     * @param index The landmark, 0 .. size() - 1.
+     * @return The vertex.
+     */
+    public int vertexAt(int index) {
+        return vertices[index];
+    }
+
+    /**
+     * Saves the table to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Loads a table saved with {@link #save}.
+     *
+     * @param path The file to read.
+     * @return The table.
+     * @throws IOException If the file cannot be read or does not hold a table.
+     */
+    public static Landmarks load(String path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+            return (Landmarks) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a landmark table: " + path, e);
+        }
+    }
+}
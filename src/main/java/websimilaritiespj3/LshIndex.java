@@ -0,0 +1,267 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * A locality-sensitive hashing index over MinHash signatures. Each signature is
+ * cut into bands of consecutive rows, and documents whose signatures agree on
+ * every row of at least one band land in the same bucket. A query only looks
+ * at the buckets of its own bands, so candidates are found without scanning
+ * the corpus.
+ * <p>
+ * With b bands of r rows, a pair with Jaccard similarity s becomes a candidate
+ * with probability 1 - (1 - s^r)^b. Documents can be added at any time.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class LshIndex {
+    public static final int DEFAULT_BANDS = 32;
+    public static final int DEFAULT_ROWS = 4;
+
+    private final int bands;
+    private final int rows;
+    private final LongIntMap[] buckets; // Per band: band hash -> most recently added document
+    private int[] next; // next[doc * bands + band]: next document in the same bucket, or -1
+    private int[][] signatures; // By document
+    private int size;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs an empty index with 32 bands of 4 rows.
+     */
+    public LshIndex() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param bands The number of bands.
+     * @param rows  The number of signature rows per band.
+     * @throws IllegalArgumentException If the bands do not fit in a signature.
+     */
+    public LshIndex(int bands, int rows) {
+        if (bands <= 0 || rows <= 0 || bands * rows > MinHash.SIGNATURE_LENGTH) {
+            throw new IllegalArgumentException("Bands x rows must fit in " + MinHash.SIGNATURE_LENGTH + " rows.");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.buckets = new LongIntMap[bands];
+        for (int b = 0; b < bands; b++) {
+            buckets[b] = new LongIntMap();
+        }
+        this.next = new int[16 * bands];
+        this.signatures = new int[16][];
+    }
+
+    /**
+     * Builds an index over the signatures of the given tables. Document IDs are
+     * the positions in the list.
+     *
+     * @param tables The documents to index.
+     * @return The index.
+     */
+    public static LshIndex build(List<FrequencyTable> tables) {
+        LshIndex index = new LshIndex();
+        for (FrequencyTable table : tables) {
+            index.add(table.getMinHashSignature());
+        }
+        return index;
+    }
+
+    /**
+     * Adds a document to the index.
+     *
+     * @param signature The MinHash signature of the document.
+     * @return The ID assigned to the document.
+     */
+    public int add(int[] signature) {
+        lock.writeLock().lock();
+        try {
+            return addLocked(signature);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int addLocked(int[] signature) {
+        int doc = size++;
+        if (doc == signatures.length) {
+            signatures = Arrays.copyOf(signatures, doc * 2);
+            next = Arrays.copyOf(next, doc * 2 * bands);
+        }
+        signatures[doc] = signature;
+        for (int b = 0; b < bands; b++) {
+            next[doc * bands + b] = -1;
+        }
+        if (MinHash.isEmpty(signature)) {
+            return doc; // A page without words is similar to nothing
+        }
+        for (int b = 0; b < bands; b++) {
+            long key = bandHash(signature, b);
+            next[doc * bands + b] = buckets[b].get(key);
+            buckets[b].put(key, doc);
+        }
+        return doc;
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return The document count.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the documents that share at least one band bucket with the given
+     * signature.
+     *
+     * @param signature  The MinHash signature of the query.
+     * @param minDoc     Documents with a smaller ID are ignored.
+     * @param excludeDoc A document ID to ignore, such as the query itself, or -1.
+     * @return The candidate document IDs in ascending order.
+     */
+    public int[] candidates(int[] signature, int minDoc, int excludeDoc) {
+        if (MinHash.isEmpty(signature)) {
+            return new int[0];
+        }
+        int[] found = new int[16];
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            for (int b = 0; b < bands; b++) {
+                for (int doc = buckets[b].get(bandHash(signature, b)); doc >= 0; doc = next[doc * bands + b]) {
+                    if (doc >= minDoc && doc != excludeDoc) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = doc;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(found, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || found[unique - 1] != found[i]) {
+                found[unique++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, unique);
+    }
+
+    /**
+     * Adds an edge for every pair of documents that are LSH candidates of each
+     * other and whose exact cosine similarity is at least the threshold. Pairs
+     * that never share a bucket are not compared, so some edges may be missed.
+     *
+     * @param urls      The URL of each document, in index order.
+     * @param tables    The frequency table of each document, in index order.
+     * @param graphData The graph to add the edges to.
+     * @param threshold The minimum similarity for an edge.
+     */
+    public void addEdgesTo(List<String> urls, List<FrequencyTable> tables, GraphData graphData, double threshold) {
+        int n = size();
+        SparseTermVector[] vectors = new SparseTermVector[n];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = tables.get(i).freeze();
+        }
+        List<List<SiteEdge>> rowsOfEdges = new ArrayList<>(Collections.nCopies(n, (List<SiteEdge>) null));
+        IntStream.range(0, n).parallel().forEach(i -> {
+            List<SiteEdge> edges = new ArrayList<>();
+            for (int j : candidates(signatures[i], i + 1, -1)) {
+                double similarity = SimilarityMetricCalculator.calculateCosineSimilarity(vectors[i], vectors[j]);
+                if (similarity >= threshold) {
+                    edges.add(new SiteEdge(urls.get(i), urls.get(j), similarity));
+                }
+            }
+            rowsOfEdges.set(i, edges);
+        });
+        List<SiteEdge> edges = new ArrayList<>();
+        for (List<SiteEdge> row : rowsOfEdges) {
+            edges.addAll(row);
+        }
+        graphData.addEdges(edges);
+    }
+
+    /**
+     * Combines the rows of one band into a single 64-bit key.
+     */
+    private long bandHash(int[] signature, int band) {
+        long h = band;
+        for (int r = band * rows; r < (band + 1) * rows; r++) {
+            h = MinHash.mix(h * 31 + signature[r]);
+        }
+        return h;
+    }
+
+    /**
+     * An open-addressing map from long keys to int values, with -1 for absent
+     * keys.
+     */
+    private static final class LongIntMap {
+        private long[] keys = new long[16];
+        private int[] values = new int[16];
+        private boolean[] used = new boolean[16];
+        private int count;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) MinHash.mix(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = (int) MinHash.mix(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            values[slot] = value;
+            if (++count * 2 > keys.length) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            count = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
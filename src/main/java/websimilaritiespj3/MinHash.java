@@ -0,0 +1,110 @@
+package websimilaritiespj3;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Computes MinHash signatures of frequency tables. Two signatures agree in
+ * each position with probability equal to the Jaccard similarity of the two
+ * tables' word sets, which makes them suitable for locality-sensitive hashing
+ * with {@link LshIndex}.
+ * <p>
+ * Words are hashed from their characters rather than their term IDs, so
+ * signatures stay valid across runs and can be persisted with the tables.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class MinHash {
+    public static final int SIGNATURE_LENGTH = 128;
+
+    // One seed per hash function; fixed so that signatures are reproducible
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        Random random = new Random(0x5EED_365L);
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private MinHash() {
+    }
+
+    /**
+     * Computes the MinHash signature of the words with a positive count in the
+     * given table.
+     *
+     * @param table The frequency table.
+     * @return A signature of {@link #SIGNATURE_LENGTH} values.
+     */
+    public static int[] signature(FrequencyTable table) {
+        int[] signature = new int[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        TermCountMap counts = table.counts();
+        for (int slot = 0; slot < counts.capacity(); slot++) {
+            String word = counts.keyAt(slot);
+            if (word == null || counts.countAt(slot) <= 0) {
+                continue;
+            }
+            long base = hashWord(word);
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                int h = (int) (mix(base ^ SEEDS[i]) >>> 33); // Non-negative
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of two word sets from their signatures.
+     *
+     * @param a The first signature.
+     * @param b The second signature.
+     * @return The fraction of positions in which the signatures agree.
+     */
+    public static double estimateJaccard(int[] a, int[] b) {
+        int agree = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (a[i] == b[i]) {
+                agree++;
+            }
+        }
+        return (double) agree / SIGNATURE_LENGTH;
+    }
+
+    /**
+     * Returns true if the signature belongs to a table without words.
+     *
+     * @param signature The signature to check.
+     * @return Whether the signature is empty.
+     */
+    public static boolean isEmpty(int[] signature) {
+        return signature[0] == Integer.MAX_VALUE;
+    }
+
+    /**
+     * Hashes the characters of a word to 64 bits (FNV-1a followed by a final
+     * mix), independently of String.hashCode.
+     */
+    static long hashWord(String word) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            h ^= word.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,658 @@
+package websimilaritiespj3;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A k-means clustering of the corpus that is kept up to date as URLs are
+ * added, instead of being recomputed from scratch.
+ * <p>
+ * Each new page is assigned to its most similar centroid, which costs one
+ * pass over the page's terms with k weights read per term, and that centroid
+ * is nudged towards the page as in mini-batch k-means: with a learning rate of
+ * 1 over the number of pages the cluster has taken, the centroid stays the
+ * running mean of its pages' unit vectors. A centroid is held as a term-major
+ * column of raw floats times a scale, so the nudge only touches the page's own
+ * terms: the scale absorbs the shrinking of every other weight. Its sum of
+ * squares is kept alongside, so cosine similarity needs no normalization pass.
+ * <p>
+ * Online updates drift from what a full run would find, so every so many
+ * additions the model is refined in the background: a {@link KMeansClustering}
+ * runs over every page, starting from the current centroids, and its result
+ * replaces the model's. Pages added while it runs are reassigned against the
+ * new centroids.
+ * <p>
+ * The model can be saved and loaded like {@link Landmarks}. Centroids are
+ * written sparsely together with the term dictionary and translated into the
+ * shared dictionary on reading, as {@link SparseTermVector}s are; the pages'
+ * vectors are not saved and are attached again with {@link #add}.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public class OnlineKMeansClustering implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_REFINEMENT_INTERVAL = 100;
+    private static final double MIN_SCALE = 1e-6; // Below this a centroid's scale is folded into its weights
+
+    private final int k; // Number of clusters
+    private transient int dimension; // Term IDs of the centroids are below this
+    private transient float[] raw; // [term * k + cluster], centroid = scale * raw column
+    private transient double[] scales; // By cluster
+    private transient double[] sumSquares; // Of each raw column
+    private final long[] counts; // Pages each cluster has taken, which sets its learning rate
+    private final List<String> urls; // By document ID
+    private transient TermCountMap documentIds; // Maps each URL to its document ID + 1
+    private transient int[] assignments; // Cluster of each document, by document ID
+    private transient SparseTermVector[] vectors; // By document ID, or null until attached
+    private int refinementInterval = DEFAULT_REFINEMENT_INTERVAL;
+    private int additionsSinceRefinement;
+    private long seed; // For the next refinement
+    private transient int refinements; // Refinements installed since the model was loaded or built
+    private boolean refined; // Whether the centroids came from a full clustering rather than the first pages
+    private transient ExecutorService refiner; // Single daemon thread, created when first needed
+    private transient Future<?> refinement; // The latest refinement submitted, or null
+    private transient volatile boolean verbose = true; // Print a line per refinement
+
+    /**
+     * Constructor for an empty OnlineKMeansClustering. The first k distinct
+     * pages added become the initial centroids.
+     *
+     * @param k    The number of clusters.
+     * @param seed The seed for refinements.
+     */
+    public OnlineKMeansClustering(int k, long seed) {
+        this.k = Math.max(1, k);
+        this.seed = seed;
+        this.dimension = 0;
+        this.raw = new float[0];
+        this.scales = new double[this.k];
+        this.sumSquares = new double[this.k];
+        this.counts = new long[this.k];
+        this.urls = new ArrayList<>();
+        this.documentIds = new TermCountMap();
+        this.assignments = new int[16];
+        this.vectors = new SparseTermVector[16];
+        Arrays.fill(scales, 1.0);
+    }
+
+    /**
+     * Builds a model from a full clustering of the given pages, with
+     * k-means++ seeding. With fewer pages than clusters, the pages are simply
+     * added one by one.
+     *
+     * @param urls   The URLs of the pages.
+     * @param tables The frequency tables of the pages, in the same order.
+     * @param k      The number of clusters.
+     * @param seed   The seed for the clustering and later refinements.
+     * @return The model, with every page attached.
+     */
+    public static OnlineKMeansClustering build(List<String> urls, List<FrequencyTable> tables, int k, long seed) {
+        OnlineKMeansClustering model = new OnlineKMeansClustering(k, seed + 1);
+        if (tables.size() < model.k) {
+            for (int i = 0; i < urls.size(); i++) {
+                model.add(urls.get(i), tables.get(i));
+            }
+            return model;
+        }
+        SparseTermVector[] vectors = KMeansClustering.freeze(tables);
+        KMeansClustering clustering = new KMeansClustering(vectors, model.k, seed, null);
+        clustering.setVerbose(false);
+        clustering.cluster();
+        return fromClustering(urls, vectors, clustering, seed + 1);
+    }
+
+    /**
+     * Creates a model holding the result of a full clustering.
+     *
+     * @param urls       The URLs of the clustered pages.
+     * @param vectors    The vectors of the pages, in the same order.
+     * @param clustering The clustering, after its call to cluster.
+     * @param seed       The seed for later refinements.
+     * @return The model, with every page attached.
+     */
+    static OnlineKMeansClustering fromClustering(List<String> urls, SparseTermVector[] vectors,
+            KMeansClustering clustering, long seed) {
+        OnlineKMeansClustering model = new OnlineKMeansClustering(clustering.getK(), seed);
+        model.install(clustering.centroids(), clustering.getClusterSizes());
+        model.refined = true;
+        int[] clusters = clustering.assignments();
+        for (int i = 0; i < urls.size(); i++) {
+            model.attach(urls.get(i), vectors[i], clusters[i]);
+        }
+        return model;
+    }
+
+    /**
+     * Adds a page, assigning it to its most similar centroid and moving that
+     * centroid towards it. A URL the model already knows keeps its cluster and
+     * only has its page attached, as after loading a saved model. Every
+     * {@link #setRefinementInterval refinement interval} additions, a
+     * refinement is started in the background.
+     *
+     * @param url   The URL of the page.
+     * @param table The frequency table of the page.
+     * @return The cluster of the page.
+     */
+    public synchronized int add(String url, FrequencyTable table) {
+        SparseTermVector vector = table.freeze();
+        int doc = documentIds.get(url) - 1;
+        if (doc >= 0) {
+            vectors[doc] = vector;
+            return assignments[doc];
+        }
+        int cluster = update(vector);
+        attach(url, vector, cluster);
+        if (++additionsSinceRefinement >= refinementInterval && urls.size() >= k) {
+            refineInBackground();
+        }
+        return cluster;
+    }
+
+    /**
+     * Records a new document and its cluster.
+     */
+    private void attach(String url, SparseTermVector vector, int cluster) {
+        int doc = urls.size();
+        if (doc == assignments.length) {
+            assignments = Arrays.copyOf(assignments, doc * 2);
+            vectors = Arrays.copyOf(vectors, doc * 2);
+        }
+        urls.add(url);
+        documentIds.put(url, doc + 1);
+        assignments[doc] = cluster;
+        vectors[doc] = vector;
+    }
+
+    /**
+     * Assigns a vector to its nearest centroid and nudges that centroid. A
+     * cluster that has taken no page yet takes this one as its centroid.
+     *
+     * @return The cluster.
+     */
+    private int update(SparseTermVector vector) {
+        double norm = vector.getNorm();
+        if (norm == 0.0) {
+            return 0; // Equally far from every centroid, and moves none
+        }
+        double inverseNorm = 1.0 / norm;
+        int cluster = -1;
+        for (int c = 0; c < k && cluster < 0; c++) {
+            if (counts[c] == 0) {
+                cluster = c;
+            }
+        }
+        if (cluster < 0) {
+            cluster = nearest(vector, inverseNorm);
+        }
+        grow(vector);
+
+        double rate = 1.0 / ++counts[cluster];
+        double scale;
+        if (rate == 1.0) { // The first page of a cluster replaces whatever its column held
+            for (int term = 0; term < dimension; term++) {
+                raw[term * k + cluster] = 0.0f;
+            }
+            sumSquares[cluster] = 0.0;
+            scale = 1.0;
+        } else {
+            scale = scales[cluster] * (1.0 - rate);
+            if (scale < MIN_SCALE) {
+                foldScale(cluster);
+                scale = 1.0 - rate;
+            }
+        }
+        scales[cluster] = scale;
+        int[] ids = vector.termIds();
+        int[] termCounts = vector.counts();
+        double step = rate * inverseNorm / scale;
+        double squares = sumSquares[cluster];
+        for (int j = 0; j < ids.length; j++) {
+            int index = ids[j] * k + cluster;
+            float old = raw[index];
+            raw[index] = (float) (old + step * termCounts[j]);
+            squares += (double) raw[index] * raw[index] - (double) old * old;
+        }
+        sumSquares[cluster] = Math.max(0.0, squares);
+        return cluster;
+    }
+
+    /**
+     * Returns the centroid most similar to a nonempty vector.
+     */
+    private int nearest(SparseTermVector vector, double inverseNorm) {
+        double[] scores = scores(vector, inverseNorm);
+        int best = 0;
+        for (int c = 1; c < k; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the cosine similarity of a nonempty vector with every
+     * centroid, or 0 for a centroid that is still empty.
+     */
+    private double[] scores(SparseTermVector vector, double inverseNorm) {
+        double[] scores = new double[k];
+        int[] ids = vector.termIds();
+        int[] termCounts = vector.counts();
+        for (int j = 0; j < ids.length; j++) {
+            if (ids[j] >= dimension) {
+                continue; // A term no centroid has
+            }
+            double weight = termCounts[j] * inverseNorm;
+            int base = ids[j] * k;
+            for (int c = 0; c < k; c++) {
+                scores[c] += weight * raw[base + c];
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            scores[c] = sumSquares[c] == 0.0 ? 0.0 : scores[c] / Math.sqrt(sumSquares[c]);
+        }
+        return scores;
+    }
+
+    /**
+     * Widens the centroids to cover every term of a vector, with some room to
+     * spare.
+     */
+    private void grow(SparseTermVector vector) {
+        int size = vector.size();
+        int needed = size == 0 ? 0 : vector.termIdAt(size - 1) + 1;
+        if (needed > dimension) {
+            dimension = Math.max(needed, dimension + dimension / 2);
+            raw = Arrays.copyOf(raw, dimension * k);
+        }
+    }
+
+    /**
+     * Multiplies a centroid's scale into its raw weights.
+     */
+    private void foldScale(int c) {
+        double scale = scales[c];
+        double squares = 0.0;
+        for (int term = 0; term < dimension; term++) {
+            float weight = (float) (raw[term * k + c] * scale);
+            raw[term * k + c] = weight;
+            squares += (double) weight * weight;
+        }
+        scales[c] = 1.0;
+        sumSquares[c] = squares;
+    }
+
+    /**
+     * Replaces the centroids with those of a full clustering.
+     *
+     * @param centroids The unit centroids, laid out term by term.
+     * @param sizes     The number of pages in each cluster.
+     */
+    private void install(float[] centroids, int[] sizes) {
+        dimension = Math.max(dimension, centroids.length / k);
+        raw = Arrays.copyOf(centroids, dimension * k);
+        Arrays.fill(scales, 1.0);
+        Arrays.fill(sumSquares, 0.0);
+        for (int i = 0; i < centroids.length; i++) {
+            sumSquares[i % k] += (double) centroids[i] * centroids[i];
+        }
+        for (int c = 0; c < k; c++) {
+            counts[c] = sizes[c];
+        }
+    }
+
+    /**
+     * Returns the centroids scaled to unit length, laid out term by term, for
+     * starting a full clustering.
+     */
+    private float[] unitCentroids() {
+        float[] unit = new float[dimension * k];
+        double[] factors = new double[k];
+        for (int c = 0; c < k; c++) {
+            factors[c] = sumSquares[c] == 0.0 ? 0.0 : 1.0 / Math.sqrt(sumSquares[c]);
+        }
+        for (int i = 0; i < unit.length; i++) {
+            unit[i] = (float) (raw[i] * factors[i % k]);
+        }
+        return unit;
+    }
+
+    /**
+     * Sets whether a line is printed as every background refinement finishes.
+     *
+     * @param verbose True to print progress.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets how many pages are added between refinements.
+     *
+     * @param refinementInterval The number of additions, at least 1.
+     */
+    public synchronized void setRefinementInterval(int refinementInterval) {
+        this.refinementInterval = Math.max(1, refinementInterval);
+    }
+
+    /**
+     * Starts a refinement on the model's background thread, unless one is
+     * already waiting or running.
+     *
+     * @return The refinement, which completes when the model holds its result.
+     */
+    public synchronized Future<?> refineInBackground() {
+        if (refinement != null && !refinement.isDone()) {
+            return refinement;
+        }
+        if (refiner == null) {
+            refiner = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "k-means refinement");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        additionsSinceRefinement = 0;
+        refinement = refiner.submit(() -> {
+            try {
+                runRefinement();
+            } catch (RuntimeException e) {
+                System.err.println("Error refining clusters: " + e.getMessage());
+                throw e;
+            }
+        });
+        return refinement;
+    }
+
+    /**
+     * Refines the model and waits for the result.
+     */
+    public void refine() {
+        try {
+            refineInBackground().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Refinement failed", e.getCause());
+        }
+    }
+
+    /**
+     * Runs a full clustering over the attached pages, starting from the
+     * current centroids, or from k-means++ seeds the first time, and installs
+     * its result. Only the snapshot and the
+     * installation hold the model's lock.
+     */
+    private void runRefinement() {
+        int[] documents;
+        SparseTermVector[] snapshot;
+        float[] initial;
+        int snapshotSize;
+        long runSeed;
+        synchronized (this) {
+            snapshotSize = urls.size();
+            documents = new int[snapshotSize];
+            int count = 0;
+            for (int doc = 0; doc < snapshotSize; doc++) {
+                if (vectors[doc] != null) {
+                    documents[count++] = doc;
+                }
+            }
+            documents = Arrays.copyOf(documents, count);
+            snapshot = new SparseTermVector[count];
+            for (int i = 0; i < count; i++) {
+                snapshot[i] = vectors[documents[i]];
+            }
+            initial = refined ? unitCentroids() : null; // The first pages make poor seeds
+            runSeed = seed++;
+        }
+        if (snapshot.length < k) {
+            return; // Too few pages to fill every cluster
+        }
+        long start = System.nanoTime();
+        KMeansClustering clustering = new KMeansClustering(snapshot, k, runSeed, initial);
+        clustering.setVerbose(false);
+        int[] clusters = clustering.cluster();
+
+        int total;
+        synchronized (this) {
+            install(clustering.centroids(), clustering.getClusterSizes());
+            refined = true;
+            refinements++;
+            for (int i = 0; i < documents.length; i++) {
+                assignments[documents[i]] = clusters[i];
+            }
+            for (int doc = snapshotSize; doc < urls.size(); doc++) { // Added while the clustering ran
+                if (vectors[doc] != null) {
+                    double norm = vectors[doc].getNorm();
+                    assignments[doc] = norm == 0.0 ? 0 : nearest(vectors[doc], 1.0 / norm);
+                    counts[assignments[doc]]++;
+                }
+            }
+            total = urls.size();
+        }
+        if (verbose) {
+            System.out.println("Refined " + total + " URLs into " + k + " clusters in "
+                    + clustering.getIterations() + " iterations, " + (System.nanoTime() - start) / 1_000_000
+                    + " ms");
+        }
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the number of URLs the model has clustered.
+     *
+     * @return The URL count.
+     */
+    public synchronized int size() {
+        return urls.size();
+    }
+
+    /**
+     * Returns the cluster of a URL.
+     *
+     * @param url The URL.
+     * @return The cluster, or -1 if the model does not know the URL.
+     */
+    public synchronized int clusterOf(String url) {
+        int doc = documentIds.get(url) - 1;
+        return doc >= 0 ? assignments[doc] : -1;
+    }
+
+    /**
+     * Returns the cluster a page would be assigned to, without adding it.
+     *
+     * @param table The frequency table of the page.
+     * @return The cluster of the most similar centroid.
+     */
+    public synchronized int nearestCluster(FrequencyTable table) {
+        SparseTermVector vector = table.freeze();
+        double norm = vector.getNorm();
+        return norm == 0.0 ? 0 : nearest(vector, 1.0 / norm);
+    }
+
+    /**
+     * Ranks the clusters by the similarity of their centroids to a page.
+     *
+     * @param table The frequency table of the page.
+     * @return Every cluster, most similar centroid first.
+     */
+    public synchronized int[] rankClusters(FrequencyTable table) {
+        SparseTermVector vector = table.freeze();
+        double norm = vector.getNorm();
+        double[] scores = norm == 0.0 ? new double[k] : scores(vector, 1.0 / norm);
+        Integer[] order = new Integer[k];
+        for (int c = 0; c < k; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        int[] ranked = new int[k];
+        for (int i = 0; i < k; i++) {
+            ranked[i] = order[i];
+        }
+        return ranked;
+    }
+
+    /**
+     * Returns the URLs of every cluster.
+     *
+     * @return The member URLs, by cluster.
+     */
+    public synchronized List<List<String>> getClusterMembers() {
+        List<List<String>> members = new ArrayList<>(k);
+        for (int c = 0; c < k; c++) {
+            members.add(new ArrayList<>());
+        }
+        for (int doc = 0; doc < urls.size(); doc++) {
+            members.get(assignments[doc]).add(urls.get(doc));
+        }
+        return members;
+    }
+
+    /**
+     * Returns the number of refinements installed since the model was built
+     * or loaded, which tells a caller holding on to cluster memberships when
+     * they may have changed wholesale.
+     *
+     * @return The refinement count.
+     */
+    public synchronized int getRefinementCount() {
+        return refinements;
+    }
+
+    /**
+     * Returns the number of pages each cluster has taken: its size after the
+     * last full clustering, if there was one, plus the pages assigned to it
+     * since. The counts are cumulative and set each cluster's learning rate.
+     *
+     * @return The counts, by cluster.
+     */
+    public synchronized long[] getClusterCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * Saves the model to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void save(String path) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Loads a model saved with {@link #save}. Its pages must be attached
+     * again with {@link #add} before a refinement can use them.
+     *
+     * @param path The file to read.
+     * @return The model.
+     * @throws IOException If the file cannot be read or does not hold a model.
+     */
+    public static OnlineKMeansClustering load(String path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+            return (OnlineKMeansClustering) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a cluster model: " + path, e);
+        }
+    }
+
+    /**
+     * Serialization of the model, with each centroid as its nonzero terms and
+     * weights, and the dictionary the terms refer to.
+     *
+     * @param oos the ObjectOutputStream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private synchronized void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
+        oos.writeObject(Arrays.copyOf(assignments, urls.size()));
+        oos.writeObject(TermDictionary.getShared());
+        for (int c = 0; c < k; c++) {
+            int nonzero = 0;
+            for (int term = 0; term < dimension; term++) {
+                if (raw[term * k + c] != 0.0f) {
+                    nonzero++;
+                }
+            }
+            oos.writeInt(nonzero);
+            for (int term = 0; term < dimension; term++) {
+                float weight = raw[term * k + c];
+                if (weight != 0.0f) {
+                    oos.writeInt(term);
+                    oos.writeFloat((float) (weight * scales[c]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deserialization of the model. Term IDs are translated from the
+     * dictionary that was written with the model into the shared dictionary.
+     *
+     * @param ois the ObjectInputStream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if the class of a serialized object cannot be
+     *                                found
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        verbose = true;
+        int[] clusters = (int[]) ois.readObject();
+        TermDictionary dictionary = (TermDictionary) ois.readObject();
+        int[] remap = dictionary.remapToShared();
+        int[][] terms = new int[k][];
+        float[][] weights = new float[k][];
+        dimension = 0;
+        for (int c = 0; c < k; c++) {
+            int nonzero = ois.readInt();
+            terms[c] = new int[nonzero];
+            weights[c] = new float[nonzero];
+            for (int t = 0; t < nonzero; t++) {
+                int term = ois.readInt();
+                terms[c][t] = remap == null ? term : remap[term];
+                weights[c][t] = ois.readFloat();
+                dimension = Math.max(dimension, terms[c][t] + 1);
+            }
+        }
+        raw = new float[dimension * k];
+        scales = new double[k];
+        sumSquares = new double[k];
+        Arrays.fill(scales, 1.0);
+        for (int c = 0; c < k; c++) {
+            for (int t = 0; t < terms[c].length; t++) {
+                raw[terms[c][t] * k + c] = weights[c][t];
+                sumSquares[c] += (double) weights[c][t] * weights[c][t];
+            }
+        }
+        documentIds = new TermCountMap();
+        for (int doc = 0; doc < urls.size(); doc++) {
+            documentIds.put(urls.get(doc), doc + 1);
+        }
+        assignments = Arrays.copyOf(clusters, Math.max(16, urls.size()));
+        vectors = new SparseTermVector[assignments.length];
+    }
+}
@@ -6,12 +6,15 @@ import java.io.FileOutputStream;
 import java.io.ObjectOutputStream;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class is responsible for re-serializing a hash table with updated
  * frequency tables.
  * It reads URLs from a file, processes each to create a frequency table, and
- * then serializes the hash table.
+ * then serializes the hash table. Near-duplicate pages, such as mirrors, are
+ * detected by SimHash as they are read and share the table of the first copy.
  * 
  * @author Joel Santos
  * @version 3.0
@@ -21,6 +24,7 @@ public class ReserializeHashTable {
 
     private String filePath;
     private DataPersistenceManager dataPersistenceManager;
+    private WordTokenizer wordTokenizer;
 
     /**
      * Constructs a new instance of ReserializeHashTable.
@@ -31,6 +35,7 @@ public class ReserializeHashTable {
     public ReserializeHashTable(String filePath) {
         this.filePath = filePath;
         this.dataPersistenceManager = new DataPersistenceManager();
+        this.wordTokenizer = new WordTokenizer();
     }
 
     /**
@@ -41,11 +46,26 @@ public class ReserializeHashTable {
      */
     public void reserialize() {
         HT<String, FrequencyTable> hashTable = new HT<>();
+        SimHashIndex duplicateIndex = new SimHashIndex();
+        List<String> indexedUrls = new ArrayList<>(); // By document ID in the duplicate index
 
         try (BufferedReader reader = new BufferedReader(new FileReader(this.filePath))) {
             String url;
             while ((url = reader.readLine()) != null) {
                 FrequencyTable frequencyTable = createFrequencyTableForUrl(url);
+                if (frequencyTable.getTotalWordCount() > 0) {
+                    long fingerprint = SimHash.fingerprint(frequencyTable);
+                    int duplicate = duplicateIndex.findNearDuplicate(fingerprint);
+                    if (duplicate >= 0) {
+                        // Serialized once, as a back-reference from every copy
+                        String original = indexedUrls.get(duplicate);
+                        System.out.println("Collapsing near-duplicate " + url + " into " + original);
+                        frequencyTable = hashTable.get(original);
+                    } else {
+                        duplicateIndex.add(fingerprint);
+                        indexedUrls.add(url);
+                    }
+                }
                 hashTable.put(url, frequencyTable);
             }
         } catch (IOException e) {
@@ -75,12 +95,7 @@ public class ReserializeHashTable {
     private FrequencyTable createFrequencyTableForUrl(String url) {
         FrequencyTable frequencyTable = new FrequencyTable();
         String content = dataPersistenceManager.extractContentFromURL(url);
-        String[] words = content.split("\\s+");
-        for (String word : words) {
-            if (word != null && !word.isEmpty()) {
-                frequencyTable.addWord(word, 1);
-            }
-        }
+        wordTokenizer.tokenize(content, frequencyTable);
         return frequencyTable;
     }
 }
@@ -0,0 +1,388 @@
+package websimilaritiespj3;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dijkstra's algorithm over a {@link SiteGraph}, using an indexed 4-ary heap
+ * with decrease-key so that every vertex is in the heap at most once. A
+ * point-to-point query stops as soon as the target is settled.
+ * <p>
+ * Point-to-point queries can also run bidirectionally, growing one search from
+ * each end until they meet, or as A* with landmark lower bounds (ALT), which
+ * steers the search towards the target.
+ * <p>
+ * The distance, predecessor and heap-position arrays are kept per thread and
+ * reused across queries. Only the vertices a query touched are reset
+ * afterwards, so a short query on a large graph does not pay for the whole
+ * graph.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class ShortestPathEngine {
+    private static final int ARITY = 4;
+    private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+    // Second workspace for the backward half of a bidirectional search
+    private static final ThreadLocal<Workspace> BACKWARD_WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+
+    private ShortestPathEngine() {
+    }
+
+    /**
+     * Finds the path between two vertices with the smallest total weight.
+     *
+     * @param graph  The graph.
+     * @param source The starting vertex.
+     * @param target The destination vertex.
+     * @return The edges of the path in order, or an empty list if there is no
+     *         path or the two vertices are the same.
+     */
+    public static List<SiteEdge> shortestPath(SiteGraph graph, int source, int target) {
+        Workspace workspace = WORKSPACES.get();
+        workspace.prepare(graph.vertexCount());
+        try {
+            run(graph, source, target, workspace);
+            return workspace.path(graph, source, target);
+        } finally {
+            workspace.reset();
+        }
+    }
+
+    /**
+     * Computes the shortest-path tree of a source vertex over the whole graph.
+     *
+     * @param graph     The graph.
+     * @param source    The root of the tree.
+     * @param distances Receives the distance of every vertex from the source,
+     *                  or {@link Double#MAX_VALUE} if it is unreachable.
+     * @param parents   Receives the predecessor of every vertex, or -1 for the
+     *                  source and unreachable vertices.
+     * @param entries   Receives the position, in the graph's edge arrays, of
+     *                  the edge from each vertex's predecessor to it.
+     */
+    public static void shortestPathTree(SiteGraph graph, int source, double[] distances, int[] parents,
+            int[] entries) {
+        Workspace workspace = WORKSPACES.get();
+        workspace.prepare(graph.vertexCount());
+        try {
+            run(graph, source, -1, workspace);
+            int n = graph.vertexCount();
+            System.arraycopy(workspace.distances, 0, distances, 0, n);
+            System.arraycopy(workspace.parents, 0, parents, 0, n);
+            System.arraycopy(workspace.entries, 0, entries, 0, n);
+        } finally {
+            workspace.reset();
+        }
+    }
+
+    /**
+     * Finds the path between two vertices with the smallest total weight by
+     * searching from both ends at once. The search expands whichever side has
+     * the closer frontier and stops once the two frontiers together are no
+     * shorter than the best path seen, which usually settles far fewer
+     * vertices than a one-sided search.
+     *
+     * @param graph  The graph.
+     * @param source The starting vertex.
+     * @param target The destination vertex.
+     * @return The edges of the path in order, or an empty list if there is no
+     *         path or the two vertices are the same.
+     */
+    public static List<SiteEdge> bidirectionalPath(SiteGraph graph, int source, int target) {
+        if (source == target) {
+            return new SerializableList<>();
+        }
+        int[] offsets = graph.offsets();
+        int[] ends = graph.ends();
+        int[] targets = graph.targets();
+        float[] weights = graph.weights();
+        Workspace forward = WORKSPACES.get();
+        Workspace backward = BACKWARD_WORKSPACES.get();
+        forward.prepare(graph.vertexCount());
+        backward.prepare(graph.vertexCount());
+        try {
+            forward.touch(source);
+            forward.distances[source] = 0.0;
+            forward.push(source);
+            backward.touch(target);
+            backward.distances[target] = 0.0;
+            backward.push(target);
+
+            double best = Double.MAX_VALUE;
+            int meetFrom = -1; // The best path is source .. meetFrom, edge meetEntry, meetTo .. target
+            int meetEntry = -1;
+            int meetTo = -1;
+            while (forward.heapSize > 0 && backward.heapSize > 0) {
+                double forwardTop = forward.distances[forward.heap[0]];
+                double backwardTop = backward.distances[backward.heap[0]];
+                if (forwardTop + backwardTop >= best) {
+                    break;
+                }
+                boolean isForward = forwardTop <= backwardTop;
+                Workspace side = isForward ? forward : backward;
+                Workspace other = isForward ? backward : forward;
+                int current = side.pop();
+                double base = side.distances[current];
+                for (int e = offsets[current]; e < ends[current]; e++) {
+                    int neighbor = targets[e];
+                    double newDist = base + weights[e];
+                    side.relax(neighbor, newDist, current, e);
+                    if (other.distances[neighbor] != Double.MAX_VALUE && newDist + other.distances[neighbor] < best) {
+                        best = newDist + other.distances[neighbor];
+                        meetEntry = e;
+                        meetFrom = isForward ? current : neighbor;
+                        meetTo = isForward ? neighbor : current;
+                    }
+                }
+            }
+
+            SerializableList<SiteEdge> path = new SerializableList<>();
+            if (meetEntry < 0) {
+                return path;
+            }
+            for (int at = meetFrom; at != source; at = forward.parents[at]) {
+                path.add(graph.edgeAt(forward.parents[at], forward.entries[at]));
+            }
+            Collections.reverse(path);
+            // The backward search found its edges from the target's side; turn them to point along the path
+            path.add(new SiteEdge(graph.urlOf(meetFrom), graph.urlOf(meetTo), weights[meetEntry]));
+            for (int at = meetTo; at != target; at = backward.parents[at]) {
+                int parent = backward.parents[at];
+                path.add(new SiteEdge(graph.urlOf(at), graph.urlOf(parent), weights[backward.entries[at]]));
+            }
+            return path;
+        } finally {
+            forward.reset();
+            backward.reset();
+        }
+    }
+
+    /**
+     * Finds the path between two vertices with the smallest total weight by A*
+     * search, using landmark distances and the triangle inequality as the lower
+     * bound on the remaining distance (ALT).
+     *
+     * @param graph     The graph.
+     * @param landmarks Landmark distances computed for this graph.
+     * @param source    The starting vertex.
+     * @param target    The destination vertex.
+     * @return The edges of the path in order, or an empty list if there is no
+     *         path or the two vertices are the same.
+     */
+    public static List<SiteEdge> altPath(SiteGraph graph, Landmarks landmarks, int source, int target) {
+        int[] offsets = graph.offsets();
+        int[] ends = graph.ends();
+        int[] targets = graph.targets();
+        float[] weights = graph.weights();
+        Workspace workspace = WORKSPACES.get();
+        workspace.prepare(graph.vertexCount());
+        double[] distances = workspace.distances;
+        double[] keys = workspace.keys;
+        double[] bounds = workspace.bounds;
+        workspace.heapKeys = keys; // Order the heap by distance plus bound
+        try {
+            workspace.touch(source);
+            distances[source] = 0.0;
+            keys[source] = landmarks.lowerBound(source, target);
+            workspace.push(source);
+            while (workspace.heapSize > 0) {
+                int current = workspace.pop();
+                if (current == target) {
+                    break;
+                }
+                double base = distances[current];
+                for (int e = offsets[current]; e < ends[current]; e++) {
+                    int neighbor = targets[e];
+                    double newDist = base + weights[e];
+                    if (newDist < distances[neighbor]) {
+                        if (distances[neighbor] == Double.MAX_VALUE) {
+                            bounds[neighbor] = landmarks.lowerBound(neighbor, target); // Once per vertex
+                        }
+                        keys[neighbor] = newDist + bounds[neighbor];
+                        workspace.relax(neighbor, newDist, current, e);
+                    }
+                }
+            }
+            return workspace.path(graph, source, target);
+        } finally {
+            workspace.heapKeys = workspace.distances;
+            workspace.reset();
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from the source until the target is settled,
+     * or over the whole graph if the target is -1.
+     */
+    private static void run(SiteGraph graph, int source, int target, Workspace workspace) {
+        int[] offsets = graph.offsets();
+        int[] ends = graph.ends();
+        int[] targets = graph.targets();
+        float[] weights = graph.weights();
+        workspace.touch(source);
+        workspace.distances[source] = 0.0;
+        workspace.push(source);
+        while (workspace.heapSize > 0) {
+            int current = workspace.pop();
+            if (current == target) {
+                return; // Settled: no shorter path to the target remains
+            }
+            double base = workspace.distances[current];
+            for (int e = offsets[current]; e < ends[current]; e++) {
+                workspace.relax(targets[e], base + weights[e], current, e);
+            }
+        }
+    }
+
+    /**
+     * The per-thread arrays of a search. Between searches every distance is
+     * {@link Double#MAX_VALUE}, every parent -1 and every heap index -1. The
+     * heap is ordered by {@code heapKeys}, which is the distance array except
+     * during an A* search.
+     */
+    private static final class Workspace {
+        double[] distances = new double[0];
+        double[] keys = new double[0]; // A* priorities
+        double[] bounds = new double[0]; // A* lower bounds to the target
+        double[] heapKeys = distances;
+        int[] parents = new int[0];
+        int[] entries = new int[0];
+        int[] heapIndex = new int[0]; // Position of each vertex in the heap, or -1
+        int[] heap = new int[0];
+        int heapSize;
+        int[] touched = new int[0]; // Vertices whose arrays were written
+        int touchedCount;
+
+        void prepare(int n) {
+            if (distances.length < n) {
+                distances = new double[n];
+                keys = new double[n];
+                bounds = new double[n];
+                heapKeys = distances;
+                parents = new int[n];
+                entries = new int[n];
+                heapIndex = new int[n];
+                heap = new int[n];
+                touched = new int[n];
+                Arrays.fill(distances, Double.MAX_VALUE);
+                Arrays.fill(parents, -1);
+                Arrays.fill(heapIndex, -1);
+            }
+        }
+
+        /**
+         * Lowers the distance of a vertex if the new one is shorter, recording
+         * the edge it was reached by and queueing it. The caller must have set
+         * the vertex's A* key already when the heap is ordered by keys.
+         */
+        void relax(int vertex, double distance, int parent, int entry) {
+            if (distance < distances[vertex]) {
+                if (distances[vertex] == Double.MAX_VALUE) {
+                    touch(vertex);
+                }
+                distances[vertex] = distance;
+                parents[vertex] = parent;
+                entries[vertex] = entry;
+                if (heapIndex[vertex] >= 0) {
+                    siftUp(heapIndex[vertex]);
+                } else {
+                    push(vertex);
+                }
+            }
+        }
+
+        void touch(int vertex) {
+            touched[touchedCount++] = vertex;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                int vertex = touched[i];
+                distances[vertex] = Double.MAX_VALUE;
+                parents[vertex] = -1;
+                heapIndex[vertex] = -1;
+            }
+            touchedCount = 0;
+            heapSize = 0;
+        }
+
+        /**
+         * Builds the path ending at the target by walking predecessors.
+         */
+        List<SiteEdge> path(SiteGraph graph, int source, int target) {
+            SerializableList<SiteEdge> path = new SerializableList<>();
+            for (int at = target; at != source && parents[at] >= 0; at = parents[at]) {
+                path.add(graph.edgeAt(parents[at], entries[at]));
+            }
+            Collections.reverse(path);
+            return path;
+        }
+
+        void push(int vertex) {
+            heap[heapSize] = vertex;
+            heapIndex[vertex] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        int pop() {
+            int top = heap[0];
+            heapIndex[top] = -1;
+            int last = heap[--heapSize];
+            if (heapSize > 0) {
+                heap[0] = last;
+                heapIndex[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        void siftUp(int i) {
+            int vertex = heap[i];
+            double key = heapKeys[vertex];
+            while (i > 0) {
+                int parent = (i - 1) / ARITY;
+                int parentVertex = heap[parent];
+                if (heapKeys[parentVertex] <= key) {
+                    break;
+                }
+                heap[i] = parentVertex;
+                heapIndex[parentVertex] = i;
+                i = parent;
+            }
+            heap[i] = vertex;
+            heapIndex[vertex] = i;
+        }
+
+        void siftDown(int i) {
+            int vertex = heap[i];
+            double key = heapKeys[vertex];
+            while (true) {
+                int first = i * ARITY + 1;
+                if (first >= heapSize) {
+                    break;
+                }
+                int best = first;
+                double bestKey = heapKeys[heap[first]];
+                int end = Math.min(first + ARITY, heapSize);
+                for (int c = first + 1; c < end; c++) {
+                    double childKey = heapKeys[heap[c]];
+                    if (childKey < bestKey) {
+                        best = c;
+                        bestKey = childKey;
+                    }
+                }
+                if (bestKey >= key) {
+                    break;
+                }
+                heap[i] = heap[best];
+                heapIndex[heap[i]] = i;
+                i = best;
+            }
+            heap[i] = vertex;
+            heapIndex[vertex] = i;
+        }
+    }
+}
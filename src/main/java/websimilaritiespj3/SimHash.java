@@ -0,0 +1,62 @@
+package websimilaritiespj3;
+
+/**
+ * Computes 64-bit SimHash fingerprints of frequency tables. Every word votes
+ * on each bit of the fingerprint according to the matching bit of its hash,
+ * with a weight of 1 + ln(count); near-identical pages end up with
+ * fingerprints that differ in only a few bits.
+ * <p>
+ * The weight grows slowly with the count so that a handful of very common
+ * words cannot decide the fingerprint on their own.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SimHash {
+
+    private SimHash() {
+    }
+
+    /**
+     * Computes the SimHash fingerprint of the words with a positive count in
+     * the given table.
+     *
+     * @param table The frequency table.
+     * @return The 64-bit fingerprint, or 0 for a table without words.
+     */
+    public static long fingerprint(FrequencyTable table) {
+        double[] votes = new double[64];
+        TermCountMap counts = table.counts();
+        for (int slot = 0; slot < counts.capacity(); slot++) {
+            String word = counts.keyAt(slot);
+            int count = counts.countAt(slot);
+            if (word == null || count <= 0) {
+                continue;
+            }
+            double weight = 1.0 + Math.log(count);
+            long hash = MinHash.hashWord(word);
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += weight * ((int) ((hash >>> bit) & 1) * 2 - 1); // +weight or -weight
+            }
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of bits in which two fingerprints differ.
+     *
+     * @param a The first fingerprint.
+     * @param b The second fingerprint.
+     * @return The Hamming distance.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,104 @@
+package websimilaritiespj3;
+
+import java.util.Arrays;
+
+/**
+ * Finds near-duplicate pages by the Hamming distance between their SimHash
+ * fingerprints, without comparing against the whole corpus.
+ * <p>
+ * The 64 bits are split into {@link #MAX_DISTANCE} + 1 blocks of 16 bits. Two
+ * fingerprints within the maximum distance differ in at most that many blocks,
+ * so at least one block is identical. The index keeps one table per block,
+ * i.e. one permutation of the fingerprint with that block in front, and since
+ * the leading 16 bits are the whole lookup key each table is simply an array
+ * of 65536 bucket heads. A query checks one bucket per table, so its cost
+ * stays near constant until the corpus has many thousands of pages per
+ * bucket.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SimHashIndex {
+    // Fingerprints at most this many bits apart are considered near-duplicates
+    public static final int MAX_DISTANCE = 3;
+    private static final int TABLES = MAX_DISTANCE + 1;
+    private static final int BLOCK_BITS = 64 / TABLES;
+
+    private final int[][] heads; // Per table: block value -> most recently added document, or -1
+    private int[] next; // next[doc * TABLES + table]: next document in the same bucket, or -1
+    private long[] fingerprints; // By document
+    private int size;
+
+    /**
+     * Constructs an empty index.
+     */
+    public SimHashIndex() {
+        heads = new int[TABLES][1 << BLOCK_BITS];
+        for (int[] table : heads) {
+            Arrays.fill(table, -1);
+        }
+        next = new int[16 * TABLES];
+        fingerprints = new long[16];
+    }
+
+    /**
+     * Adds a fingerprint to the index.
+     *
+     * @param fingerprint The SimHash fingerprint of the document.
+     * @return The ID assigned to the document.
+     */
+    public synchronized int add(long fingerprint) {
+        int doc = size++;
+        if (doc == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, doc * 2);
+            next = Arrays.copyOf(next, doc * 2 * TABLES);
+        }
+        fingerprints[doc] = fingerprint;
+        for (int t = 0; t < TABLES; t++) {
+            int block = block(fingerprint, t);
+            next[doc * TABLES + t] = heads[t][block];
+            heads[t][block] = doc;
+        }
+        return doc;
+    }
+
+    /**
+     * Finds the indexed document whose fingerprint is closest to the given one,
+     * if it is within {@link #MAX_DISTANCE} bits.
+     *
+     * @param fingerprint The SimHash fingerprint of the query.
+     * @return The ID of the closest near-duplicate (the earliest added on a
+     *         tie), or -1 if there is none.
+     */
+    public synchronized int findNearDuplicate(long fingerprint) {
+        int best = -1;
+        int bestDistance = MAX_DISTANCE + 1;
+        for (int t = 0; t < TABLES; t++) {
+            for (int doc = heads[t][block(fingerprint, t)]; doc >= 0; doc = next[doc * TABLES + t]) {
+                int distance = SimHash.distance(fingerprint, fingerprints[doc]);
+                if (distance < bestDistance || (distance == bestDistance && doc < best)) {
+                    best = doc;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return The document count.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of one 16-bit block of a fingerprint.
+     */
+    private static int block(long fingerprint, int table) {
+        return (int) (fingerprint >>> (table * BLOCK_BITS)) & ((1 << BLOCK_BITS) - 1);
+    }
+}
@@ -28,6 +28,11 @@ public class SimilarityGUI extends JFrame {
     private JComboBox<String> toURLDropdown;
     private String urlsFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\Urls.txt";
     private String frequencyTableMapFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\frequencyTableMap.ser";
+    private String landmarksFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\landmarks.ser";
+    private String backboneFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\backbone.ser";
+    private String distanceOracleFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\distances.bin";
+    private String clusterModelFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\clusters.ser";
+    private String nearestNeighbourIndexFilePath = "C:\\Users\\joels\\OneDrive\\Oswego\\Fall 2023\\CSC365\\PJ3-JS\\websimilaritiespj3\\data\\hnsw.ser";
     private ArrayList<String> fileURLs;
     private HT<String, FrequencyTable> urlToFrequencyTableMap;
     private JPanel graphPanel;
@@ -36,6 +41,27 @@ public class SimilarityGUI extends JFrame {
     private GraphManager graphManager;
     private DataPersistenceManager dataPersistenceManager;
     private ExecutorService executorService = Executors.newCachedThreadPool();
+    // Minimum similarity for an edge; 0 keeps an edge for every pair of URLs
+    private double minEdgeSimilarity = 0.0;
+    // Only compare URLs that share a MinHash LSH bucket when building edges
+    private boolean approximateEdges = false;
+    // Keep only each URL's most similar neighbours (with the threshold above) when building edges; 0 keeps all
+    private int nearestNeighbours = 0;
+    // Join the components of a sparse graph with maximum spanning tree edges
+    private boolean connectSparseGraph = false;
+    // Answer path queries from a precomputed table of all pairwise distances (small corpora only)
+    private boolean useDistanceOracle = false;
+    // SimHash fingerprints of the loaded pages, used to spot near-duplicates as URLs are added
+    private SimHashIndex duplicateIndex = new SimHashIndex();
+    private List<String> duplicateIndexUrls = new ArrayList<>(); // By document ID in the duplicate index
+    // K-means clusters of the loaded pages, updated as URLs are added and refined in the background
+    private OnlineKMeansClustering clusterModel = new OnlineKMeansClustering(KMeansClustering.DEFAULT_K, 0);
+    // Choose the number of clusters by silhouette over several seeds when clustering from scratch
+    private boolean selectClusterCount = false;
+    // Number of URLs highlighted as most similar to the one entered, found within its nearest clusters
+    private int mostSimilarCount = 5;
+    // Find the most similar URLs through the HNSW index over all pages instead of the clusters
+    private boolean nearestNeighbourSearch = false;
 
     /**
      * Constructor for SimilarityGUI. Initializes the GUI components and loads data.
@@ -48,6 +74,11 @@ public class SimilarityGUI extends JFrame {
 
         this.graphData = new GraphData();
         this.graphManager = new GraphManager(graphData);
+        this.graphManager.setPathMode(GraphManager.PathMode.ALT);
+        this.graphManager.setLandmarksFilePath(landmarksFilePath);
+        this.graphManager.setBackboneFilePath(backboneFilePath);
+        this.graphManager.setUseDistanceOracle(useDistanceOracle);
+        this.graphManager.setDistanceOracleFilePath(distanceOracleFilePath);
         this.dataPersistenceManager = new DataPersistenceManager();
         this.graphPlotter = new GraphPlotter();
         this.fileURLs = new ArrayList<>();
@@ -55,12 +86,16 @@ public class SimilarityGUI extends JFrame {
         loadFrequencyTablesAndURLs();
         initComponents();
         displayInitialGraph();
+        SimilarityHelper.setClusters(urlToFrequencyTableMap, clusterModel);
+        loadNearestNeighbourIndex();
 
         setVisible(true);
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
                 serializeHashTable(urlToFrequencyTableMap);
+                saveClusterModel();
+                SimilarityHelper.saveNearestNeighbourIndex(nearestNeighbourIndexFilePath);
                 executorService.shutdown();
             }
         });
@@ -217,8 +252,18 @@ public class SimilarityGUI extends JFrame {
         if (!newURL.isEmpty() && !urlToFrequencyTableMap.contains(newURL)) {
             FrequencyTable newTable = new FrequencyTable();
             newTable.addWordsFromURL(newURL);
-            urlToFrequencyTableMap.put(newURL, newTable);
-            updateGraphData(newURL, newTable);
+            String original = findNearDuplicate(newTable);
+            if (original != null) {
+                System.out.println("Linking near-duplicate " + newURL + " to " + original);
+                linkDuplicate(newURL, original);
+            } else {
+                urlToFrequencyTableMap.put(newURL, newTable);
+                updateGraphData(newURL, newTable);
+                indexFingerprint(newURL, newTable);
+            }
+            SimilarityHelper.addUrl(newURL, urlToFrequencyTableMap.get(newURL));
+            int cluster = clusterModel.clusterOf(newURL);
+            System.out.println("Assigned " + newURL + " to cluster " + cluster);
             fileURLs.add(newURL);
 
             // Update dropdowns with the new URL
@@ -231,6 +276,54 @@ public class SimilarityGUI extends JFrame {
         }
     }
 
+    /**
+     * Looks up a page in the near-duplicate index.
+     *
+     * @param table The frequency table of the page.
+     * @return The URL of a near-duplicate page, or null if there is none.
+     */
+    private String findNearDuplicate(FrequencyTable table) {
+        if (table.getTotalWordCount() == 0) {
+            return null; // Pages that failed to load are not duplicates of each other
+        }
+        int duplicate = duplicateIndex.findNearDuplicate(SimHash.fingerprint(table));
+        return duplicate >= 0 ? duplicateIndexUrls.get(duplicate) : null;
+    }
+
+    /**
+     * Adds a page to the near-duplicate index.
+     *
+     * @param url   The URL of the page.
+     * @param table The frequency table of the page.
+     */
+    private void indexFingerprint(String url, FrequencyTable table) {
+        if (table.getTotalWordCount() > 0) {
+            duplicateIndex.add(SimHash.fingerprint(table));
+            duplicateIndexUrls.add(url);
+        }
+    }
+
+    /**
+     * Adds a near-duplicate page as a copy of the original: it shares the
+     * original's frequency table and edges, plus an edge to the original, so no
+     * similarities are computed for it.
+     *
+     * @param newURL   The URL of the near-duplicate page.
+     * @param original The URL of the page it duplicates.
+     */
+    private void linkDuplicate(String newURL, String original) {
+        FrequencyTable table = urlToFrequencyTableMap.get(original);
+        urlToFrequencyTableMap.put(newURL, table);
+        graphManager.addSite(new SiteRecord(newURL, table, 0));
+
+        List<SiteEdge> copies = new ArrayList<>();
+        for (SiteEdge edge : graphManager.getSiteGraph().edgesOf(original)) {
+            copies.add(new SiteEdge(newURL, edge.getSite2(), edge.getSimilarityScore()));
+        }
+        copies.add(new SiteEdge(newURL, original, 1.0));
+        graphManager.addEdges(copies);
+    }
+
     /**
      * Updates the graph data with a new URL and frequency table.
      *
@@ -239,22 +332,42 @@ public class SimilarityGUI extends JFrame {
      */
     private void updateGraphData(String newURL, FrequencyTable newTable) {
         SiteRecord newSite = new SiteRecord(newURL, newTable, 0);
-        graphData.addSite(newSite);
+        graphManager.addSite(newSite);
 
+        List<FrequencyTable> existingTables = new ArrayList<>(fileURLs.size());
         for (String existingURL : fileURLs) {
-            FrequencyTable existingTable = urlToFrequencyTableMap.get(existingURL);
-
-            // Debug print to check table contents
-            System.out.println("Comparing: " + newURL + " with " + existingURL);
-            System.out.println("New Table (" + newURL + "): " + newTable);
-            System.out.println("Existing Table (" + existingURL + "): " + existingTable);
-
-            double similarityScore = SimilarityMetricCalculator.calculateCosineSimilarity(newTable, existingTable);
-            SiteEdge edge = new SiteEdge(newURL, existingURL, similarityScore);
-            graphData.addEdge(edge);
+            existingTables.add(urlToFrequencyTableMap.get(existingURL));
         }
-
-        graphManager.updateGraphStructure();
+        double[] similarityScores = SimilarityMetricCalculator.similarities(newTable, existingTables);
+        List<SiteEdge> edges = new ArrayList<>(nearestNeighbours > 0 ? nearestNeighbours : similarityScores.length);
+        InvertedIndex.TopHeap nearest = nearestNeighbours > 0 ? new InvertedIndex.TopHeap(nearestNeighbours) : null;
+        int mostSimilar = -1;
+        for (int i = 0; i < similarityScores.length; i++) {
+            if (mostSimilar < 0 || similarityScores[i] > similarityScores[mostSimilar]) {
+                mostSimilar = i;
+            }
+            if (minEdgeSimilarity > 0.0 && !(similarityScores[i] >= minEdgeSimilarity)) {
+                continue;
+            }
+            if (nearest == null) {
+                edges.add(new SiteEdge(newURL, fileURLs.get(i), similarityScores[i]));
+            } else if (similarityScores[i] >= 0.0) { // Not NaN, which an empty page gives
+                nearest.offer(i, (float) similarityScores[i]);
+            }
+        }
+        if (nearest != null) {
+            InvertedIndex.Matches matches = new InvertedIndex.Matches();
+            nearest.drainDescending(matches);
+            for (int m = 0; m < matches.size(); m++) {
+                edges.add(new SiteEdge(newURL, fileURLs.get(matches.docAt(m)), matches.scoreAt(m)));
+            }
+        }
+        if (edges.isEmpty() && connectSparseGraph && mostSimilar >= 0) {
+            // Its best edge keeps the graph connected, as the spanning tree would
+            double score = similarityScores[mostSimilar] >= 0.0 ? similarityScores[mostSimilar] : 0.0;
+            edges.add(new SiteEdge(newURL, fileURLs.get(mostSimilar), score));
+        }
+        graphManager.addEdges(edges);
     }
 
     /**
@@ -276,15 +389,114 @@ public class SimilarityGUI extends JFrame {
     private void displayInitialGraph() {
         // This method initializes the graph based on the loaded URLs
         if (!fileURLs.isEmpty()) {
+            List<String> urls = new ArrayList<>(fileURLs.size());
+            List<FrequencyTable> tables = new ArrayList<>(fileURLs.size());
             for (String url : fileURLs) {
-                updateGraphData(url, urlToFrequencyTableMap.get(url));
+                FrequencyTable table = urlToFrequencyTableMap.get(url);
+                if (table == null) {
+                    System.err.println("No frequency table loaded for URL: " + url);
+                    continue;
+                }
+                graphData.addSite(new SiteRecord(url, table, 0));
+                urls.add(url);
+                tables.add(table);
+                indexFingerprint(url, table);
+            }
+
+            // Compare every pair once, in parallel, then rebuild the graph a single time.
+            // With a threshold, only pairs found through the inverted index are scored;
+            // in approximate mode, only pairs sharing an LSH bucket. In nearest-neighbour
+            // mode each URL keeps its best edges, found in one tiled all-pairs pass that
+            // offers every similarity to a bounded heap per URL.
+            long start = System.nanoTime();
+            if (nearestNeighbours > 0 || (connectSparseGraph && minEdgeSimilarity > 0.0)) {
+                SparseSimilarityGraph.build(tables, nearestNeighbours, minEdgeSimilarity, connectSparseGraph)
+                        .addEdgesTo(urls, graphData);
+            } else if (approximateEdges) {
+                LshIndex.build(tables).addEdgesTo(urls, tables, graphData, minEdgeSimilarity);
+            } else if (minEdgeSimilarity > 0.0) {
+                InvertedIndex.build(tables).addEdgesTo(urls, graphData, minEdgeSimilarity);
+            } else {
+                SimilarityMatrix.compute(tables).addEdgesTo(urls, graphData);
+            }
+            graphManager.updateGraphStructure();
+            System.out.println("Computed similarities of " + urls.size() + " URLs in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            SpanningForest backbone = graphManager.getSpanningForest(true);
+            System.out.println("Similarity backbone: " + backbone.edgeCount() + " edges in "
+                    + backbone.treeCount() + " trees, total similarity " + backbone.totalWeight());
+            if (useDistanceOracle) {
+                graphManager.getDistanceOracle(); // Pay for the table now rather than on the first query
             }
+            loadClusterModel(urls, tables);
+
             displayGraph(null); // Display the graph with the initial data
         } else {
             System.out.println("No URLs loaded from file.");
         }
     }
 
+    /**
+     * Loads the saved cluster model and attaches the pages to it, or builds
+     * the model from a full clustering if there is no saved one. Pages the
+     * saved model does not know are assigned as if just added.
+     *
+     * @param urls   The URLs of the loaded pages.
+     * @param tables The frequency tables of the pages, in the same order.
+     */
+    private void loadClusterModel(List<String> urls, List<FrequencyTable> tables) {
+        if (new File(clusterModelFilePath).isFile()) {
+            try {
+                OnlineKMeansClustering saved = OnlineKMeansClustering.load(clusterModelFilePath);
+                for (int i = 0; i < urls.size(); i++) {
+                    saved.add(urls.get(i), tables.get(i));
+                }
+                clusterModel = saved;
+                return;
+            } catch (IOException e) {
+                System.err.println("Error loading cluster model: " + e.getMessage());
+            }
+        }
+        long start = System.nanoTime();
+        if (selectClusterCount && urls.size() > KMeansModelSelection.DEFAULT_MIN_K) {
+            KMeansModelSelection selection = new KMeansModelSelection(urls, tables);
+            selection.select(KMeansModelSelection.DEFAULT_MIN_K, KMeansModelSelection.DEFAULT_MAX_K,
+                    KMeansModelSelection.DEFAULT_RESTARTS, 0);
+            clusterModel = selection.getBestModel();
+        } else {
+            clusterModel = OnlineKMeansClustering.build(urls, tables, KMeansClustering.DEFAULT_K, 0);
+        }
+        System.out.println("Clustered " + urls.size() + " URLs into " + clusterModel.getK() + " clusters in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        saveClusterModel();
+    }
+
+    /**
+     * Loads the saved HNSW index and adds the pages it does not cover yet, or
+     * builds the index over every page if there is no saved one.
+     */
+    private void loadNearestNeighbourIndex() {
+        if (new File(nearestNeighbourIndexFilePath).isFile()
+                && SimilarityHelper.loadNearestNeighbourIndex(nearestNeighbourIndexFilePath)) {
+            return;
+        }
+        long start = System.nanoTime();
+        SimilarityHelper.buildNearestNeighbourIndex();
+        System.out.println("Built the HNSW index of " + urlToFrequencyTableMap.size() + " URLs in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Saves the cluster model for the next run.
+     */
+    private void saveClusterModel() {
+        try {
+            clusterModel.save(clusterModelFilePath);
+        } catch (IOException e) {
+            System.err.println("Error saving cluster model: " + e.getMessage());
+        }
+    }
+
     /**
      * Displays the graph based on the user input.
      *
@@ -301,6 +513,10 @@ public class SimilarityGUI extends JFrame {
             return;
         }
 
+        graphPlotter.setMostSimilarUrls(
+                userInput == null ? null
+                        : nearestNeighbourSearch ? SimilarityHelper.findNearestUrls(userInput, mostSimilarCount)
+                        : SimilarityHelper.findMostSimilarUrls(userInput, mostSimilarCount));
         HT<String, XYSeriesCollection> datasets = graphPlotter.generateScatterPlotDatasets(frequencyTables, userInput);
 
         if (datasets == null || datasets.isEmpty()) {
@@ -1,11 +1,9 @@
 package websimilaritiespj3;
 
-import java.util.AbstractMap;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Map.Entry;
 
 /**
  * Helper class for managing clusters and calculating similarities between URLs.
@@ -21,6 +19,24 @@ public class SimilarityHelper {
     private static HT<String, FrequencyTable> urlToFrequencyTableMap = new HT<>();
     private static HT<String, String> urlToClusterKeyMap = new HT<>();
 
+    // K-means model the cluster maps above are read from, the refinement they
+    // reflect, and how many clusters besides the query's own are searched
+    public static final int DEFAULT_NEIGHBOUR_CLUSTERS = 1;
+    private static OnlineKMeansClustering clusterModel;
+    private static int clusterModelRefinement;
+    private static int neighbourClusters = DEFAULT_NEIGHBOUR_CLUSTERS;
+
+    // Inverted index over all frequency tables, used when a URL has no cluster,
+    // and the MinHash LSH index over the same documents for approximate queries
+    private static InvertedIndex invertedIndex;
+    private static LshIndex lshIndex;
+    private static List<String> indexedUrls = new ArrayList<>();
+    private static HT<String, Integer> urlToDocIdMap = new HT<>();
+
+    // HNSW graph over every URL for approximate nearest-neighbour queries; it
+    // keeps its own document IDs so that it can be saved and loaded on its own
+    private static HnswIndex hnswIndex = new HnswIndex();
+
     /**
      * Initializes clusters with the given frequency tables.
      * 
@@ -29,26 +45,312 @@ public class SimilarityHelper {
      */
     public static void initializeClusters(HT<String, FrequencyTable> frequencyTables) {
         urlToFrequencyTableMap = frequencyTables;
+        buildInvertedIndex();
+        buildNearestNeighbourIndex();
+    }
+
+    /**
+     * Sets the k-means clusters that {@link #findMostSimilarUrls(String, int)}
+     * searches, along with the frequency tables of the clustered URLs. The
+     * cluster maps follow the model: they are rebuilt whenever a refinement
+     * has reassigned its URLs. The inverted and LSH indexes are built over the
+     * same frequency tables.
+     * 
+     * @param frequencyTables The frequency tables of the clustered URLs.
+     * @param model           The cluster model.
+     */
+    public static void setClusters(HT<String, FrequencyTable> frequencyTables, OnlineKMeansClustering model) {
+        urlToFrequencyTableMap = frequencyTables;
+        clusterModel = model;
+        rebuildClusterMaps();
+        buildInvertedIndex();
+    }
+
+    /**
+     * Loads the k-means clusters saved by the application and attaches the
+     * given frequency tables to them. URLs the saved clusters do not cover
+     * are assigned to their nearest cluster.
+     * 
+     * @param frequencyTables The frequency tables of the URLs.
+     * @param path            The cluster model file to read.
+     * @return True if the clusters were loaded.
+     */
+    public static boolean loadClusters(HT<String, FrequencyTable> frequencyTables, String path) {
+        OnlineKMeansClustering model;
+        try {
+            model = OnlineKMeansClustering.load(path);
+        } catch (IOException e) {
+            System.err.println("Error loading clusters from " + path);
+            e.printStackTrace();
+            return false;
+        }
+        for (HT.Node<String, FrequencyTable> entry : frequencyTables.entrySet()) {
+            model.add(entry.key, entry.value);
+        }
+        setClusters(frequencyTables, model);
+        return true;
     }
 
     /**
-     * Finds the most similar URLs to the given URL within its cluster.
+     * Sets how many clusters besides the query's own are searched by
+     * {@link #findMostSimilarUrls(String, int)}: those whose centroids are
+     * most similar to the query. More clusters find the true top URLs more
+     * often at the cost of comparing more URLs.
+     * 
+     * @param count The number of neighbouring clusters, at least 0.
+     */
+    public static void setNeighbourClusters(int count) {
+        neighbourClusters = Math.max(0, count);
+    }
+
+    /**
+     * Fills the cluster maps from the cluster model.
+     */
+    private static void rebuildClusterMaps() {
+        HT<String, ArrayList<String>> members = new HT<>();
+        HT<String, String> keys = new HT<>();
+        clusterModelRefinement = clusterModel.getRefinementCount();
+        List<List<String>> clusterMembers = clusterModel.getClusterMembers();
+        for (int c = 0; c < clusterMembers.size(); c++) {
+            String clusterKey = String.valueOf(c);
+            members.put(clusterKey, new ArrayList<>(clusterMembers.get(c)));
+            for (String url : clusterMembers.get(c)) {
+                keys.put(url, clusterKey);
+            }
+        }
+        clusters = members;
+        urlToClusterKeyMap = keys;
+    }
+
+    /**
+     * Builds the inverted and LSH indexes over every loaded frequency table.
+     */
+    private static void buildInvertedIndex() {
+        List<String> urls = new ArrayList<>();
+        List<FrequencyTable> tables = new ArrayList<>();
+        HT<String, Integer> docIds = new HT<>();
+        for (HT.Node<String, FrequencyTable> entry : urlToFrequencyTableMap.entrySet()) {
+            docIds.put(entry.key, urls.size());
+            urls.add(entry.key);
+            tables.add(entry.value);
+        }
+        invertedIndex = InvertedIndex.build(tables);
+        lshIndex = LshIndex.build(tables);
+        indexedUrls = urls;
+        urlToDocIdMap = docIds;
+    }
+
+    /**
+     * Replaces the HNSW index with a new one over every loaded frequency table,
+     * for when there is no saved index to load.
+     */
+    public static void buildNearestNeighbourIndex() {
+        HnswIndex index = new HnswIndex();
+        for (HT.Node<String, FrequencyTable> entry : urlToFrequencyTableMap.entrySet()) {
+            index.add(entry.key, entry.value);
+        }
+        hnswIndex = index;
+    }
+
+    /**
+     * Adds a URL to the approximate indexes without rebuilding them. The URL is
+     * found by the LSH and HNSW searches straight away; the exact inverted index
+     * only covers the URLs present when the clusters were set.
+     * 
+     * @param url   The URL to add.
+     * @param table The frequency table of the URL.
+     */
+    public static void addUrl(String url, FrequencyTable table) {
+        if (urlToDocIdMap.contains(url)) {
+            return;
+        }
+        urlToFrequencyTableMap.put(url, table);
+        if (clusterModel != null && !urlToClusterKeyMap.contains(url)) {
+            String clusterKey = String.valueOf(clusterModel.add(url, table));
+            clusters.get(clusterKey).add(url);
+            urlToClusterKeyMap.put(url, clusterKey);
+        }
+        if (lshIndex != null) {
+            urlToDocIdMap.put(url, lshIndex.add(table.getMinHashSignature()));
+            indexedUrls.add(url);
+        }
+        hnswIndex.add(url, table);
+    }
+
+    /**
+     * Finds the URLs most similar to the given URL through the HNSW graph, using
+     * the index's default search width.
+     * 
+     * @param url  The URL to find similar URLs to.
+     * @param topN The number of top similar URLs to return.
+     * @return The most similar URLs found, most similar first.
+     */
+    public static List<String> findNearestUrls(String url, int topN) {
+        return findNearestUrls(url, topN, hnswIndex.getEfSearch());
+    }
+
+    /**
+     * Finds the URLs most similar to the given URL through the HNSW graph. The
+     * result is approximate; a larger search width finds the true top URLs more
+     * often at the cost of visiting more of the graph.
+     * 
+     * @param url      The URL to find similar URLs to.
+     * @param topN     The number of top similar URLs to return.
+     * @param efSearch The search width.
+     * @return The most similar URLs found, most similar first.
+     */
+    public static List<String> findNearestUrls(String url, int topN, int efSearch) {
+        FrequencyTable urlFrequencyTable = urlToFrequencyTableMap.get(url);
+        if (urlFrequencyTable == null) {
+            return Collections.emptyList();
+        }
+        InvertedIndex.Matches matches = hnswIndex.search(urlFrequencyTable.freeze(), topN, efSearch,
+                hnswIndex.docOf(url));
+        List<String> similarUrls = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            similarUrls.add(hnswIndex.urlAt(matches.docAt(i)));
+        }
+        return similarUrls;
+    }
+
+    /**
+     * Saves the HNSW index to a file.
+     * 
+     * @param path The file to write.
+     * @return True if the index was saved.
+     */
+    public static boolean saveNearestNeighbourIndex(String path) {
+        try {
+            hnswIndex.save(path);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving HNSW index to " + path);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Loads the HNSW index from a file saved with
+     * {@link #saveNearestNeighbourIndex}, then adds any loaded URLs it does not
+     * cover yet.
+     * 
+     * @param path The file to read.
+     * @return True if the index was loaded.
+     */
+    public static boolean loadNearestNeighbourIndex(String path) {
+        HnswIndex loaded;
+        try {
+            loaded = HnswIndex.load(path);
+        } catch (IOException e) {
+            System.err.println("Error loading HNSW index from " + path);
+            e.printStackTrace();
+            return false;
+        }
+        for (HT.Node<String, FrequencyTable> entry : urlToFrequencyTableMap.entrySet()) {
+            loaded.add(entry.key, entry.value);
+        }
+        hnswIndex = loaded;
+        return true;
+    }
+
+    /**
+     * Finds the URLs most similar to the given URL across all loaded frequency
+     * tables, using the inverted index so that only URLs sharing words with it
+     * are compared.
+     * 
+     * @param url           The URL to find similar URLs to.
+     * @param topN          The number of top similar URLs to return.
+     * @param minSimilarity The minimum cosine similarity a URL must have.
+     * @return The most similar URLs, most similar first.
+     */
+    public static List<String> findSimilarUrls(String url, int topN, double minSimilarity) {
+        FrequencyTable urlFrequencyTable = urlToFrequencyTableMap.get(url);
+        if (invertedIndex == null || urlFrequencyTable == null) {
+            return Collections.emptyList();
+        }
+        Integer docId = urlToDocIdMap.get(url);
+        InvertedIndex.Matches matches = invertedIndex.top(urlFrequencyTable.freeze(), topN, minSimilarity,
+                docId == null ? -1 : docId);
+        List<String> similarUrls = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            similarUrls.add(indexedUrls.get(matches.docAt(i)));
+        }
+        return similarUrls;
+    }
+
+    /**
+     * Finds URLs similar to the given URL approximately, comparing it only with
+     * the URLs that share a MinHash LSH bucket with it. This takes sub-linear
+     * time but may miss similar URLs whose word sets overlap little.
+     * 
+     * @param url  The URL to find similar URLs to.
+     * @param topN The number of top similar URLs to return.
+     * @return The most similar candidate URLs, most similar first.
+     */
+    public static List<String> findApproximateSimilarUrls(String url, int topN) {
+        FrequencyTable urlFrequencyTable = urlToFrequencyTableMap.get(url);
+        if (lshIndex == null || urlFrequencyTable == null || topN <= 0) {
+            return Collections.emptyList();
+        }
+        Integer docId = urlToDocIdMap.get(url);
+        int[] candidates = lshIndex.candidates(urlFrequencyTable.getMinHashSignature(), 0,
+                docId == null ? -1 : docId);
+        SparseTermVector[] vectors = new SparseTermVector[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            vectors[i] = urlToFrequencyTableMap.get(indexedUrls.get(candidates[i])).freeze();
+        }
+        double[] similarities = SimilarityMetricCalculator.similarities(urlFrequencyTable.freeze(), vectors);
+        InvertedIndex.TopHeap heap = new InvertedIndex.TopHeap(topN);
+        for (int i = 0; i < candidates.length; i++) {
+            if (similarities[i] >= 0) { // NaN for a page with no words
+                heap.offer(candidates[i], (float) similarities[i]);
+            }
+        }
+        InvertedIndex.Matches matches = new InvertedIndex.Matches();
+        heap.drainDescending(matches);
+        List<String> similarUrls = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            similarUrls.add(indexedUrls.get(matches.docAt(i)));
+        }
+        return similarUrls;
+    }
+
+    /**
+     * Finds the most similar URLs to the given URL, either exactly or through
+     * the approximate MinHash LSH index.
+     * 
+     * @param url         The URL to find similar URLs to.
+     * @param topN        The number of top similar URLs to return.
+     * @param approximate Whether to use the approximate LSH search.
+     * @return A list of the most similar URLs.
+     */
+    public static List<String> findMostSimilarUrls(String url, int topN, boolean approximate) {
+        return approximate ? findApproximateSimilarUrls(url, topN) : findMostSimilarUrls(url, topN);
+    }
+
+    /**
+     * Finds the most similar URLs to the given URL within its cluster and the
+     * neighbouring clusters whose centroids are most similar to it. URLs
+     * without a cluster are compared with every loaded URL, through the
+     * inverted index when it covers them all.
      * 
      * @param url  The URL to find similar URLs to.
      * @param topN The number of top similar URLs to return.
      * @return A list of the most similar URLs.
      */
     public static List<String> findMostSimilarUrls(String url, int topN) {
+        if (clusterModel != null && clusterModel.getRefinementCount() != clusterModelRefinement) {
+            rebuildClusterMaps();
+        }
+
         // Get the cluster key for the given URL
         String clusterKey = getClusterKeyForUrl(url);
         if (clusterKey == null) {
-            return Collections.emptyList();
-        }
-
-        // Retrieve cluster members
-        List<String> clusterMembers = clusters.get(clusterKey);
-        if (clusterMembers == null) {
-            return Collections.emptyList();
+            if (invertedIndex != null && invertedIndex.size() == urlToFrequencyTableMap.size()) {
+                return findSimilarUrls(url, topN, 0.0);
+            }
+            return scanSimilarUrls(url, topN);
         }
 
         // Get the frequency table for the given URL
@@ -57,31 +359,96 @@ public class SimilarityHelper {
             return Collections.emptyList();
         }
 
-        // Calculate similarities and store them in a priority queue
-        PriorityQueue<Entry<String, Double>> similarityQueue = new PriorityQueue<>(
-                (entry1, entry2) -> entry2.getValue().compareTo(entry1.getValue()));
+        // The URL's own cluster first, then its nearest neighbours
+        List<String> searchedKeys = new ArrayList<>();
+        searchedKeys.add(clusterKey);
+        if (clusterModel != null) {
+            for (int c : clusterModel.rankClusters(urlFrequencyTable)) {
+                if (searchedKeys.size() > neighbourClusters) {
+                    break;
+                }
+                if (!String.valueOf(c).equals(clusterKey)) {
+                    searchedKeys.add(String.valueOf(c));
+                }
+            }
+        }
 
-        for (String memberUrl : clusterMembers) {
-            if (!memberUrl.equals(url)) {
-                FrequencyTable memberFrequencyTable = urlToFrequencyTableMap.get(memberUrl);
-                if (memberFrequencyTable == null) {
-                    continue;
+        // Calculate similarities and keep the best N in a bounded heap
+        List<String> memberUrls = new ArrayList<>();
+        List<FrequencyTable> memberFrequencyTables = new ArrayList<>();
+        for (String searchedKey : searchedKeys) {
+            List<String> clusterMembers = clusters.get(searchedKey);
+            if (clusterMembers == null) {
+                continue;
+            }
+            for (String memberUrl : clusterMembers) {
+                if (!memberUrl.equals(url)) {
+                    FrequencyTable memberFrequencyTable = urlToFrequencyTableMap.get(memberUrl);
+                    if (memberFrequencyTable == null) {
+                        continue;
+                    }
+                    memberUrls.add(memberUrl);
+                    memberFrequencyTables.add(memberFrequencyTable);
                 }
-                double similarity = SimilarityMetricCalculator.calculateCosineSimilarity(urlFrequencyTable,
-                        memberFrequencyTable);
-                similarityQueue.add(new AbstractMap.SimpleEntry<>(memberUrl, similarity));
             }
         }
+        double[] similarities = SimilarityMetricCalculator.similarities(urlFrequencyTable, memberFrequencyTables);
+        InvertedIndex.TopHeap heap = new InvertedIndex.TopHeap(Math.max(topN, 1));
+        for (int i = 0; i < similarities.length; i++) {
+            if (similarities[i] >= 0) { // NaN for a page with no words
+                heap.offer(i, (float) similarities[i]);
+            }
+        }
+        InvertedIndex.Matches matches = new InvertedIndex.Matches();
+        heap.drainDescending(matches);
 
         // Retrieve the top N similar URLs
         List<String> mostSimilarUrls = new ArrayList<>();
-        for (int i = 0; i < topN && !similarityQueue.isEmpty(); i++) {
-            mostSimilarUrls.add(similarityQueue.poll().getKey());
+        for (int i = 0; i < topN && i < matches.size(); i++) {
+            mostSimilarUrls.add(memberUrls.get(matches.docAt(i)));
         }
 
         return mostSimilarUrls;
     }
 
+    /**
+     * Finds the most similar URLs to the given URL by comparing it with every
+     * loaded frequency table, for when the inverted index is missing or does
+     * not cover URLs added since it was built.
+     * 
+     * @param url  The URL to find similar URLs to.
+     * @param topN The number of top similar URLs to return.
+     * @return The most similar URLs, most similar first.
+     */
+    private static List<String> scanSimilarUrls(String url, int topN) {
+        FrequencyTable urlFrequencyTable = urlToFrequencyTableMap.get(url);
+        if (urlFrequencyTable == null || topN <= 0) {
+            return Collections.emptyList();
+        }
+        List<String> otherUrls = new ArrayList<>();
+        List<FrequencyTable> otherFrequencyTables = new ArrayList<>();
+        for (HT.Node<String, FrequencyTable> entry : urlToFrequencyTableMap.entrySet()) {
+            if (!entry.key.equals(url)) {
+                otherUrls.add(entry.key);
+                otherFrequencyTables.add(entry.value);
+            }
+        }
+        double[] similarities = SimilarityMetricCalculator.similarities(urlFrequencyTable, otherFrequencyTables);
+        InvertedIndex.TopHeap heap = new InvertedIndex.TopHeap(topN);
+        for (int i = 0; i < similarities.length; i++) {
+            if (similarities[i] >= 0) { // NaN for a page with no words
+                heap.offer(i, (float) similarities[i]);
+            }
+        }
+        InvertedIndex.Matches matches = new InvertedIndex.Matches();
+        heap.drainDescending(matches);
+        List<String> similarUrls = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            similarUrls.add(otherUrls.get(matches.docAt(i)));
+        }
+        return similarUrls;
+    }
+
     /**
      * Retrieves the cluster key associated with a given URL.
      * 
@@ -89,7 +456,13 @@ public class SimilarityHelper {
      * @return The cluster key or null if not found.
      */
     private static String getClusterKeyForUrl(String url) {
-        return urlToClusterKeyMap.getOrDefault(url, null);
+        String clusterKey = urlToClusterKeyMap.getOrDefault(url, null);
+        if (clusterKey == null && clusterModel != null && clusterModel.clusterOf(url) >= 0) {
+            clusterKey = String.valueOf(clusterModel.clusterOf(url)); // Added to the model since the maps were built
+            clusters.get(clusterKey).add(url);
+            urlToClusterKeyMap.put(url, clusterKey);
+        }
+        return clusterKey;
     }
 
     /**
@@ -101,56 +474,6 @@ public class SimilarityHelper {
      * @return A list of SiteEdges representing the shortest path.
      */
     public static List<SiteEdge> findShortestPath(GraphData graph, String site1, String site2) {
-        HT<String, SiteRecord> siteMap = new HT<>();
-        for (SiteRecord site : graph.getSites()) {
-            siteMap.put(site.getUrl(), site);
-        }
-
-        HT<String, Double> dist = new HT<>();
-        HT<String, SiteEdge> prev = new HT<>();
-        PriorityQueue<SiteRecord> pq = new PriorityQueue<>(
-                (a, b) -> Double.compare(dist.getOrDefault(a.getUrl(), Double.MAX_VALUE),
-                        dist.getOrDefault(b.getUrl(), Double.MAX_VALUE)));
-
-        dist.put(site1, 0.0);
-        pq.add(siteMap.get(site1));
-
-        while (!pq.isEmpty()) {
-            SiteRecord current = pq.poll();
-            if (current.getUrl().equals(site2)) {
-                break;
-            }
-
-            for (SiteEdge edge : current.getAdjacentEdges()) {
-                String neighborUrl = edge.getOtherSite(current.getUrl());
-                if (neighborUrl != null) {
-                    double newDist = dist.getOrDefault(current.getUrl(), Double.MAX_VALUE) + edge.getSimilarityScore();
-                    if (newDist < dist.getOrDefault(neighborUrl, Double.MAX_VALUE)) {
-                        dist.put(neighborUrl, newDist);
-                        prev.put(neighborUrl, edge);
-                        pq.add(siteMap.get(neighborUrl));
-                    }
-                }
-            }
-        }
-
-        return reconstructPath(site1, site2, prev);
-    }
-
-    /**
-     * Reconstructs the shortest path between two sites.
-     * 
-     * @param start The starting site.
-     * @param end   The destination site.
-     * @param prev  The hashtable containing the previous edges.
-     * @return A list of SiteEdges representing the shortest path.
-     */
-    private static List<SiteEdge> reconstructPath(String start, String end, HT<String, SiteEdge> prev) {
-        List<SiteEdge> path = new ArrayList<>();
-        for (String at = end; prev.contains(at); at = prev.get(at).getOtherSite(at)) {
-            path.add(prev.get(at));
-        }
-        Collections.reverse(path);
-        return path;
+        return SiteGraph.build(graph).shortestPath(site1, site2);
     }
 }
@@ -0,0 +1,180 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The cosine similarity of every pair of documents in a corpus, computed once
+ * and stored as the upper triangle of the matrix (without the diagonal) in a
+ * single {@code float[]}.
+ * <p>
+ * The triangle is cut into square tiles that are computed in parallel with
+ * fork/join. Within a tile each row document is scattered once and then
+ * compared with the tile's column documents, which stay in cache across rows.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SimilarityMatrix {
+    private static final int TILE_SIZE = 64;
+    // Largest n for which n * (n - 1) / 2 entries fit in one array
+    private static final int MAX_DOCUMENTS = 65535;
+
+    private final int size;
+    private final float[] values; // Row i holds columns i + 1 .. size - 1
+
+    private SimilarityMatrix(int size) {
+        this.size = size;
+        this.values = new float[(int) ((long) size * (size - 1) / 2)];
+    }
+
+    /**
+     * Computes the similarity matrix of the given frequency tables using the
+     * common fork/join pool.
+     *
+     * @param tables The documents of the corpus.
+     * @return The similarity matrix, indexed in list order.
+     * @throws IllegalArgumentException If there are more than 65535 documents.
+     */
+    public static SimilarityMatrix compute(List<FrequencyTable> tables) {
+        return compute(tables, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the similarity matrix of the given frequency tables.
+     *
+     * @param tables The documents of the corpus.
+     * @param pool   The pool to run the tiles on.
+     * @return The similarity matrix, indexed in list order.
+     * @throws IllegalArgumentException If there are more than 65535 documents.
+     */
+    public static SimilarityMatrix compute(List<FrequencyTable> tables, ForkJoinPool pool) {
+        int n = tables.size();
+        if (n > MAX_DOCUMENTS) {
+            throw new IllegalArgumentException("Too many documents for a dense similarity matrix: " + n);
+        }
+        SparseTermVector[] vectors = new SparseTermVector[n];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = tables.get(i).freeze();
+        }
+
+        SimilarityMatrix matrix = new SimilarityMatrix(n);
+        int blocks = (n + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCount = blocks * (blocks + 1) / 2;
+        int[] tileRows = new int[tileCount];
+        int[] tileColumns = new int[tileCount];
+        int t = 0;
+        for (int row = 0; row < blocks; row++) {
+            for (int column = row; column < blocks; column++) {
+                tileRows[t] = row;
+                tileColumns[t] = column;
+                t++;
+            }
+        }
+        pool.invoke(new TileTask(matrix, vectors, tileRows, tileColumns, 0, tileCount));
+        return matrix;
+    }
+
+    /**
+     * Returns the number of documents.
+     *
+     * @return The number of rows (and columns) of the matrix.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the similarity of two documents. A document's similarity with
+     * itself is 1.
+     *
+     * @param i The index of the first document.
+     * @param j The index of the second document.
+     * @return The cosine similarity.
+     */
+    public float get(int i, int j) {
+        if (i == j) {
+            return 1.0f;
+        }
+        return i < j ? values[index(i, j)] : values[index(j, i)];
+    }
+
+    /**
+     * Creates an edge for every pair of documents and adds them all to the graph
+     * in one step.
+     *
+     * @param urls      The URL of each document, in matrix order.
+     * @param graphData The graph to add the edges to.
+     */
+    public void addEdgesTo(List<String> urls, GraphData graphData) {
+        List<SiteEdge> edges = new ArrayList<>(values.length);
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            String url = urls.get(i);
+            for (int j = i + 1; j < size; j++) {
+                edges.add(new SiteEdge(url, urls.get(j), values[k++]));
+            }
+        }
+        graphData.addEdges(edges);
+    }
+
+    /**
+     * Returns the position of entry (i, j), with i &lt; j, in the values array.
+     */
+    private int index(int i, int j) {
+        return (int) ((long) i * (2 * size - i - 1) / 2) + (j - i - 1);
+    }
+
+    /**
+     * Computes a range of tiles, splitting it in half until one tile is left.
+     */
+    private static final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final SimilarityMatrix matrix;
+        private final SparseTermVector[] vectors;
+        private final int[] tileRows;
+        private final int[] tileColumns;
+        private final int from;
+        private final int to;
+
+        TileTask(SimilarityMatrix matrix, SparseTermVector[] vectors, int[] tileRows, int[] tileColumns,
+                int from, int to) {
+            this.matrix = matrix;
+            this.vectors = vectors;
+            this.tileRows = tileRows;
+            this.tileColumns = tileColumns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(matrix, vectors, tileRows, tileColumns, from, middle),
+                        new TileTask(matrix, vectors, tileRows, tileColumns, middle, to));
+                return;
+            }
+            int n = vectors.length;
+            int rowStart = tileRows[from] * TILE_SIZE;
+            int rowEnd = Math.min(rowStart + TILE_SIZE, n);
+            int columnStart = tileColumns[from] * TILE_SIZE;
+            int columnEnd = Math.min(columnStart + TILE_SIZE, n);
+            double[] row = new double[TILE_SIZE];
+            for (int i = rowStart; i < rowEnd; i++) {
+                int first = Math.max(columnStart, i + 1); // Diagonal tiles only hold the upper part
+                if (first >= columnEnd) {
+                    continue;
+                }
+                SimilarityMetricCalculator.similarities(vectors[i], vectors, first, columnEnd, row, 0);
+                int base = matrix.index(i, first);
+                for (int j = first; j < columnEnd; j++) {
+                    matrix.values[base + j - first] = (float) row[j - first];
+                }
+            }
+        }
+    }
+}
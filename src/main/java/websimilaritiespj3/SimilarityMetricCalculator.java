@@ -1,18 +1,29 @@
 package websimilaritiespj3;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Provides methods to calculate the cosine similarity between two frequency
  * tables.
- * 
+ *
  * @author Joel Santos
  * @version 3.0
  * @since 11-10-2023
  */
 public class SimilarityMetricCalculator {
 
+    // Size ratio above which the dot product binary-searches the longer vector
+    // instead of merging through it
+    private static final int GALLOP_RATIO = 32;
+
+    // Dense per-thread buffer indexed by term ID, used to scatter the query of a
+    // batch; every entry is zero between calls
+    private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+
     /**
      * Calculates the cosine similarity between two FrequencyTable objects.
-     * 
+     *
      * @param table1 The first frequency table.
      * @param table2 The second frequency table.
      * @return The cosine similarity value between the two frequency tables.
@@ -22,31 +33,189 @@ public class SimilarityMetricCalculator {
         if (table1 == null || table2 == null) {
             throw new IllegalArgumentException("Frequency tables cannot be null.");
         }
+        return calculateCosineSimilarity(table1.freeze(), table2.freeze());
+    }
 
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
+    /**
+     * Calculates the cosine similarity between two frozen frequency tables by
+     * merging their sorted term IDs.
+     *
+     * @param vector1 The first vector.
+     * @param vector2 The second vector.
+     * @return The cosine similarity value between the two vectors.
+     * @throws IllegalArgumentException if either vector is null.
+     */
+    public static double calculateCosineSimilarity(SparseTermVector vector1, SparseTermVector vector2) {
+        if (vector1 == null || vector2 == null) {
+            throw new IllegalArgumentException("Frequency tables cannot be null.");
+        }
+        return dotProduct(vector1, vector2) / (vector1.getNorm() * vector2.getNorm());
+    }
+
+    /**
+     * Calculates the cosine similarity between a query table and each table in a
+     * list. The query is normalized and scattered into a dense per-thread buffer
+     * once, after which each table costs one pass over its own terms.
+     *
+     * @param query  The frequency table to compare against.
+     * @param tables The frequency tables to compare with the query.
+     * @return The similarity of the query with each table, in list order.
+     * @throws IllegalArgumentException if the query or any table is null.
+     */
+    public static double[] similarities(FrequencyTable query, List<FrequencyTable> tables) {
+        if (query == null) {
+            throw new IllegalArgumentException("Frequency tables cannot be null.");
+        }
+        SparseTermVector[] vectors = new SparseTermVector[tables.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            FrequencyTable table = tables.get(i);
+            if (table == null) {
+                throw new IllegalArgumentException("Frequency tables cannot be null.");
+            }
+            vectors[i] = table.freeze();
+        }
+        return similarities(query.freeze(), vectors);
+    }
 
-        // Calculate the dot product and normA
-        for (String word : table1.keySet()) {
-            int freqA = table1.getFrequency(word);
-            normA += Math.pow(freqA, 2);
+    /**
+     * Calculates the cosine similarity between a query vector and each vector in
+     * an array. All vectors must refer to the same term dictionary.
+     *
+     * @param query   The vector to compare against.
+     * @param vectors The vectors to compare with the query.
+     * @return The similarity of the query with each vector, in array order.
+     */
+    public static double[] similarities(SparseTermVector query, SparseTermVector[] vectors) {
+        double[] results = new double[vectors.length];
+        similarities(query, vectors, 0, vectors.length, results, 0);
+        return results;
+    }
 
-            int freqB = table2.getFrequency(word);
-            dotProduct += freqA * freqB; // freqB will be 0 if the word is not found in table2
+    /**
+     * Calculates the cosine similarity between a query vector and a range of
+     * vectors, writing the result for {@code vectors[i]} to
+     * {@code results[offset + i - from]}.
+     *
+     * @param query   The vector to compare against.
+     * @param vectors The vectors to compare with the query.
+     * @param from    The first index to compare, inclusive.
+     * @param to      The last index to compare, exclusive.
+     * @param results Receives the similarities.
+     * @param offset  The position in {@code results} for {@code vectors[from]}.
+     */
+    static void similarities(SparseTermVector query, SparseTermVector[] vectors, int from, int to,
+            double[] results, int offset) {
+        if (query.getNorm() == 0.0) {
+            Arrays.fill(results, offset, offset + to - from, Double.NaN); // Same as 0 / 0 in the pairwise form
+            return;
         }
 
-        // Calculate normB
-        for (String word : table2.keySet()) {
-            int freqB = table2.getFrequency(word);
-            normB += Math.pow(freqB, 2);
+        double[] weights = scatter(query);
+        for (int v = from; v < to; v++) {
+            results[offset + v - from] = gather(weights, vectors[v]) / vectors[v].getNorm();
         }
+        clear(weights, query);
+    }
 
-        // Debug: Print the sizes of the tables and the calculated similarity
-        System.out.println("Table 1 size: " + table1.size() + ", Table 2 size: " + table2.size());
-        double similarity = dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
-        System.out.println("Similarity: " + similarity);
+    /**
+     * Writes the normalized weights of a query into this thread's dense buffer,
+     * indexed by term ID. Every vector to be gathered against the buffer must
+     * have been frozen before this call, so that its term IDs fit. The buffer
+     * must be cleared with {@link #clear} before the thread scatters again.
+     *
+     * @param query The query vector, with a nonzero norm.
+     * @return The buffer.
+     */
+    static double[] scatter(SparseTermVector query) {
+        int[] queryIds = query.termIds();
+        int[] queryCounts = query.counts();
+        double queryNorm = query.getNorm();
+        double[] weights = SCRATCH.get();
+        int dictionarySize = query.getDictionary().size();
+        if (weights.length < dictionarySize) {
+            weights = new double[Math.max(dictionarySize, weights.length * 2)];
+            SCRATCH.set(weights);
+        }
+        for (int i = 0; i < queryIds.length; i++) {
+            weights[queryIds[i]] = queryCounts[i] / queryNorm;
+        }
+        return weights;
+    }
 
-        return similarity;
+    /**
+     * Computes the dot product of a scattered query with a vector, i.e. the
+     * cosine similarity times the vector's norm.
+     *
+     * @param weights The buffer returned by {@link #scatter}.
+     * @param vector  The vector to compare with the query.
+     * @return The dot product.
+     */
+    static double gather(double[] weights, SparseTermVector vector) {
+        int[] ids = vector.termIds();
+        int[] counts = vector.counts();
+        double dot = 0.0;
+        for (int i = 0; i < ids.length; i++) {
+            dot += weights[ids[i]] * counts[i];
+        }
+        return dot;
+    }
+
+    /**
+     * Resets the entries of the buffer written by {@link #scatter} to zero.
+     *
+     * @param weights The buffer returned by {@link #scatter}.
+     * @param query   The query that was scattered.
+     */
+    static void clear(double[] weights, SparseTermVector query) {
+        for (int id : query.termIds()) {
+            weights[id] = 0.0;
+        }
+    }
+
+    /**
+     * Computes the dot product of two vectors. Terms are matched by a merge over
+     * both sorted ID arrays in which both cursors advance without a branch; when
+     * one vector is much longer, its matches are found by binary search instead.
+     *
+     * @param vector1 The first vector.
+     * @param vector2 The second vector.
+     * @return The dot product.
+     */
+    static long dotProduct(SparseTermVector vector1, SparseTermVector vector2) {
+        SparseTermVector shorter = vector1.size() <= vector2.size() ? vector1 : vector2;
+        SparseTermVector longer = shorter == vector1 ? vector2 : vector1;
+        int[] aIds = shorter.termIds();
+        int[] aCounts = shorter.counts();
+        int[] bIds = longer.termIds();
+        int[] bCounts = longer.counts();
+        int aLength = aIds.length;
+        int bLength = bIds.length;
+        long dot = 0;
+
+        if ((long) aLength * GALLOP_RATIO < bLength) {
+            int from = 0;
+            for (int i = 0; i < aLength && from < bLength; i++) {
+                int index = Arrays.binarySearch(bIds, from, bLength, aIds[i]);
+                if (index >= 0) {
+                    dot += (long) aCounts[i] * bCounts[index];
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+            }
+            return dot;
+        }
+
+        int i = 0;
+        int j = 0;
+        while (i < aLength && j < bLength) {
+            int a = aIds[i];
+            int b = bIds[j];
+            long product = (long) aCounts[i] * bCounts[j];
+            dot += a == b ? product : 0;
+            i += a <= b ? 1 : 0;
+            j += a >= b ? 1 : 0;
+        }
+        return dot;
     }
 }
@@ -0,0 +1,503 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An undirected site graph in compressed sparse row (CSR) form. Sites are
+ * numbered 0 .. n - 1, and the edges of vertex v are the entries
+ * {@code offsets[v] .. ends[v] - 1} of the {@code targets},
+ * {@code weights} and {@code twins} arrays, so each direction of an edge
+ * costs 12 bytes, plus the free room of its vertex's region described below,
+ * and traversals never hash a URL or compare strings.
+ * <p>
+ * The graph can be updated in place. Each vertex's entries sit in a region
+ * that may have free room at its end; a vertex that outgrows its region is
+ * moved to the end of the arrays with room to spare, and the arrays are
+ * compacted once more than half of them is unused. Every entry records the
+ * position of the entry for the other direction of its edge, so a vertex and
+ * its edges are removed in time proportional to its degree. A removed vertex
+ * keeps its number, with no URL and no edges, until the graph is rebuilt.
+ * <p>
+ * Updates are not synchronized; callers must not query the graph while it is
+ * being updated.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SiteGraph {
+    private static final int MIN_REGION = 4; // Entries given to a vertex when it is moved
+
+    private String[] urls; // By vertex, null once removed
+    private final TermCountMap vertexIds; // URL -> vertex + 1, or 0 once removed
+    private int vertexCount;
+    private int[] offsets; // Edges of v are [offsets[v], ends[v])
+    private int[] ends;
+    private int[] limits; // The region of v is [offsets[v], limits[v])
+    private int[] targets;
+    private float[] weights; // Similarity score of each edge
+    private int[] twins; // Position of the entry for the other direction of each edge
+    private int used; // Entries of the arrays in use by some region
+    private int unused; // Entries inside [0, used) that belong to no region
+    private int edgeCount;
+    private int removedCount; // Removed vertices
+    private long signature; // Content hash, computed on first use; 0 until then
+
+    private SiteGraph(TermCountMap vertexIds) {
+        this.vertexIds = vertexIds;
+    }
+
+    /**
+     * Builds the graph of the given sites and edges. Every site becomes a
+     * vertex, in list order, followed by any URL that only appears in an edge.
+     *
+     * @param graphData The sites and edges.
+     * @return The graph.
+     */
+    public static SiteGraph build(GraphData graphData) {
+        List<SiteRecord> sites = graphData.getSites();
+        List<SiteEdge> edges = graphData.getEdges();
+        TermCountMap vertexIds = new TermCountMap(sites.size());
+        List<String> urls = new ArrayList<>(sites.size());
+        for (SiteRecord site : sites) {
+            vertexOf(site.getUrl(), vertexIds, urls);
+        }
+
+        int m = edges.size();
+        int[] from = new int[m];
+        int[] to = new int[m];
+        float[] scores = new float[m];
+        int[] degree = new int[urls.size() + 1];
+        for (int e = 0; e < m; e++) {
+            SiteEdge edge = edges.get(e);
+            from[e] = vertexOf(edge.getSite1(), vertexIds, urls);
+            to[e] = vertexOf(edge.getSite2(), vertexIds, urls);
+            scores[e] = (float) edge.getSimilarityScore();
+            if (degree.length <= Math.max(from[e], to[e])) {
+                degree = Arrays.copyOf(degree, Math.max(degree.length * 2, urls.size()));
+            }
+            degree[from[e]]++;
+            if (to[e] != from[e]) {
+                degree[to[e]]++; // A self-loop is stored once
+            }
+        }
+
+        int n = urls.size();
+        SiteGraph graph = new SiteGraph(vertexIds);
+        graph.urls = urls.toArray(new String[0]);
+        graph.vertexCount = n;
+        graph.offsets = new int[n];
+        graph.ends = new int[n];
+        graph.limits = new int[n];
+        int total = 0;
+        for (int v = 0; v < n; v++) {
+            graph.offsets[v] = total;
+            graph.ends[v] = total;
+            total += degree[v];
+            graph.limits[v] = total;
+        }
+        graph.targets = new int[total];
+        graph.weights = new float[total];
+        graph.twins = new int[total];
+        graph.used = total;
+        for (int e = 0; e < m; e++) {
+            graph.link(from[e], to[e], scores[e]);
+        }
+        graph.edgeCount = m;
+        return graph;
+    }
+
+    /**
+     * Returns the vertex of a URL, adding it if it is new.
+     */
+    private static int vertexOf(String url, TermCountMap vertexIds, List<String> urls) {
+        int vertex = vertexIds.get(url) - 1;
+        if (vertex < 0) {
+            vertex = urls.size();
+            urls.add(url);
+            vertexIds.put(url, vertex + 1);
+        }
+        return vertex;
+    }
+
+    /**
+     * Returns the vertex of a URL, adding it, with no edges, if it is new.
+     *
+     * @param url The URL.
+     * @return The vertex.
+     */
+    public int addVertex(String url) {
+        int vertex = vertexOf(url);
+        if (vertex >= 0) {
+            return vertex;
+        }
+        if (vertexCount == urls.length) {
+            int capacity = Math.max(16, vertexCount * 2);
+            urls = Arrays.copyOf(urls, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            limits = Arrays.copyOf(limits, capacity);
+        }
+        vertex = vertexCount++;
+        urls[vertex] = url;
+        offsets[vertex] = used;
+        ends[vertex] = used;
+        limits[vertex] = used;
+        vertexIds.put(url, vertex + 1);
+        signature = 0;
+        return vertex;
+    }
+
+    /**
+     * Adds an undirected edge, adding either URL as a vertex if it is new.
+     *
+     * @param site1 One end of the edge.
+     * @param site2 The other end of the edge.
+     * @param score The similarity score of the edge.
+     */
+    public void addEdge(String site1, String site2, double score) {
+        int from = addVertex(site1);
+        int to = addVertex(site2);
+        ensureRoom(from, 1);
+        if (to != from) {
+            ensureRoom(to, 1);
+        }
+        link(from, to, (float) score);
+        edgeCount++;
+        signature = 0;
+    }
+
+    /**
+     * Removes a vertex and all of its edges.
+     *
+     * @param url The URL of the vertex.
+     * @return True if the URL was in the graph.
+     */
+    public boolean removeVertex(String url) {
+        int vertex = vertexOf(url);
+        if (vertex < 0) {
+            return false;
+        }
+        for (int p = offsets[vertex]; p < ends[vertex]; p++) {
+            int neighbor = targets[p];
+            if (neighbor != vertex) {
+                unlink(neighbor, twins[p]);
+            }
+            edgeCount--;
+        }
+        unused += limits[vertex] - offsets[vertex];
+        ends[vertex] = offsets[vertex];
+        limits[vertex] = offsets[vertex];
+        urls[vertex] = null;
+        vertexIds.put(url, 0);
+        removedCount++;
+        signature = 0;
+        if (unused > used / 2) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Appends an edge to the regions of both of its ends, which must have
+     * room for it.
+     */
+    private void link(int from, int to, float score) {
+        int p = ends[from]++;
+        targets[p] = to;
+        weights[p] = score;
+        if (to == from) {
+            twins[p] = p; // A self-loop is stored once
+            return;
+        }
+        int q = ends[to]++;
+        targets[q] = from;
+        weights[q] = score;
+        twins[p] = q;
+        twins[q] = p;
+    }
+
+    /**
+     * Removes one entry from a vertex's region by moving its last entry into
+     * the gap.
+     */
+    private void unlink(int vertex, int entry) {
+        int last = --ends[vertex];
+        if (entry != last) {
+            move(last, entry);
+        }
+    }
+
+    /**
+     * Moves an entry to a new position, keeping its twin pointing at it.
+     */
+    private void move(int from, int to) {
+        targets[to] = targets[from];
+        weights[to] = weights[from];
+        int twin = twins[from];
+        if (twin == from) {
+            twins[to] = to;
+        } else {
+            twins[to] = twin;
+            twins[twin] = to;
+        }
+    }
+
+    /**
+     * Makes room for more entries in a vertex's region, growing it in place if
+     * it is the last region or moving it to the end of the arrays otherwise.
+     */
+    private void ensureRoom(int vertex, int count) {
+        if (ends[vertex] + count <= limits[vertex]) {
+            return;
+        }
+        if (unused > used / 2) {
+            compact();
+            if (ends[vertex] + count <= limits[vertex]) {
+                return;
+            }
+        }
+        int needed = ends[vertex] + count;
+        if (limits[vertex] == used) { // The last region grows in place
+            int grown = Math.max(needed, offsets[vertex] + Math.max(MIN_REGION, 2 * (needed - offsets[vertex])));
+            reserve(grown);
+            used = grown;
+            limits[vertex] = grown;
+            return;
+        }
+        int degree = ends[vertex] - offsets[vertex];
+        int size = Math.max(MIN_REGION, 2 * (degree + count));
+        reserve(used + size);
+        int start = used;
+        for (int i = 0; i < degree; i++) {
+            move(offsets[vertex] + i, start + i);
+        }
+        unused += limits[vertex] - offsets[vertex];
+        offsets[vertex] = start;
+        ends[vertex] = start + degree;
+        limits[vertex] = start + size;
+        used += size;
+    }
+
+    /**
+     * Grows the entry arrays to hold at least the given number of entries.
+     */
+    private void reserve(int capacity) {
+        if (capacity > targets.length) {
+            int length = Math.max(capacity, targets.length + (targets.length >> 1));
+            targets = Arrays.copyOf(targets, length);
+            weights = Arrays.copyOf(weights, length);
+            twins = Arrays.copyOf(twins, length);
+        }
+    }
+
+    /**
+     * Packs every region back to back, keeping a little room at the end of
+     * each, and drops the entries no region uses.
+     */
+    private void compact() {
+        int[] newPosition = new int[used]; // Old position -> new position
+        int[] newOffsets = new int[vertexCount];
+        int total = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            int degree = ends[v] - offsets[v];
+            newOffsets[v] = total;
+            for (int i = 0; i < degree; i++) {
+                newPosition[offsets[v] + i] = total + i;
+            }
+            total += degree == 0 ? 0 : degree + (degree >> 2) + 1;
+        }
+        int[] newTargets = new int[total];
+        float[] newWeights = new float[total];
+        int[] newTwins = new int[total];
+        for (int v = 0; v < vertexCount; v++) {
+            int degree = ends[v] - offsets[v];
+            for (int i = 0; i < degree; i++) {
+                int old = offsets[v] + i;
+                newTargets[newOffsets[v] + i] = targets[old];
+                newWeights[newOffsets[v] + i] = weights[old];
+                newTwins[newOffsets[v] + i] = newPosition[twins[old]];
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            int degree = ends[v] - offsets[v];
+            offsets[v] = newOffsets[v];
+            ends[v] = newOffsets[v] + degree;
+            limits[v] = v + 1 < vertexCount ? newOffsets[v + 1] : total;
+        }
+        targets = newTargets;
+        weights = newWeights;
+        twins = newTwins;
+        used = total;
+        unused = 0;
+    }
+
+    /**
+     * Returns the number of vertices, including removed ones, which have no
+     * URL and no edges.
+     *
+     * @return The number of vertex numbers in use.
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns the number of vertices that have not been removed.
+     *
+     * @return The live vertex count.
+     */
+    public int liveVertexCount() {
+        return vertexCount - removedCount;
+    }
+
+    /**
+     * Returns the number of edges, counting each undirected edge once.
+     *
+     * @return The edge count.
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns a 64-bit hash of the graph's vertices, edges and weights. Two
+     * graphs with the same signature are, for all practical purposes, the same
+     * graph, so data derived from a graph can be checked against it cheaply.
+     *
+     * @return The signature, never 0.
+     */
+    public long signature() {
+        long hash = signature;
+        if (hash == 0) {
+            hash = 0xcbf29ce484222325L;
+            for (int v = 0; v < vertexCount; v++) {
+                hash = MinHash.mix(hash ^ (urls[v] == null ? 0 : urls[v].hashCode()));
+                hash = MinHash.mix(hash ^ (ends[v] - offsets[v]));
+                for (int p = offsets[v]; p < ends[v]; p++) {
+                    hash = MinHash.mix(hash ^ (((long) targets[p] << 32) | (Float.floatToIntBits(weights[p]) & 0xffffffffL)));
+                }
+            }
+            if (hash == 0) {
+                hash = 1;
+            }
+            signature = hash; // Racing threads compute the same value
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the vertex of a URL.
+     *
+     * @param url The URL to look up.
+     * @return The vertex, or -1 if the URL is not in the graph.
+     */
+    public int vertexOf(String url) {
+        return vertexIds.get(url) - 1;
+    }
+
+    /**
+     * Returns the URL of a vertex.
+     *
+     * @param vertex The vertex.
+     * @return The URL, or null if the vertex was removed.
+     */
+    public String urlOf(int vertex) {
+        return urls[vertex];
+    }
+
+    /**
+     * Returns the number of edges of a vertex.
+     *
+     * @param vertex The vertex.
+     * @return The degree.
+     */
+    public int degree(int vertex) {
+        return ends[vertex] - offsets[vertex];
+    }
+
+    /**
+     * Returns the edges of a site.
+     *
+     * @param url The URL of the site.
+     * @return The site's edges, each with the site as its first end, or an
+     *         empty list if the site is not in the graph.
+     */
+    public List<SiteEdge> edgesOf(String url) {
+        int vertex = vertexOf(url);
+        List<SiteEdge> edges = new ArrayList<>(vertex < 0 ? 0 : degree(vertex));
+        if (vertex >= 0) {
+            for (int p = offsets[vertex]; p < ends[vertex]; p++) {
+                edges.add(edgeAt(vertex, p));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Returns the position of the first edge entry of every vertex.
+     *
+     * @return The offsets array, which must not be modified.
+     */
+    int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns the position just past the last edge entry of every vertex.
+     *
+     * @return The ends array, which must not be modified.
+     */
+    int[] ends() {
+        return ends;
+    }
+
+    /**
+     * Returns the target vertex of every edge entry.
+     *
+     * @return The targets array, which must not be modified.
+     */
+    int[] targets() {
+        return targets;
+    }
+
+    /**
+     * Returns the similarity score of every edge entry.
+     *
+     * @return The weights array, which must not be modified.
+     */
+    float[] weights() {
+        return weights;
+    }
+
+    /**
+     * Creates a SiteEdge for one edge entry.
+     *
+     * @param from  The vertex the entry belongs to.
+     * @param entry The position of the entry in the targets array.
+     * @return The edge.
+     */
+    SiteEdge edgeAt(int from, int entry) {
+        return new SiteEdge(urls[from], urls[targets[entry]], weights[entry]);
+    }
+
+    /**
+     * Finds the path between two sites with the smallest total similarity score
+     * using Dijkstra's algorithm.
+     *
+     * @param fromSite The starting site URL.
+     * @param toSite   The destination site URL.
+     * @return The edges of the path in order, or an empty list if either site is
+     *         missing or there is no path.
+     */
+    public List<SiteEdge> shortestPath(String fromSite, String toSite) {
+        int source = vertexOf(fromSite);
+        int target = vertexOf(toSite);
+        if (source < 0 || target < 0) {
+            return new SerializableList<>();
+        }
+        return ShortestPathEngine.shortestPath(this, source, target);
+    }
+}
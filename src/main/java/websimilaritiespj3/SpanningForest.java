@@ -0,0 +1,344 @@
+package websimilaritiespj3;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * A maximum or minimum spanning forest of a {@link SiteGraph}: one spanning
+ * tree per component. The maximum forest is the similarity backbone of the
+ * corpus, the strongest edges that still keep every component connected.
+ * <p>
+ * The edges are first copied out of the graph into primitive arrays, each
+ * undirected edge once, and ranked by a single long that orders them by
+ * weight and breaks ties by edge number. With every rank distinct the forest
+ * is unique, so both algorithms below return the same edges. Small graphs use
+ * Kruskal's algorithm on the ranks sorted in parallel. Large graphs use
+ * Borůvka's algorithm: in every round each component picks its best outgoing
+ * edge with an atomic maximum, in parallel over the edges, the picked edges
+ * are unioned in parallel, and the edges inside a component are dropped. The
+ * number of components at least halves every round.
+ * <p>
+ * The forest records the signature of the graph it was computed for and can
+ * be saved to disk, like {@link Landmarks}.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SpanningForest implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int BORUVKA_THRESHOLD = 1 << 17; // Edge count from which Borůvka replaces Kruskal
+    private static final long NONE = Long.MIN_VALUE; // No outgoing edge picked
+
+    private final long graphSignature; // SiteGraph.signature() of the graph
+    private final int vertexCount;
+    private final boolean maximum;
+    private final int[] from; // Edges of the forest, strongest first for a maximum forest
+    private final int[] to;
+    private final float[] weights;
+    private final int treeCount;
+
+    private SpanningForest(SiteGraph graph, boolean maximum, int[] from, int[] to, float[] weights) {
+        this.graphSignature = graph.signature();
+        this.vertexCount = graph.vertexCount();
+        this.maximum = maximum;
+        this.from = from;
+        this.to = to;
+        this.weights = weights;
+        this.treeCount = graph.liveVertexCount() - from.length;
+    }
+
+    /**
+     * Computes the spanning forest of a graph, with Kruskal's algorithm for
+     * small graphs and Borůvka's for large ones.
+     *
+     * @param graph   The graph.
+     * @param maximum True for the forest of largest total similarity, false
+     *                for the smallest.
+     * @return The forest.
+     */
+    public static SpanningForest compute(SiteGraph graph, boolean maximum) {
+        return compute(graph, maximum, graph.edgeCount() >= BORUVKA_THRESHOLD);
+    }
+
+    /**
+     * Computes the spanning forest of a graph with the given algorithm.
+     *
+     * @param graph   The graph.
+     * @param maximum True for a maximum forest, false for a minimum one.
+     * @param boruvka True for Borůvka's algorithm, false for Kruskal's.
+     * @return The forest.
+     */
+    static SpanningForest compute(SiteGraph graph, boolean maximum, boolean boruvka) {
+        EdgeList edges = new EdgeList(graph, maximum);
+        int[] chosen = boruvka ? boruvka(edges, graph.vertexCount()) : kruskal(edges, graph.vertexCount());
+
+        // Strongest first, whichever algorithm found them
+        long[] order = new long[chosen.length];
+        for (int i = 0; i < chosen.length; i++) {
+            order[i] = edges.ranks[chosen[i]];
+        }
+        Arrays.parallelSort(order);
+        int count = order.length;
+        int[] from = new int[count];
+        int[] to = new int[count];
+        float[] weights = new float[count];
+        for (int i = 0; i < count; i++) {
+            int e = edgeOf(order[count - 1 - i]);
+            from[i] = edges.from[e];
+            to[i] = edges.to[e];
+            weights[i] = edges.weights[e];
+        }
+        return new SpanningForest(graph, maximum, from, to, weights);
+    }
+
+    /**
+     * Kruskal's algorithm: takes the edges from best to worst and keeps each
+     * one that joins two trees.
+     */
+    private static int[] kruskal(EdgeList edges, int n) {
+        long[] order = edges.ranks.clone();
+        Arrays.parallelSort(order);
+        DisjointSets trees = new DisjointSets(n);
+        int[] chosen = new int[Math.max(n - 1, 0)];
+        int count = 0;
+        for (int i = order.length - 1; i >= 0 && count < chosen.length; i--) {
+            int e = edgeOf(order[i]);
+            if (trees.union(edges.from[e], edges.to[e])) {
+                chosen[count++] = e;
+            }
+        }
+        return Arrays.copyOf(chosen, count);
+    }
+
+    /**
+     * Borůvka's algorithm: joins every tree to the tree at the end of its best
+     * outgoing edge, all at once, until no edge leaves a tree.
+     */
+    private static int[] boruvka(EdgeList edges, int n) {
+        ConcurrentDisjointSets trees = new ConcurrentDisjointSets(n);
+        AtomicLongArray best = new AtomicLongArray(n); // Best outgoing rank, by tree root
+        int[] chosen = new int[Math.max(n - 1, 0)];
+        AtomicInteger count = new AtomicInteger();
+        int[] live = new int[edges.size()]; // Edges that may still leave a tree
+        for (int e = 0; e < live.length; e++) {
+            live[e] = e;
+        }
+        int liveCount = live.length;
+        while (liveCount > 0) {
+            for (int v = 0; v < n; v++) {
+                best.set(v, NONE);
+            }
+            int[] current = live;
+            IntStream.range(0, liveCount).parallel().forEach(i -> {
+                int e = current[i];
+                int a = trees.find(edges.from[e]);
+                int b = trees.find(edges.to[e]);
+                if (a != b) {
+                    long rank = edges.ranks[e];
+                    raise(best, a, rank);
+                    raise(best, b, rank);
+                }
+            });
+            // Two trees that pick each other pick the same edge, so there are no cycles
+            IntStream.range(0, n).parallel().forEach(root -> {
+                long rank = best.get(root);
+                if (rank != NONE) {
+                    int e = edgeOf(rank);
+                    if (trees.union(edges.from[e], edges.to[e])) {
+                        chosen[count.getAndIncrement()] = e;
+                    }
+                }
+            });
+
+            int kept = 0;
+            for (int i = 0; i < liveCount; i++) {
+                int e = live[i];
+                if (!trees.connected(edges.from[e], edges.to[e])) {
+                    live[kept++] = e;
+                }
+            }
+            liveCount = kept;
+        }
+        return Arrays.copyOf(chosen, count.get());
+    }
+
+    /**
+     * Raises a tree's best rank to the given one, if it is better.
+     */
+    private static void raise(AtomicLongArray best, int root, long rank) {
+        long current = best.get(root);
+        while (rank > current && !best.compareAndSet(root, current, rank)) {
+            current = best.get(root);
+        }
+    }
+
+    /**
+     * Returns the edge number packed into a rank.
+     */
+    private static int edgeOf(long rank) {
+        return (int) (0xffffffffL - (rank & 0xffffffffL));
+    }
+
+    /**
+     * Returns whether this forest was computed for the given graph.
+     *
+     * @param graph The graph.
+     * @return True if the graph is unchanged since the forest was computed.
+     */
+    public boolean matches(SiteGraph graph) {
+        return graph.vertexCount() == vertexCount && graph.signature() == graphSignature;
+    }
+
+    /**
+     * Returns whether this is a maximum spanning forest.
+     *
+     * @return True for a maximum forest, false for a minimum one.
+     */
+    public boolean isMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the number of edges in the forest.
+     *
+     * @return The edge count.
+     */
+    public int edgeCount() {
+        return from.length;
+    }
+
+    /**
+     * Returns the number of trees, one per component of the graph.
+     *
+     * @return The tree count.
+     */
+    public int treeCount() {
+        return treeCount;
+    }
+
+    /**
+     * Returns the sum of the similarity scores of the forest's edges.
+     *
+     * @return The total weight.
+     */
+    public double totalWeight() {
+        double total = 0.0;
+        for (float weight : weights) {
+            total += weight;
+        }
+        return total;
+    }
+
+    /**
+     * Creates a sparse GraphData with the given sites and the forest's edges,
+     * which a GraphManager or a plot can use like the full graph.
+     *
+     * @param graph The graph the forest was computed for.
+     * @param sites The sites to include, normally those of the full graph.
+     * @return The graph data.
+     */
+    public GraphData toGraphData(SiteGraph graph, List<SiteRecord> sites) {
+        GraphData graphData = new GraphData();
+        for (SiteRecord site : sites) {
+            graphData.addSite(site);
+        }
+        for (int i = 0; i < from.length; i++) {
+            graphData.addEdge(new SiteEdge(graph.urlOf(from[i]), graph.urlOf(to[i]), weights[i]));
+        }
+        return graphData;
+    }
+
+    /**
+     * Saves the forest to a file.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Loads a forest saved with {@link #save}.
+     *
+     * @param path The file to read.
+     * @return The forest.
+     * @throws IOException If the file cannot be read or does not hold a forest.
+     */
+    public static SpanningForest load(String path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+            return (SpanningForest) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a spanning forest: " + path, e);
+        }
+    }
+
+    /**
+     * The undirected edges of a graph in primitive arrays. The rank of an edge
+     * holds its weight, as an int that sorts like the float, in the high half,
+     * negated for a minimum forest, and the complement of its number in the
+     * low half, so a larger rank is always a better edge.
+     */
+    private static final class EdgeList {
+        private final int[] from;
+        private final int[] to;
+        private final float[] weights;
+        private final long[] ranks;
+
+        EdgeList(SiteGraph graph, boolean maximum) {
+            int n = graph.vertexCount();
+            int[] offsets = graph.offsets();
+            int[] ends = graph.ends();
+            int[] targets = graph.targets();
+            float[] graphWeights = graph.weights();
+            int[] start = new int[n + 1]; // First edge number of each vertex
+            for (int v = 0; v < n; v++) {
+                int count = 0;
+                for (int p = offsets[v]; p < ends[v]; p++) {
+                    if (targets[p] > v) { // Each edge from its lower end; self-loops never join trees
+                        count++;
+                    }
+                }
+                start[v + 1] = start[v] + count;
+            }
+            int m = start[n];
+            from = new int[m];
+            to = new int[m];
+            weights = new float[m];
+            ranks = new long[m];
+            IntStream.range(0, n).parallel().forEach(v -> {
+                int e = start[v];
+                for (int p = offsets[v]; p < ends[v]; p++) {
+                    if (targets[p] > v) {
+                        from[e] = v;
+                        to[e] = targets[p];
+                        weights[e] = graphWeights[p];
+                        int key = Float.floatToIntBits(graphWeights[p]);
+                        key ^= (key >> 31) & 0x7fffffff; // Negative floats sort backwards as ints
+                        if (!maximum) {
+                            key = ~key;
+                        }
+                        ranks[e] = ((long) key << 32) | (0xffffffffL - e);
+                        e++;
+                    }
+                }
+            });
+        }
+
+        int size() {
+            return from.length;
+        }
+    }
+}
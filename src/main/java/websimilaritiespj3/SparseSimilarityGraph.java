@@ -0,0 +1,318 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import websimilaritiespj3.InvertedIndex.Matches;
+import websimilaritiespj3.InvertedIndex.TopHeap;
+
+/**
+ * A sparse similarity graph over a corpus: each document keeps an edge to its
+ * k most similar documents, and/or to every document at least as similar as a
+ * threshold, instead of an edge to every other document.
+ * <p>
+ * Nearest neighbours are found in one all-pairs pass that never materializes
+ * the similarity matrix. The upper triangle is cut into square tiles computed
+ * in parallel, as in {@link SimilarityMatrix}, and each pair's similarity is
+ * offered to a bounded heap of size k for both of its documents. The
+ * k-nearest-neighbour relation is then symmetrized: i and j are joined if
+ * either is among the other's neighbours. With a threshold alone, the pairs
+ * are found through an {@link InvertedIndex} instead, which prunes pairs that
+ * cannot reach it.
+ * <p>
+ * A sparse graph can fall apart into several components. When connectivity is
+ * requested, the components are joined with the edges of the maximum spanning
+ * tree of the complete similarity graph that run between them, found with
+ * Prim's algorithm over the implicit dense graph in linear memory. This pass
+ * costs a similarity per pair of documents in different components, so it only
+ * runs if the sparse graph is disconnected.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SparseSimilarityGraph {
+    private static final int TILE_SIZE = 64;
+    private static final int CHUNK_SIZE = 1024; // Documents per parallel task in the spanning pass
+
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private float[] scores = new float[16];
+    private int edgeCount;
+    private int spanningEdgeCount; // Edges added to connect components
+
+    private SparseSimilarityGraph() {
+    }
+
+    /**
+     * Builds the sparse similarity graph of the given frequency tables.
+     *
+     * @param tables    The documents of the corpus.
+     * @param k         The number of nearest neighbours to keep per document, or
+     *                  0 to keep every neighbour at or above the threshold.
+     *                  Documents with no term in common are never neighbours.
+     * @param threshold The minimum similarity for an edge, or 0 for none.
+     * @param connected Whether to add spanning tree edges until the graph is
+     *                  connected.
+     * @return The graph, indexed in list order.
+     */
+    public static SparseSimilarityGraph build(List<FrequencyTable> tables, int k, double threshold,
+            boolean connected) {
+        int n = tables.size();
+        SparseTermVector[] vectors = new SparseTermVector[n];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = tables.get(i).freeze();
+        }
+        Matches[] rows;
+        if (k > 0) {
+            rows = nearestNeighbours(vectors, k, threshold);
+        } else {
+            InvertedIndex index = InvertedIndex.build(tables);
+            Matches[] found = new Matches[n];
+            IntStream.range(0, n).parallel().forEach(i -> found[i] = index.query(vectors[i], threshold, i + 1, -1));
+            rows = found;
+        }
+
+        SparseSimilarityGraph graph = new SparseSimilarityGraph();
+        for (int i = 0; i < n; i++) {
+            for (int m = 0; m < rows[i].size(); m++) {
+                int j = rows[i].docAt(m);
+                if (j < i && contains(rows[j], i)) {
+                    continue; // Added from row j already
+                }
+                graph.add(i, j, rows[i].scoreAt(m));
+            }
+        }
+        if (connected) {
+            graph.connect(vectors);
+        }
+        return graph;
+    }
+
+    /**
+     * Finds the k most similar documents of every document, with at least the
+     * threshold similarity, in one pass over the upper triangle of the
+     * similarity matrix.
+     */
+    private static Matches[] nearestNeighbours(SparseTermVector[] vectors, int k, double threshold) {
+        int n = vectors.length;
+        TopHeap[] heaps = new TopHeap[n];
+        for (int i = 0; i < n; i++) {
+            heaps[i] = new TopHeap(k);
+        }
+        int blocks = (n + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCount = blocks * (blocks + 1) / 2;
+        int[] tileRows = new int[tileCount];
+        int[] tileColumns = new int[tileCount];
+        int t = 0;
+        for (int row = 0; row < blocks; row++) {
+            for (int column = row; column < blocks; column++) {
+                tileRows[t] = row;
+                tileColumns[t] = column;
+                t++;
+            }
+        }
+        IntStream.range(0, tileCount).parallel().forEach(tile -> {
+            int rowStart = tileRows[tile] * TILE_SIZE;
+            int rowEnd = Math.min(rowStart + TILE_SIZE, n);
+            int columnStart = tileColumns[tile] * TILE_SIZE;
+            int columnEnd = Math.min(columnStart + TILE_SIZE, n);
+            double[] row = new double[TILE_SIZE];
+            for (int i = rowStart; i < rowEnd; i++) {
+                int first = Math.max(columnStart, i + 1); // Diagonal tiles only hold the upper part
+                if (first >= columnEnd) {
+                    continue;
+                }
+                SimilarityMetricCalculator.similarities(vectors[i], vectors, first, columnEnd, row, 0);
+                for (int j = first; j < columnEnd; j++) {
+                    double similarity = row[j - first];
+                    if (similarity >= threshold && similarity > 0.0) { // Also false for NaN, from an empty page
+                        offer(heaps[i], j, (float) similarity);
+                        offer(heaps[j], i, (float) similarity);
+                    }
+                }
+            }
+        });
+
+        Matches[] rows = new Matches[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = new Matches();
+            heaps[i].drainDescending(rows[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * Offers a neighbour to a document's heap, which other tiles may be
+     * filling at the same time. The heap is only read under its monitor: while
+     * an offer is under way its size and root disagree, so an unlocked check
+     * against its minimum could reject a neighbour that belongs in it.
+     */
+    private static void offer(TopHeap heap, int doc, float similarity) {
+        synchronized (heap) {
+            heap.offer(doc, similarity);
+        }
+    }
+
+    /**
+     * Returns whether a row of neighbours contains a document.
+     */
+    private static boolean contains(Matches row, int doc) {
+        for (int m = 0; m < row.size(); m++) {
+            if (row.docAt(m) == doc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends an edge.
+     */
+    private void add(int i, int j, float score) {
+        if (edgeCount == from.length) {
+            from = Arrays.copyOf(from, edgeCount * 2);
+            to = Arrays.copyOf(to, edgeCount * 2);
+            scores = Arrays.copyOf(scores, edgeCount * 2);
+        }
+        from[edgeCount] = i;
+        to[edgeCount] = j;
+        scores[edgeCount] = score;
+        edgeCount++;
+    }
+
+    /**
+     * Joins the components of the graph with the maximum spanning tree edges
+     * that run between them. Prim's algorithm adds a whole component at a
+     * time: its documents are already connected, so only the best edge into
+     * each component is needed.
+     */
+    private void connect(SparseTermVector[] vectors) {
+        int n = vectors.length;
+        DisjointSets components = new DisjointSets(n);
+        for (int e = 0; e < edgeCount; e++) {
+            components.union(from[e], to[e]);
+        }
+        if (components.setCount() <= 1) {
+            return;
+        }
+
+        // Members of each component as linked lists through next
+        int[] head = new int[n];
+        int[] next = new int[n];
+        Arrays.fill(head, -1);
+        for (int v = n - 1; v >= 0; v--) {
+            int root = components.find(v);
+            next[v] = head[root];
+            head[root] = v;
+        }
+        double[] best = new double[n]; // Best similarity to the tree so far
+        int[] bestFrom = new int[n];
+        Arrays.fill(best, -1.0);
+        boolean[] inTree = new boolean[n];
+        int[] outside = new int[n]; // Documents not yet in the tree
+        int outsideCount = n;
+        for (int v = 0; v < n; v++) {
+            outside[v] = v;
+        }
+
+        int joining = 0;
+        while (true) {
+            for (int u = head[components.find(joining)]; u >= 0; u = next[u]) {
+                inTree[u] = true;
+            }
+            int kept = 0;
+            for (int c = 0; c < outsideCount; c++) {
+                if (!inTree[outside[c]]) {
+                    outside[kept++] = outside[c];
+                }
+            }
+            outsideCount = kept;
+            if (outsideCount == 0) {
+                break;
+            }
+            for (int u = head[components.find(joining)]; u >= 0; u = next[u]) {
+                relax(vectors, u, outside, outsideCount, best, bestFrom);
+            }
+
+            int chosen = outside[0];
+            for (int c = 1; c < outsideCount; c++) {
+                if (best[outside[c]] > best[chosen]) {
+                    chosen = outside[c];
+                }
+            }
+            add(bestFrom[chosen], chosen, (float) best[chosen]);
+            spanningEdgeCount++;
+            joining = chosen;
+        }
+    }
+
+    /**
+     * Lowers the distance to the tree, i.e. raises the best similarity, of
+     * every document outside it with a document that has just joined.
+     */
+    private static void relax(SparseTermVector[] vectors, int u, int[] outside, int outsideCount, double[] best,
+            int[] bestFrom) {
+        SparseTermVector query = vectors[u];
+        if (query.getNorm() == 0.0) {
+            for (int c = 0; c < outsideCount; c++) {
+                int v = outside[c];
+                if (best[v] < 0.0) {
+                    best[v] = 0.0; // An empty page is similar to nothing
+                    bestFrom[v] = u;
+                }
+            }
+            return;
+        }
+        int chunks = (outsideCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            double[] weights = SimilarityMetricCalculator.scatter(query);
+            int end = Math.min(outsideCount, (chunk + 1) * CHUNK_SIZE);
+            for (int c = chunk * CHUNK_SIZE; c < end; c++) {
+                int v = outside[c];
+                double norm = vectors[v].getNorm();
+                double similarity = norm == 0.0 ? 0.0 : SimilarityMetricCalculator.gather(weights, vectors[v]) / norm;
+                if (similarity > best[v]) {
+                    best[v] = similarity;
+                    bestFrom[v] = u;
+                }
+            }
+            SimilarityMetricCalculator.clear(weights, query);
+        });
+    }
+
+    /**
+     * Returns the number of edges.
+     *
+     * @return The edge count.
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the number of edges that were added to connect the graph.
+     *
+     * @return The spanning edge count.
+     */
+    public int spanningEdgeCount() {
+        return spanningEdgeCount;
+    }
+
+    /**
+     * Creates a SiteEdge for every edge and adds them all to the graph in one
+     * step.
+     *
+     * @param urls      The URL of each document, in list order.
+     * @param graphData The graph to add the edges to.
+     */
+    public void addEdgesTo(List<String> urls, GraphData graphData) {
+        List<SiteEdge> edges = new ArrayList<>(edgeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            edges.add(new SiteEdge(urls.get(from[e]), urls.get(to[e]), scores[e]));
+        }
+        graphData.addEdges(edges);
+    }
+}
@@ -0,0 +1,232 @@
+package websimilaritiespj3;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable, compact form of a {@link FrequencyTable}. Words are replaced by
+ * their IDs in a {@link TermDictionary} and stored as a sorted {@code int[]}
+ * of term IDs with a parallel {@code int[]} of counts, so each distinct word
+ * costs 8 bytes.
+ * <p>
+ * The dictionary is serialized along with the vector; when several vectors are
+ * written to the same stream it is written only once. On deserialization the
+ * term IDs are translated into the shared dictionary.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class SparseTermVector implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private TermDictionary dictionary;
+    private int[] termIds; // Sorted ascending
+    private int[] counts;
+    private transient long sumOfSquares;
+
+    /**
+     * Constructs a vector from sorted term IDs and their counts.
+     *
+     * @param dictionary The dictionary the term IDs refer to.
+     * @param termIds    The term IDs in ascending order.
+     * @param counts     The count of each term.
+     */
+    SparseTermVector(TermDictionary dictionary, int[] termIds, int[] counts) {
+        this.dictionary = dictionary;
+        this.termIds = termIds;
+        this.counts = counts;
+        this.sumOfSquares = sumOfSquares(counts);
+    }
+
+    /**
+     * Creates the frozen form of a frequency table, assigning term IDs in the
+     * given dictionary as needed.
+     *
+     * @param table      The frequency table to freeze.
+     * @param dictionary The dictionary to take term IDs from.
+     * @return The frozen vector.
+     */
+    static SparseTermVector of(FrequencyTable table, TermDictionary dictionary) {
+        TermCountMap map = table.counts();
+        int n = map.size();
+        String[] words = new String[n];
+        int[] wordCounts = new int[n];
+        int i = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.keyAt(slot) != null) {
+                words[i] = map.keyAt(slot);
+                wordCounts[i] = map.countAt(slot);
+                i++;
+            }
+        }
+        int[] ids = new int[n];
+        dictionary.idsOf(words, n, ids);
+        return sorted(dictionary, ids, wordCounts);
+    }
+
+    /**
+     * Returns the number of distinct terms in the vector.
+     *
+     * @return The number of terms.
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    /**
+     * Returns the term ID at the given position.
+     *
+     * @param index The position, between 0 and {@link #size()}.
+     * @return The term ID.
+     */
+    public int termIdAt(int index) {
+        return termIds[index];
+    }
+
+    /**
+     * Returns the count at the given position.
+     *
+     * @param index The position, between 0 and {@link #size()}.
+     * @return The count of the term at that position.
+     */
+    public int countAt(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Gets the frequency of a term by ID.
+     *
+     * @param termId The term ID.
+     * @return The frequency of the term, or 0 if it does not occur.
+     */
+    public int getFrequency(int termId) {
+        int index = Arrays.binarySearch(termIds, termId);
+        return index < 0 ? 0 : counts[index];
+    }
+
+    /**
+     * Gets the frequency of a specific word, matching
+     * {@link FrequencyTable#getFrequency(String)}.
+     *
+     * @param word The word to look up.
+     * @return The frequency of the word.
+     */
+    public int getFrequency(String word) {
+        int termId = dictionary.lookup(word.toLowerCase());
+        return termId < 0 ? 0 : getFrequency(termId);
+    }
+
+    /**
+     * Returns the total count of all words in the vector.
+     *
+     * @return The total word count.
+     */
+    public int getTotalWordCount() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the Euclidean (L2) norm of the vector.
+     *
+     * @return The norm.
+     */
+    public double getNorm() {
+        return Math.sqrt(sumOfSquares);
+    }
+
+    /**
+     * Returns the dictionary the term IDs of this vector refer to.
+     *
+     * @return The term dictionary.
+     */
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Converts this vector back into a mutable frequency table.
+     *
+     * @return A new frequency table with the same words and counts.
+     */
+    public FrequencyTable toFrequencyTable() {
+        FrequencyTable table = new FrequencyTable(termIds.length);
+        for (int i = 0; i < termIds.length; i++) {
+            table.addWord(dictionary.termOf(termIds[i]), counts[i]);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the backing term ID array; callers must not modify it.
+     */
+    int[] termIds() {
+        return termIds;
+    }
+
+    /**
+     * Returns the backing count array; callers must not modify it.
+     */
+    int[] counts() {
+        return counts;
+    }
+
+    private static long sumOfSquares(int[] counts) {
+        long sum = 0;
+        for (int count : counts) {
+            sum += (long) count * count;
+        }
+        return sum;
+    }
+
+    /**
+     * Builds a vector from unsorted term IDs by sorting the (ID, count) pairs.
+     * Each pair is packed into a long with the ID in the high half, so one
+     * primitive sort orders both arrays together.
+     */
+    private static SparseTermVector sorted(TermDictionary dictionary, int[] ids, int[] wordCounts) {
+        int n = ids.length;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = ((long) ids[i] << 32) | (wordCounts[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int[] sortedIds = new int[n];
+        int[] sortedCounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedIds[i] = (int) (packed[i] >>> 32);
+            sortedCounts[i] = (int) packed[i];
+        }
+        return new SparseTermVector(dictionary, sortedIds, sortedCounts);
+    }
+
+    /**
+     * Deserialization of the vector. Term IDs are translated from the dictionary
+     * that was written with the vector into the shared dictionary.
+     *
+     * @param ois the ObjectInputStream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if the class of a serialized object cannot be
+     *                                found
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        int[] remap = dictionary.remapToShared();
+        if (remap != null) {
+            int[] ids = new int[termIds.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = remap[termIds[i]];
+            }
+            SparseTermVector shared = sorted(TermDictionary.getShared(), ids, counts);
+            dictionary = shared.dictionary;
+            termIds = shared.termIds;
+            counts = shared.counts;
+        }
+        sumOfSquares = sumOfSquares(counts);
+    }
+}
@@ -0,0 +1,330 @@
+package websimilaritiespj3;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An open-addressing hash table mapping words to primitive int counts.
+ * Keys and counts are held in parallel arrays and collisions are resolved with
+ * linear probing, so a lookup or an increment never allocates and no boxed
+ * Integer or node object is kept per entry.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+class TermCountMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private transient String[] keys; // null marks an empty slot
+    private transient int[] counts;
+    private transient int shift; // 32 - log2(capacity), used by slotFor
+    private transient int size;
+
+    /**
+     * Constructs an empty TermCountMap with the default initial capacity (16).
+     */
+    TermCountMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty TermCountMap able to hold the given number of keys
+     * without resizing.
+     *
+     * @param expectedSize the number of keys expected to be stored
+     */
+    TermCountMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the count mapped to the specified key, or 0 if the key is absent.
+     *
+     * @param key the key whose count is to be returned
+     * @return the count for the key, or 0 if there is none
+     */
+    int get(String key) {
+        int slot = indexOf(key);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Checks if a key exists in the table.
+     *
+     * @param key the key to check
+     * @return true if the key exists, false otherwise
+     */
+    boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Adds the given delta to the count of the specified key, inserting the key
+     * with a count of {@code delta} if it is absent.
+     *
+     * @param key   the key whose count is to be incremented
+     * @param delta the amount to add
+     * @return the new count for the key
+     */
+    int add(String key, int delta) {
+        int slot = slotFor(key.hashCode());
+        String k;
+        while ((k = keys[slot]) != null) {
+            if (k.equals(key)) {
+                return counts[slot] += delta;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        insertAt(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * Adds the given delta to the count of the word held in the first
+     * {@code length} chars of {@code chars}. A String is only created when the
+     * word is not yet in the table.
+     *
+     * @param chars  the buffer holding the word
+     * @param length the length of the word
+     * @param delta  the amount to add
+     * @return the new count for the word
+     */
+    int add(char[] chars, int length, int delta) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i]; // Same as String.hashCode
+        }
+        int slot = slotFor(hash);
+        String k;
+        while ((k = keys[slot]) != null) {
+            if (k.hashCode() == hash && matches(k, chars, length)) {
+                return counts[slot] += delta;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        insertAt(slot, new String(chars, 0, length), delta);
+        return delta;
+    }
+
+    /**
+     * Associates the specified count with the specified key, replacing any
+     * previous count.
+     *
+     * @param key   the key with which the count is to be associated
+     * @param count the count to store
+     */
+    void put(String key, int count) {
+        int slot = slotFor(key.hashCode());
+        String k;
+        while ((k = keys[slot]) != null) {
+            if (k.equals(key)) {
+                counts[slot] = count;
+                return;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        insertAt(slot, key, count);
+    }
+
+    /**
+     * Returns the number of keys in the table.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots in the backing arrays. Together with
+     * {@link #keyAt(int)} and {@link #countAt(int)} this allows iterating the
+     * entries without allocating.
+     *
+     * @return the slot count
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key stored in the given slot.
+     *
+     * @param slot the slot index, between 0 and {@link #capacity()}
+     * @return the key, or null if the slot is empty
+     */
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Returns the count stored in the given slot.
+     *
+     * @param slot the slot index, between 0 and {@link #capacity()}
+     * @return the count; meaningless if the slot is empty
+     */
+    int countAt(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Replaces the count stored in the given occupied slot.
+     *
+     * @param slot  the slot index of an occupied slot
+     * @param count the new count
+     */
+    void setCountAt(int slot, int count) {
+        counts[slot] = count;
+    }
+
+    /**
+     * Returns a Set containing the keys of this table.
+     *
+     * @return a set of the keys
+     */
+    Set<String> keySet() {
+        Set<String> keySet = new HashSet<>(size * 2);
+        for (String k : keys) {
+            if (k != null) {
+                keySet.add(k);
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Finds the slot holding the given key.
+     *
+     * @param key the key to look up
+     * @return the slot index, or -1 if the key is absent
+     */
+    private int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int slot = slotFor(key.hashCode());
+        String k;
+        while ((k = keys[slot]) != null) {
+            if (k.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a key with the first {@code length} chars of a buffer.
+     */
+    private static boolean matches(String key, char[] chars, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores a new key in an empty slot and grows the table if the load factor
+     * is exceeded.
+     */
+    private void insertAt(int slot, String key, int count) {
+        keys[slot] = key;
+        counts[slot] = count;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Spreads a hash code over the table with Fibonacci hashing, which keeps the
+     * high-order bits of String hash codes from being discarded.
+     */
+    private int slotFor(int hash) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Rehashes all entries into arrays of the given capacity.
+     */
+    private void resize(int newCapacity) {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            String k = oldKeys[i];
+            if (k != null) {
+                int slot = slotFor(k.hashCode());
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & (newCapacity - 1);
+                }
+                keys[slot] = k;
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        counts = new int[capacity];
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Returns the smallest power-of-two capacity that holds the given number of
+     * keys under the load factor.
+     */
+    private static int capacityFor(int expectedSize) {
+        int capacity = DEFAULT_INITIAL_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Serialization of the table as a flat sequence of key/count pairs.
+     *
+     * @param oos the ObjectOutputStream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
+        oos.writeInt(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                oos.writeObject(keys[i]);
+                oos.writeInt(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Deserialization of the table.
+     *
+     * @param ois the ObjectInputStream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if the class of a serialized object cannot be
+     *                                found
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        int entries = ois.readInt();
+        allocate(capacityFor(entries));
+        for (int i = 0; i < entries; i++) {
+            String key = (String) ois.readObject();
+            put(key, ois.readInt());
+        }
+    }
+}
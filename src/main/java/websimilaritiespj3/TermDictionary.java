@@ -0,0 +1,231 @@
+package websimilaritiespj3;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe dictionary that maps words to dense int term IDs, so that every
+ * document can refer to a word by its ID instead of holding its own copy of the
+ * String. IDs are assigned in insertion order starting at 0 and never change.
+ * A single dictionary is shared by the whole application through
+ * {@link #getShared()}.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class TermDictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final TermDictionary SHARED = new TermDictionary();
+
+    private transient TermCountMap ids; // Maps each term to its ID + 1, so 0 means absent
+    private transient String[] terms; // Terms indexed by ID
+    private transient int size;
+    private transient ReentrantReadWriteLock lock;
+    private transient int[] sharedRemap; // Cached translation of these IDs into SHARED
+
+    /**
+     * Constructs an empty TermDictionary.
+     */
+    public TermDictionary() {
+        ids = new TermCountMap();
+        terms = new String[16];
+        lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Returns the dictionary shared by all frequency tables in the application.
+     *
+     * @return The shared dictionary.
+     */
+    public static TermDictionary getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the ID of a term, assigning the next free ID if the term is new.
+     *
+     * @param term The term to look up.
+     * @return The ID of the term.
+     */
+    public int idOf(String term) {
+        int id = lookup(term);
+        if (id >= 0) {
+            return id;
+        }
+        lock.writeLock().lock();
+        try {
+            return internLocked(term);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resolves the IDs of several terms at once, assigning IDs to new terms. The
+     * lock is taken once for the whole batch rather than once per term.
+     *
+     * @param words The terms to look up.
+     * @param count The number of leading entries of {@code words} to resolve.
+     * @param out   Receives the ID of {@code words[i]} at index {@code i}.
+     */
+    void idsOf(String[] words, int count, int[] out) {
+        int missing = 0;
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                out[i] = ids.get(words[i]) - 1;
+                if (out[i] < 0) {
+                    missing++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (missing == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (out[i] < 0) {
+                    out[i] = internLocked(words[i]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ID of a term without assigning one.
+     *
+     * @param term The term to look up.
+     * @return The ID of the term, or -1 if the term is not in the dictionary.
+     */
+    public int lookup(String term) {
+        lock.readLock().lock();
+        try {
+            return ids.get(term) - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the term with the given ID.
+     *
+     * @param id The term ID.
+     * @return The term.
+     * @throws IndexOutOfBoundsException If no term has the given ID.
+     */
+    public String termOf(int id) {
+        lock.readLock().lock();
+        try {
+            if (id < 0 || id >= size) {
+                throw new IndexOutOfBoundsException("Unknown term ID: " + id);
+            }
+            return terms[id];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of terms in the dictionary, which is also the next ID to
+     * be assigned.
+     *
+     * @return The number of terms.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a table translating the IDs of this dictionary into IDs of the
+     * shared dictionary, interning any terms the shared dictionary lacks. Used
+     * when vectors written against another dictionary are read back.
+     *
+     * @return The translation table, or null if this is the shared dictionary.
+     */
+    int[] remapToShared() {
+        if (this == SHARED) {
+            return null;
+        }
+        synchronized (this) {
+            if (sharedRemap == null || sharedRemap.length < size) {
+                int[] remap = new int[size];
+                SHARED.idsOf(Arrays.copyOf(terms, size), size, remap);
+                sharedRemap = remap;
+            }
+            return sharedRemap;
+        }
+    }
+
+    /**
+     * Adds a term while the write lock is held, unless another thread added it
+     * first.
+     */
+    private int internLocked(String term) {
+        int id = ids.get(term) - 1;
+        if (id >= 0) {
+            return id;
+        }
+        id = size++;
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length * 2);
+        }
+        terms[id] = term;
+        ids.put(term, id + 1);
+        return id;
+    }
+
+    /**
+     * Serialization of the dictionary as its terms in ID order.
+     *
+     * @param oos the ObjectOutputStream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
+        lock.readLock().lock();
+        try {
+            oos.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                oos.writeObject(terms[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deserialization of the dictionary.
+     *
+     * @param ois the ObjectInputStream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if the class of a serialized object cannot be
+     *                                found
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        int count = ois.readInt();
+        ids = new TermCountMap(count);
+        terms = new String[Math.max(16, count)];
+        lock = new ReentrantReadWriteLock();
+        for (int i = 0; i < count; i++) {
+            terms[i] = (String) ois.readObject();
+            ids.put(terms[i], i + 1);
+        }
+        size = count;
+    }
+}
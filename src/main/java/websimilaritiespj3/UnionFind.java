@@ -1,86 +1,159 @@
 package websimilaritiespj3;
 
+import java.util.Arrays;
 import java.util.Set;
 
 /**
- * Implements a Union-Find data structure with path compression.
+ * Implements a Union-Find data structure over URLs.
  * Used for managing disjoint sets, particularly useful in graph algorithms.
+ * <p>
+ * The URLs are numbered by the vertex dictionary of a {@link SiteGraph}, so
+ * a URL is hashed once, by the graph, and the sets are kept by an int-indexed
+ * {@link DisjointSets} over the graph's vertex numbers, with union by size and
+ * path halving. Only the vertices added as members take part: a URL that is a
+ * vertex of the graph only as the end of an edge never joins a set. The
+ * number of sets and the size of any set are available in constant time.
  *
  * @author Joel Santos
  * @version 3.0
  * @since 11-10-2023
  */
 public class UnionFind {
-    private HT<String, String> parent;
+    private final SiteGraph graph; // Numbers the URLs
+    private final DisjointSets sets; // Over vertex numbers
+    private boolean[] members = new boolean[16]; // By vertex
+    private int memberCount;
 
     /**
-     * Constructs a UnionFind instance with each vertex as its own parent initially.
+     * Constructs a UnionFind instance with each vertex in a set of its own initially.
      *
      * @param vertices A set of vertices to initialize the UnionFind structure.
      */
     public UnionFind(Set<String> vertices) {
-        parent = new HT<>();
+        this(SiteGraph.build(new GraphData()));
         for (String vertex : vertices) {
-            parent.put(vertex, vertex); // Initially, each vertex is its own parent
+            graph.addVertex(vertex);
+            add(vertex);
         }
     }
 
     /**
-     * Finds the representative (root) of the set that contains the given element.
-     * Applies path compression to optimize future searches.
+     * Constructs an empty UnionFind over the vertices of a graph, which keep
+     * their vertex numbers as elements. Vertices join with {@link #add}.
      *
-     * @param element The element whose set representative is to be found.
-     * @return The root of the set containing the element.
+     * @param graph The graph whose vertex numbers are used.
      */
-    public String find(String element) {
-        if (!parent.contains(element)) {
-            return null;
+    UnionFind(SiteGraph graph) {
+        this.graph = graph;
+        this.sets = new DisjointSets(0);
+    }
+
+    /**
+     * Adds a vertex as a set of its own, if it is not present already. The
+     * vertex must be in the graph.
+     *
+     * @param vertex The vertex to add.
+     */
+    public void add(String vertex) {
+        int v = graph.vertexOf(vertex);
+        if (v >= 0) {
+            add(v);
+        }
+    }
+
+    /**
+     * Adds a vertex number as a set of its own, if it is not present already.
+     *
+     * @param v The vertex number in the graph.
+     */
+    void add(int v) {
+        while (sets.elementCount() <= v) {
+            sets.add();
         }
-        String root = element;
-        while (!root.equals(parent.get(root))) {
-            root = parent.get(root);
+        if (v >= members.length) {
+            members = Arrays.copyOf(members, Math.max(v + 1, members.length * 2));
         }
-        // Path compression for efficiency
-        while (!element.equals(root)) {
-            String next = parent.get(element);
-            parent.put(element, root);
-            element = next;
+        if (!members[v]) {
+            members[v] = true;
+            memberCount++;
         }
-        return root;
     }
 
     /**
-     * Merges the sets containing the two elements into a single set.
+     * Returns the vertex number of a member, or -1 if it is not present.
+     */
+    private int idOf(String element) {
+        int v = graph.vertexOf(element);
+        return v >= 0 && v < members.length && members[v] ? v : -1;
+    }
+
+    /**
+     * Finds the representative (root) of the set that contains the given element.
+     *
+     * @param element The element whose set representative is to be found.
+     * @return The root of the set containing the element, or null if the
+     *         element is not present.
+     */
+    public String find(String element) {
+        int id = idOf(element);
+        return id < 0 ? null : graph.urlOf(sets.find(id));
+    }
+
+    /**
+     * Merges the sets containing the two elements into a single set. Elements
+     * that are not present are ignored.
      *
      * @param a The first element to be merged.
      * @param b The second element to be merged.
      */
     public void union(String a, String b) {
-        String rootA = find(a);
-        String rootB = find(b);
-        if (rootA != null && rootB != null && !rootA.equals(rootB)) {
-            parent.put(rootA, rootB);
+        int idA = idOf(a);
+        int idB = idOf(b);
+        if (idA >= 0 && idB >= 0) {
+            sets.union(idA, idB);
         }
     }
 
+    /**
+     * Merges the sets containing two members, by vertex number.
+     *
+     * @param a The first vertex.
+     * @param b The second vertex.
+     */
+    void union(int a, int b) {
+        sets.union(a, b);
+    }
+
+    /**
+     * Checks whether two elements are in the same set.
+     *
+     * @param a The first element.
+     * @param b The second element.
+     * @return True if both are present and in the same set.
+     */
+    public boolean connected(String a, String b) {
+        int idA = idOf(a);
+        int idB = idOf(b);
+        return idA >= 0 && idB >= 0 && sets.connected(idA, idB);
+    }
+
+    /**
+     * Returns the size of the set that contains an element.
+     *
+     * @param element The element.
+     * @return The number of elements in its set, or 0 if it is not present.
+     */
+    public int componentSize(String element) {
+        int id = idOf(element);
+        return id < 0 ? 0 : sets.setSize(id);
+    }
+
     /**
      * Counts the number of disjoint sets present in the UnionFind structure.
      *
      * @return The number of disjoint sets.
      */
     public int countDisjointSets() {
-        HT<String, Boolean> roots = new HT<>();
-        for (String element : parent.keySet()) {
-            String root = find(element);
-            roots.putIfAbsent(root, true);
-        }
-        // Manually count the number of unique roots
-        int count = 0;
-        for (Boolean exists : roots.values()) {
-            if (exists) {
-                count++;
-            }
-        }
-        return count;
+        return sets.setCount() - (sets.elementCount() - memberCount); // Non-members stay alone
     }
 }
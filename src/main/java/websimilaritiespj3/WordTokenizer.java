@@ -0,0 +1,154 @@
+package websimilaritiespj3;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A streaming tokenizer that splits text into words and adds them to a
+ * {@link FrequencyTable}. The text is scanned once; each character is
+ * lowercased and filtered through a precomputed table into a reusable buffer,
+ * so no String is created for a word that is already in the frequency table.
+ * <p>
+ * Tokens are identical to splitting on {@code "\\s+"}, lowercasing each piece
+ * and removing every character outside {@code [a-zA-Z0-9]}. An instance keeps
+ * state between calls and must not be shared between threads.
+ *
+ * @author Joel Santos
+ * @version 3.0
+ * @since 11-10-2023
+ */
+public final class WordTokenizer {
+    private static final int CHUNK_SIZE = 8192;
+
+    // For every char, its lowercase form if that is an ASCII letter or digit,
+    // otherwise 0. Built with String.toLowerCase so that characters such as
+    // U+0130 and U+212A fold to 'i' and 'k' exactly as before.
+    private static final char[] FOLD = new char[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            String lower = String.valueOf((char) c).toLowerCase();
+            for (int i = 0; i < lower.length(); i++) {
+                char l = lower.charAt(i);
+                if ((l >= 'a' && l <= 'z') || (l >= '0' && l <= '9')) {
+                    FOLD[c] = l;
+                }
+            }
+        }
+    }
+
+    private char[] buffer = new char[32]; // The word being built
+    private int length;
+    private char[] chunk; // Read buffer for Reader input, allocated on first use
+
+    /**
+     * Adds every word in the given text to the frequency table.
+     *
+     * @param text  The text to tokenize.
+     * @param table The frequency table that receives the words.
+     * @return The number of words added.
+     */
+    public int tokenize(CharSequence text, FrequencyTable table) {
+        length = 0;
+        int tokens = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            tokens += accept(text.charAt(i), table);
+        }
+        return tokens + flush(table);
+    }
+
+    /**
+     * Adds every word read from the given reader to the frequency table. The
+     * reader is consumed but not closed.
+     *
+     * @param reader The source of the text.
+     * @param table  The frequency table that receives the words.
+     * @return The number of words added.
+     * @throws IOException If reading fails.
+     */
+    public int tokenize(Reader reader, FrequencyTable table) throws IOException {
+        if (chunk == null) {
+            chunk = new char[CHUNK_SIZE];
+        }
+        length = 0;
+        int tokens = 0;
+        int read;
+        while ((read = reader.read(chunk, 0, chunk.length)) != -1) {
+            for (int i = 0; i < read; i++) {
+                tokens += accept(chunk[i], table);
+            }
+        }
+        return tokens + flush(table);
+    }
+
+    /**
+     * Lowercases a word and strips every character outside {@code [a-z0-9]}.
+     * Returns the word itself when it is already in that form.
+     *
+     * @param word The word to normalize.
+     * @return The normalized word, possibly empty.
+     */
+    public static String normalize(String word) {
+        int n = word.length();
+        int i = 0;
+        while (i < n && FOLD[word.charAt(i)] == word.charAt(i)) {
+            i++;
+        }
+        if (i == n) {
+            return word;
+        }
+        char[] out = new char[n];
+        word.getChars(0, i, out, 0);
+        int length = i;
+        for (; i < n; i++) {
+            char folded = FOLD[word.charAt(i)];
+            if (folded != 0) {
+                out[length++] = folded;
+            }
+        }
+        return new String(out, 0, length);
+    }
+
+    /**
+     * Processes one character, emitting the current word if the character is
+     * a separator.
+     *
+     * @return 1 if a word was emitted, otherwise 0.
+     */
+    private int accept(char c, FrequencyTable table) {
+        if (isSeparator(c)) {
+            return flush(table);
+        }
+        char folded = FOLD[c];
+        if (folded != 0) {
+            if (length == buffer.length) {
+                char[] grown = new char[length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+            buffer[length++] = folded;
+        }
+        return 0;
+    }
+
+    /**
+     * Emits the buffered word, if any, and clears the buffer.
+     *
+     * @return 1 if a word was emitted, otherwise 0.
+     */
+    private int flush(FrequencyTable table) {
+        if (length == 0) {
+            return 0;
+        }
+        table.addWord(buffer, length, 1);
+        length = 0;
+        return 1;
+    }
+
+    /**
+     * Returns true for the characters matched by the regex {@code \s}.
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+}
@@ -0,0 +1,83 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Stress test for ConcurrentDisjointSets: many threads union the edges of a
+ * random graph at once, and the resulting sets must match the sequential
+ * UnionFind over the same edges.
+ */
+public class ConcurrentDisjointSetsTest
+{
+    private static final int THREADS = 8;
+
+    @Test
+    public void concurrentUnionsMatchSequentialUnionFind() throws Exception
+    {
+        Random random = new Random(18);
+        for (int round = 0; round < 40; round++) {
+            int n = 1 + random.nextInt(round < 20 ? 200 : 20000);
+            // Sparse graphs leave many components; dense ones collapse into a few
+            int m = random.nextInt(2 * n + 1);
+            int[] from = new int[m];
+            int[] to = new int[m];
+            for (int e = 0; e < m; e++) {
+                from[e] = random.nextInt(n);
+                to[e] = random.nextInt(n);
+            }
+
+            Set<String> vertices = new HashSet<>();
+            for (int v = 0; v < n; v++) {
+                vertices.add("v" + v);
+            }
+            UnionFind expected = new UnionFind(vertices);
+            for (int e = 0; e < m; e++) {
+                expected.union("v" + from[e], "v" + to[e]);
+            }
+
+            ConcurrentDisjointSets sets = new ConcurrentDisjointSets(n);
+            AtomicInteger merges = new AtomicInteger();
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                int first = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    // Interleaved slices, walked in opposite directions by odd and even threads
+                    int last = first + (m - 1 - first) / THREADS * THREADS; // Last index of the slice
+                    for (int i = first; i < m; i += THREADS) {
+                        int e = first % 2 == 0 ? i : last - (i - first);
+                        if (sets.union(from[e], to[e])) {
+                            merges.incrementAndGet();
+                        }
+                        sets.connected(from[e], to[(e + 1) % m]); // Reads racing with unions
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertEquals(expected.countDisjointSets(), sets.setCount());
+            assertEquals(n - merges.get(), sets.setCount());
+            for (int q = 0; q < 2000; q++) {
+                int a = random.nextInt(n);
+                int b = random.nextInt(n);
+                assertEquals(expected.connected("v" + a, "v" + b), sets.connected(a, b));
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package websimilaritiespj3;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Compares shortest-path queries of the indexed-heap engine, in each of its
+ * path modes, with the original URL-keyed Dijkstra on complete similarity
+ * graphs, the shape the application builds by default. Run from the project root after {@code mvn test-compile}
+ * with:
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes websimilaritiespj3.DijkstraBenchmark
+ * </pre>
+ */
+public class DijkstraBenchmark
+{
+    private static final int[] SIZES = { 250, 500, 1000 };
+    private static final int QUERIES = 50;
+
+    public static void main(String[] args)
+    {
+        for (int n : SIZES) {
+            Random random = new Random(n);
+            GraphData graphData = new GraphData();
+            for (int i = 0; i < n; i++) {
+                graphData.addSite(new SiteRecord("https://example.org/page" + i, null, 0));
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    graphData.addEdge(new SiteEdge("https://example.org/page" + i, "https://example.org/page" + j,
+                            random.nextDouble()));
+                }
+            }
+            String[] from = new String[QUERIES];
+            String[] to = new String[QUERIES];
+            for (int q = 0; q < QUERIES; q++) {
+                from[q] = "https://example.org/page" + random.nextInt(n);
+                to[q] = "https://example.org/page" + random.nextInt(n);
+            }
+
+            LegacyDijkstra legacy = new LegacyDijkstra(graphData);
+            double legacyMillis = 0;
+            double[] legacyWeights = new double[QUERIES];
+            for (int round = 0; round < 2; round++) { // The first round warms up
+                long start = System.nanoTime();
+                for (int q = 0; q < QUERIES; q++) {
+                    legacyWeights[q] = weight(legacy.findShortestPath(from[q], to[q]));
+                }
+                legacyMillis = (System.nanoTime() - start) / 1e6 / QUERIES;
+            }
+            System.out.printf("n=%d (%d edges): legacy %.3f ms/query%n", n, graphData.getEdges().size(),
+                    legacyMillis);
+
+            GraphManager manager = new GraphManager(graphData);
+            for (GraphManager.PathMode mode : GraphManager.PathMode.values()) {
+                manager.setPathMode(mode);
+                long start = System.nanoTime();
+                if (mode == GraphManager.PathMode.ALT) {
+                    manager.getLandmarks();
+                }
+                double setupMillis = (System.nanoTime() - start) / 1e6;
+                double engineMillis = 0;
+                double difference = 0;
+                for (int round = 0; round < 2; round++) {
+                    difference = 0;
+                    start = System.nanoTime();
+                    for (int q = 0; q < QUERIES; q++) {
+                        difference += Math.abs(legacyWeights[q] - weight(manager.findShortestPath(from[q], to[q])));
+                    }
+                    engineMillis = (System.nanoTime() - start) / 1e6 / QUERIES;
+                }
+                System.out.printf("  %-13s %.3f ms/query (%.1fx), setup %.1f ms, weight difference %.2e%n", mode,
+                        engineMillis, legacyMillis / engineMillis, setupMillis, difference);
+            }
+
+            // One "From" site and many "To" sites, as in the GUI, with and without the path tree cache
+            manager.setPathMode(GraphManager.PathMode.DIJKSTRA);
+            for (int cacheSize : new int[] { 0, GraphManager.DEFAULT_PATH_TREE_CACHE_SIZE }) {
+                manager.setPathTreeCacheSize(cacheSize);
+                double sameSourceMillis = 0;
+                double checksum = 0;
+                for (int round = 0; round < 2; round++) {
+                    manager.updateGraphStructure(); // Empties the cache
+                    long start = System.nanoTime();
+                    for (int q = 0; q < QUERIES; q++) {
+                        checksum += weight(manager.findShortestPath(from[0], to[q]));
+                    }
+                    sameSourceMillis = (System.nanoTime() - start) / 1e6 / QUERIES;
+                }
+                System.out.printf("  same source, tree cache %2d: %.3f ms/query (checksum %.4f)%n", cacheSize,
+                        sameSourceMillis, checksum);
+            }
+        }
+    }
+
+    /**
+     * Returns the total weight of a path.
+     */
+    private static double weight(List<SiteEdge> path)
+    {
+        double total = 0;
+        for (SiteEdge edge : path) {
+            total += (float) edge.getSimilarityScore();
+        }
+        return total;
+    }
+
+    /**
+     * The original GraphManager.findShortestPath, over URL-keyed hash tables.
+     */
+    private static final class LegacyDijkstra
+    {
+        private final HT<String, SiteRecord> siteMap = new HT<>();
+        private final HT<String, SerializableList<SiteEdge>> adjacencyList = new HT<>();
+
+        LegacyDijkstra(GraphData graphData)
+        {
+            for (SiteRecord site : graphData.getSites()) {
+                siteMap.put(site.getUrl(), site);
+            }
+            for (SiteEdge edge : graphData.getEdges()) {
+                adjacencyList.putIfAbsent(edge.getSite1(), new SerializableList<>());
+                adjacencyList.putIfAbsent(edge.getSite2(), new SerializableList<>());
+                adjacencyList.get(edge.getSite1()).add(edge);
+                adjacencyList.get(edge.getSite2()).add(edge);
+            }
+        }
+
+        List<SiteEdge> findShortestPath(String fromSite, String toSite)
+        {
+            HT<String, Double> distances = new HT<>();
+            HT<String, SiteEdge> edgeTo = new HT<>();
+            PriorityQueue<SiteRecord> pq = new PriorityQueue<>(
+                    (a, b) -> Double.compare(distances.getOrDefault(a.getUrl(), Double.MAX_VALUE),
+                            distances.getOrDefault(b.getUrl(), Double.MAX_VALUE)));
+            for (String url : siteMap.keySet()) {
+                distances.put(url, Double.MAX_VALUE);
+            }
+            distances.put(fromSite, 0.0);
+            pq.add(siteMap.get(fromSite));
+            while (!pq.isEmpty()) {
+                SiteRecord current = pq.poll();
+                SerializableList<SiteEdge> edges = adjacencyList.getOrDefault(current.getUrl(),
+                        new SerializableList<>());
+                for (SiteEdge edge : edges) {
+                    String neighborUrl = edge.getOtherSite(current.getUrl());
+                    double newDist = distances.get(current.getUrl()) + edge.getSimilarityScore();
+                    if (newDist < distances.getOrDefault(neighborUrl, Double.MAX_VALUE)) {
+                        distances.put(neighborUrl, newDist);
+                        edgeTo.put(neighborUrl, edge);
+                        pq.add(siteMap.get(neighborUrl));
+                    }
+                }
+            }
+            SerializableList<SiteEdge> path = new SerializableList<>();
+            for (String at = toSite; edgeTo.contains(at); at = edgeTo.get(at).getOtherSite(at)) {
+                path.add(edgeTo.get(at));
+            }
+            Collections.reverse(path);
+            return path;
+        }
+    }
+}
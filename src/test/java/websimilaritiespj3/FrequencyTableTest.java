@@ -0,0 +1,61 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests that a frozen FrequencyTable, which keeps only its vector, reads,
+ * changes and serializes as it did before it was frozen.
+ */
+public class FrequencyTableTest
+{
+    @Test
+    public void frozenTableReadsAndChangesLikeTheMap() throws Exception
+    {
+        FrequencyTable table = new FrequencyTable();
+        table.addWord("apple", 3);
+        table.addWord("banana", 1);
+        table.addWord("cherry", 2);
+        SparseTermVector vector = table.freeze();
+        assertSame(vector, table.freeze());
+
+        assertEquals(3, table.size());
+        assertEquals(3, table.getFrequency("Apple"));
+        assertEquals(0, table.getFrequency("date"));
+        assertEquals(new HashSet<>(Arrays.asList("apple", "banana", "cherry")), table.keySet());
+        assertEquals(6, table.getTotalWordCount());
+        assertEquals(14, table.getSumOfSquares());
+
+        FrequencyTable copy = serialized(table);
+        assertEquals(2, copy.getFrequency("cherry"));
+        assertEquals(14, copy.getSumOfSquares());
+
+        table.addWord("banana", 4);
+        assertEquals(5, table.getFrequency("banana"));
+        assertEquals(3, table.getFrequency("apple"));
+        assertEquals(38, table.getSumOfSquares());
+        assertNotSame(vector, table.freeze());
+        assertEquals(5, table.freeze().getFrequency("banana"));
+    }
+
+    private static FrequencyTable serialized(FrequencyTable table) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(table);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (FrequencyTable) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that a graph updated in place with addSite, addEdges and removeSite
+ * is identical to one built from scratch from the same graph data.
+ */
+public class GraphManagerTest
+{
+    private static Map<String, List<String>> adjacency(SiteGraph graph)
+    {
+        Map<String, List<String>> adjacency = new HashMap<>();
+        int[] offsets = graph.offsets();
+        int[] ends = graph.ends();
+        int[] targets = graph.targets();
+        float[] weights = graph.weights();
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            if (graph.urlOf(v) == null) {
+                continue;
+            }
+            List<String> edges = new ArrayList<>();
+            for (int p = offsets[v]; p < ends[v]; p++) {
+                edges.add(graph.urlOf(targets[p]) + " " + weights[p]);
+            }
+            Collections.sort(edges);
+            adjacency.put(graph.urlOf(v), edges);
+        }
+        return adjacency;
+    }
+
+    private static double weight(List<SiteEdge> path)
+    {
+        double total = 0;
+        for (SiteEdge edge : path) {
+            total += (float) edge.getSimilarityScore();
+        }
+        return total;
+    }
+
+    private static void assertLeadsFrom(String from, String to, List<SiteEdge> path)
+    {
+        String at = from;
+        for (SiteEdge edge : path) {
+            assertEquals(at, edge.getSite1()); // Every edge points along the path
+            at = edge.getSite2();
+        }
+        if (!path.isEmpty()) {
+            assertEquals(to, at);
+        }
+    }
+
+    private static void assertSameGraph(GraphManager incremental, GraphData graphData, Random random)
+    {
+        GraphManager fresh = new GraphManager(graphData);
+        fresh.updateGraphStructure();
+        SiteGraph expected = fresh.getSiteGraph();
+        SiteGraph actual = incremental.getSiteGraph();
+        assertEquals(expected.liveVertexCount(), actual.liveVertexCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        assertEquals(adjacency(expected), adjacency(actual));
+        assertEquals(fresh.getNumberOfDisjointSets(), incremental.getNumberOfDisjointSets());
+
+        List<SiteRecord> sites = graphData.getSites();
+        String from = null;
+        for (int q = 0; q < 20 && !sites.isEmpty(); q++) {
+            if (q % 5 == 0) { // Repeated sources are answered from cached path trees
+                from = sites.get(random.nextInt(sites.size())).getUrl();
+            }
+            String to = sites.get(random.nextInt(sites.size())).getUrl();
+            List<SiteEdge> path = incremental.findShortestPath(from, to);
+            assertEquals(weight(fresh.findShortestPath(from, to)), weight(path), 1e-9);
+            assertLeadsFrom(from, to, path);
+            path = incremental.findShortestPath(to, from); // From a tree of the destination
+            assertEquals(weight(fresh.findShortestPath(to, from)), weight(path), 1e-9);
+            assertLeadsFrom(to, from, path);
+        }
+    }
+
+    @Test
+    public void incrementalUpdatesMatchFreshBuild()
+    {
+        Random random = new Random(2023);
+        for (int round = 0; round < 20; round++) {
+            GraphData graphData = new GraphData();
+            GraphManager manager = new GraphManager(graphData);
+            manager.setPathMode(GraphManager.PathMode.values()[round % GraphManager.PathMode.values().length]);
+            List<String> live = new ArrayList<>();
+            int nextSite = 0;
+            for (int step = 0; step < 300; step++) {
+                int action = random.nextInt(10);
+                if (action < 4 || live.size() < 2) {
+                    // A new site with edges to some of the existing ones, as addWebsiteURL does
+                    String url = "https://example.org/page" + nextSite++;
+                    List<SiteEdge> edges = new ArrayList<>();
+                    for (String other : live) {
+                        if (random.nextInt(4) == 0) {
+                            edges.add(new SiteEdge(url, other, random.nextDouble()));
+                        }
+                    }
+                    if (random.nextInt(10) == 0) {
+                        edges.add(new SiteEdge(url, url, 1.0)); // Self-loop
+                    }
+                    manager.addSite(new SiteRecord(url, null, 0));
+                    manager.addEdges(edges);
+                    live.add(url);
+                } else if (action < 8) {
+                    // A batch of edges between existing sites, possibly repeating one
+                    List<SiteEdge> edges = new ArrayList<>();
+                    for (int i = random.nextInt(5); i >= 0; i--) {
+                        edges.add(new SiteEdge(live.get(random.nextInt(live.size())),
+                                live.get(random.nextInt(live.size())), random.nextDouble()));
+                    }
+                    manager.addEdges(edges);
+                } else {
+                    String url = live.remove(random.nextInt(live.size()));
+                    assertEquals(true, manager.removeSite(url));
+                    assertEquals(false, manager.removeSite(url));
+                }
+                if (step % 25 == 0) {
+                    assertSameGraph(manager, graphData, random);
+                }
+            }
+            assertSameGraph(manager, graphData, random);
+        }
+    }
+}
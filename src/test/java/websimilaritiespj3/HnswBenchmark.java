@@ -0,0 +1,134 @@
+package websimilaritiespj3;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Latency and recall report for the HNSW index on a synthetic corpus of
+ * topic-based pages. Recall@10 is measured against the exact batch scan for a
+ * sample of queries, for several efSearch values; a result counts as a hit if
+ * it is at least as similar as the exact 10th neighbour, so ties do not count
+ * as misses. The index is saved and loaded once. Run from the project root after {@code mvn test-compile} with:
+ * 
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes websimilaritiespj3.HnswBenchmark [documents]
+ * </pre>
+ */
+public class HnswBenchmark
+{
+    private static final int TOP_N = 10;
+    private static final int QUERIES = 200;
+    private static final int TOPICS = 2000;
+    private static final int TOPICS_PER_SUBJECT = 50;
+    private static final int WORDS_PER_TOPIC = 200;
+    private static final int WORDS_PER_SUBJECT = 1000;
+    private static final int WORDS_PER_PAGE = 150;
+    private static final int[] EF_SEARCH = { 16, 32, 64, 128, 256 };
+
+    public static void main(String[] args) throws Exception
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(11);
+        List<FrequencyTable> tables = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            tables.add(page(random));
+        }
+        SparseTermVector[] vectors = new SparseTermVector[n];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = tables.get(i).freeze();
+        }
+
+        HnswIndex index = new HnswIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            index.add("page" + i, tables.get(i));
+            if ((i + 1) % 10_000 == 0) {
+                System.out.printf("  inserted %d pages in %.1f s%n", i + 1, (System.nanoTime() - start) / 1e9);
+            }
+        }
+        System.out.printf("%d pages; built in %.1f s (%.0f us/insert)%n", n, (System.nanoTime() - start) / 1e9,
+                (System.nanoTime() - start) / 1e3 / n);
+
+        int[] queries = new int[QUERIES];
+        float[] tenth = new float[QUERIES]; // Exact similarity of the 10th neighbour
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = random.nextInt(n);
+            double[] similarities = SimilarityMetricCalculator.similarities(vectors[queries[q]], vectors);
+            InvertedIndex.TopHeap heap = new InvertedIndex.TopHeap(TOP_N);
+            for (int i = 0; i < n; i++) {
+                if (i != queries[q]) {
+                    heap.offer(i, (float) similarities[i]);
+                }
+            }
+            tenth[q] = heap.minScore();
+        }
+        System.out.printf("exact scan: %.2f ms/query%n", (System.nanoTime() - start) / 1e6 / QUERIES);
+
+        report(index, vectors, queries, tenth);
+
+        File file = File.createTempFile("hnsw", ".ser");
+        file.deleteOnExit();
+        start = System.nanoTime();
+        index.save(file.getPath());
+        long saved = System.nanoTime();
+        HnswIndex loaded = HnswIndex.load(file.getPath());
+        System.out.printf("saved %.1f MB in %.1f s, loaded in %.1f s%n", file.length() / 1e6,
+                (saved - start) / 1e9, (System.nanoTime() - saved) / 1e9);
+        report(loaded, vectors, queries, tenth);
+    }
+
+    /**
+     * Prints recall@10 and latency for each efSearch value.
+     */
+    private static void report(HnswIndex index, SparseTermVector[] vectors, int[] queries, float[] tenth)
+    {
+        for (int ef : EF_SEARCH) {
+            InvertedIndex.Matches[] results = new InvertedIndex.Matches[queries.length];
+            long start = System.nanoTime();
+            for (int q = 0; q < queries.length; q++) {
+                results[q] = index.search(vectors[queries[q]], TOP_N, ef, queries[q]);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / queries.length;
+            long found = 0;
+            for (int q = 0; q < queries.length; q++) {
+                for (int i = 0; i < results[q].size(); i++) {
+                    double similarity = SimilarityMetricCalculator.calculateCosineSimilarity(vectors[queries[q]],
+                            vectors[results[q].docAt(i)]);
+                    if (similarity >= tenth[q] - 1e-6) {
+                        found++;
+                    }
+                }
+            }
+            System.out.printf("efSearch=%d: recall@%d %.3f, %.3f ms/query%n", ef, TOP_N,
+                    (double) found / ((long) queries.length * TOP_N), millis);
+        }
+    }
+
+    /**
+     * Generates a page drawing half of its words from one topic's vocabulary, a
+     * quarter from the vocabulary of the broader subject the topic belongs to
+     * and the rest from a skewed common vocabulary. Without the subject level,
+     * pages of different topics would be equally unrelated, which real pages
+     * are not.
+     */
+    private static FrequencyTable page(Random random)
+    {
+        FrequencyTable table = new FrequencyTable();
+        int topic = random.nextInt(TOPICS);
+        int subject = topic / TOPICS_PER_SUBJECT;
+        for (int w = 0; w < WORDS_PER_PAGE; w++) {
+            int kind = random.nextInt(4);
+            if (kind == 0) {
+                table.addWord("common" + (int) (Math.pow(random.nextDouble(), 3) * 5000), 1);
+            } else if (kind == 1) {
+                table.addWord("s" + subject + "w" + random.nextInt(WORDS_PER_SUBJECT), 1);
+            } else {
+                table.addWord("t" + topic + "w" + random.nextInt(WORDS_PER_TOPIC), 1);
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,102 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Timing and quality report for KMeansClustering on a synthetic corpus of
+ * pages drawn from a few broad subjects, with and without Elkan's bounds.
+ * Both runs start from the same k-means++ seeding, so they should end with the
+ * same clusters; the report shows how many similarity computations the bounds
+ * avoided. Purity is the fraction of pages whose cluster's most common
+ * subject is their own. Run from the project root after
+ * {@code mvn test-compile} with:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes websimilaritiespj3.KMeansBenchmark [documents] [k]
+ * </pre>
+ */
+public class KMeansBenchmark
+{
+    private static final int SUBJECTS = 20;
+    private static final int WORDS_PER_SUBJECT = 2000;
+    private static final int WORDS_PER_PAGE = 150;
+
+    public static void main(String[] args) throws Exception
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : SUBJECTS;
+        Random random = new Random(21);
+        List<FrequencyTable> tables = new ArrayList<>(n);
+        int[] subjects = new int[n];
+        for (int i = 0; i < n; i++) {
+            subjects[i] = random.nextInt(SUBJECTS);
+            tables.add(page(subjects[i], random));
+        }
+
+        int[] previous = null;
+        for (boolean accelerated : new boolean[] { false, true }) {
+            long start = System.nanoTime();
+            KMeansClustering clustering = new KMeansClustering(tables, k, 21);
+            clustering.setAccelerated(accelerated);
+            clustering.setVerbose(false);
+            int[] clusters = clustering.cluster().clone();
+            long computed = clustering.getDistanceComputations();
+            long avoided = clustering.getDistanceComputationsAvoided();
+            System.out.printf("%s: %d pages, k = %d: %d iterations in %.1f s, %d similarities computed, "
+                    + "%d avoided (%.1f%%), inertia %.1f, purity %.3f%n", accelerated ? "Elkan" : "Lloyd", n, k,
+                    clustering.getIterations(), (System.nanoTime() - start) / 1e9, computed, avoided,
+                    100.0 * avoided / (computed + avoided), clustering.getInertia(),
+                    purity(clusters, subjects, clustering.getK()));
+            if (previous != null) {
+                int same = 0;
+                for (int i = 0; i < n; i++) {
+                    if (clusters[i] == previous[i]) {
+                        same++;
+                    }
+                }
+                System.out.printf("same cluster in both runs: %d of %d pages%n", same, n);
+            }
+            previous = clusters;
+        }
+    }
+
+    /**
+     * Returns the fraction of pages whose cluster's most common subject is
+     * their own.
+     */
+    private static double purity(int[] clusters, int[] subjects, int k)
+    {
+        int[][] counts = new int[k][SUBJECTS];
+        for (int i = 0; i < clusters.length; i++) {
+            counts[clusters[i]][subjects[i]]++;
+        }
+        long majority = 0;
+        for (int[] row : counts) {
+            int best = 0;
+            for (int count : row) {
+                best = Math.max(best, count);
+            }
+            majority += best;
+        }
+        return (double) majority / clusters.length;
+    }
+
+    /**
+     * Generates a page drawing two thirds of its words from its subject's
+     * vocabulary and the rest from a skewed common vocabulary.
+     */
+    private static FrequencyTable page(int subject, Random random)
+    {
+        FrequencyTable table = new FrequencyTable();
+        for (int w = 0; w < WORDS_PER_PAGE; w++) {
+            if (random.nextInt(3) == 0) {
+                table.addWord("common" + (int) (Math.pow(random.nextDouble(), 3) * 5000), 1);
+            } else {
+                table.addWord("s" + subject + "w" + (int) (Math.pow(random.nextDouble(), 2) * WORDS_PER_SUBJECT), 1);
+            }
+        }
+        return table;
+    }
+}
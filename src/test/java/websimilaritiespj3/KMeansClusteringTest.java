@@ -0,0 +1,145 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that Elkan's bounds only skip work: the accelerated clustering must
+ * assign every document as Lloyd's algorithm does from the same start.
+ */
+public class KMeansClusteringTest
+{
+    private static final int K = 8;
+
+    @Test
+    public void boundedAssignmentMatchesLloydOnOverlappingClusters()
+    {
+        for (long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            List<FrequencyTable> tables = new ArrayList<>();
+            for (int i = 0; i < 600; i++) {
+                tables.add(page(random.nextInt(6), random));
+            }
+
+            KMeansClustering lloyd = new KMeansClustering(tables, K, seed);
+            lloyd.setVerbose(false);
+            lloyd.setAccelerated(false);
+            KMeansClustering elkan = new KMeansClustering(tables, K, seed);
+            elkan.setVerbose(false);
+
+            assertArrayEquals(lloyd.cluster(), elkan.cluster());
+        }
+    }
+
+    /**
+     * Lays out documents in the plane of two words so that, in the second
+     * iteration, a document first finds a centroid nearer than its own and
+     * then one nearer still, which lies close to its own centroid's
+     * neighbour. The second centroid may only be skipped by its distance to
+     * the nearest centroid found so far, not to the document's old one.
+     */
+    @Test
+    public void boundedAssignmentMatchesLloydAfterEveryIteration()
+    {
+        List<FrequencyTable> tables = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tables.add(at(0.0)); // Cluster 0
+        }
+        tables.add(at(0.45)); // The document, first nearest to cluster 0
+        for (int i = 0; i < 20; i++) {
+            tables.add(at(0.72)); // Cluster 1
+        }
+        for (int i = 0; i < 20; i++) {
+            tables.add(at(0.6)); // Cluster 2
+        }
+        for (int c = 3; c < K; c++) {
+            for (int i = 0; i < 5; i++) {
+                tables.add(word("other" + c)); // Far from the plane
+            }
+        }
+        tables.add(word("lift1"));
+        tables.add(word("lift2"));
+        SparseTermVector[] vectors = KMeansClustering.freeze(tables);
+        int first = vectors[0].termIdAt(0);
+        int second = vectors[20].termIdAt(1);
+        int lift1 = vectors[vectors.length - 2].termIdAt(0);
+        int lift2 = vectors[vectors.length - 1].termIdAt(0);
+
+        // Clusters 1 and 2 start lifted out of the plane, farther from the
+        // document than cluster 0, and drop onto their documents at once
+        float[] initial = new float[(KMeansClustering.maxTerm(vectors) + 1) * K];
+        initial[first * K] = 1.0f;
+        initial[first * K + 1] = (float) Math.cos(0.72);
+        initial[second * K + 1] = (float) Math.sin(0.72);
+        initial[lift1 * K + 1] = 0.578f;
+        initial[first * K + 2] = (float) Math.cos(0.6);
+        initial[second * K + 2] = (float) Math.sin(0.6);
+        initial[lift2 * K + 2] = 0.568f;
+        for (int c = 3; c < K; c++) {
+            initial[vectors[61 + 5 * (c - 3)].termIdAt(0) * K + c] = 1.0f;
+        }
+
+        for (int iterations = 1; iterations <= 3; iterations++) {
+            KMeansClustering lloyd = new KMeansClustering(vectors, K, 0, initial);
+            lloyd.setVerbose(false);
+            lloyd.setAccelerated(false);
+            lloyd.setMaxIterations(iterations);
+            KMeansClustering elkan = new KMeansClustering(vectors, K, 0, initial);
+            elkan.setVerbose(false);
+            elkan.setMaxIterations(iterations);
+
+            int[] expected = lloyd.cluster();
+            assertEquals(iterations == 1 ? 0 : 2, expected[20]);
+            assertArrayEquals(expected, elkan.cluster());
+        }
+    }
+
+    /**
+     * Generates a page drawing half its words from its subject's vocabulary
+     * and half from a vocabulary every subject shares, so that the clusters
+     * overlap.
+     */
+    private static FrequencyTable page(int subject, Random random)
+    {
+        FrequencyTable table = new FrequencyTable();
+        for (int w = 0; w < 40; w++) {
+            if (random.nextBoolean()) {
+                table.addWord("common" + random.nextInt(100), 1);
+            } else {
+                table.addWord("s" + subject + "w" + random.nextInt(100), 1);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns a page at the given angle in the plane of two words.
+     */
+    private static FrequencyTable at(double angle)
+    {
+        FrequencyTable table = word("first", (int) Math.round(1000 * Math.cos(angle)));
+        int second = (int) Math.round(1000 * Math.sin(angle));
+        if (second > 0) {
+            table.addWord("second", second);
+        }
+        return table;
+    }
+
+    private static FrequencyTable word(String word)
+    {
+        return word(word, 1);
+    }
+
+    private static FrequencyTable word(String word, int count)
+    {
+        FrequencyTable table = new FrequencyTable();
+        table.addWord(word, count);
+        return table;
+    }
+}
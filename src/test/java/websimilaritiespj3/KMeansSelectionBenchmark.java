@@ -0,0 +1,67 @@
+package websimilaritiespj3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Timing report for KMeansModelSelection on the synthetic corpus of
+ * {@link KMeansBenchmark}: every k in a range is run with several seeds at
+ * once, and the report shows the k the silhouette picks next to the number of
+ * subjects the pages were drawn from. Run from the project root after
+ * {@code mvn test-compile} with:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes websimilaritiespj3.KMeansSelectionBenchmark [documents] [minK] [maxK] [restarts]
+ * </pre>
+ */
+public class KMeansSelectionBenchmark
+{
+    private static final int SUBJECTS = 20;
+    private static final int WORDS_PER_SUBJECT = 2000;
+    private static final int WORDS_PER_PAGE = 150;
+
+    public static void main(String[] args) throws Exception
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int minK = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxK = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int restarts = args.length > 3 ? Integer.parseInt(args[3]) : KMeansModelSelection.DEFAULT_RESTARTS;
+        Random random = new Random(25);
+        List<String> urls = new ArrayList<>(n);
+        List<FrequencyTable> tables = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            urls.add("https://example.com/page" + i);
+            tables.add(page(random.nextInt(SUBJECTS), random));
+        }
+
+        long start = System.nanoTime();
+        KMeansModelSelection selection = new KMeansModelSelection(urls, tables);
+        selection.setVerbose(false);
+        List<KMeansModelSelection.Run> runs = selection.select(minK, maxK, restarts, 25);
+        long elapsed = System.nanoTime() - start;
+        for (KMeansModelSelection.Run run : runs) {
+            System.out.println(run);
+        }
+        System.out.printf("%d pages from %d subjects: %d runs in %.1f s on %d processors, selected %s%n", n,
+                SUBJECTS, runs.size(), elapsed / 1e9, Runtime.getRuntime().availableProcessors(),
+                selection.getBestRun());
+    }
+
+    /**
+     * Generates a page drawing two thirds of its words from its subject's
+     * vocabulary and the rest from a skewed common vocabulary.
+     */
+    private static FrequencyTable page(int subject, Random random)
+    {
+        FrequencyTable table = new FrequencyTable();
+        for (int w = 0; w < WORDS_PER_PAGE; w++) {
+            if (random.nextInt(3) == 0) {
+                table.addWord("common" + (int) (Math.pow(random.nextDouble(), 3) * 5000), 1);
+            } else {
+                table.addWord("s" + subject + "w" + (int) (Math.pow(random.nextDouble(), 2) * WORDS_PER_SUBJECT), 1);
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,136 @@
+package websimilaritiespj3;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Recall-versus-speed report for the MinHash LSH index against exact cosine
+ * top-N search. The corpus is data/frequencyTableMap.ser plus perturbed copies
+ * of each page, so that every page has a few near-duplicates; recall is
+ * reported both against the exact top-N and for those planted copies alone. Run
+ * from the project root after {@code mvn test-compile} with:
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes websimilaritiespj3.LshBenchmark
+ * </pre>
+ */
+public class LshBenchmark
+{
+    private static final int TOP_N = 10;
+    private static final int COPIES = 4;
+    private static final int[][] CONFIGURATIONS = { { 16, 8 }, { 32, 4 }, { 42, 3 }, { 64, 2 } };
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception
+    {
+        HT<String, FrequencyTable> corpus;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream("data/frequencyTableMap.ser"))) {
+            corpus = (HT<String, FrequencyTable>) in.readObject();
+        }
+        List<FrequencyTable> tables = new ArrayList<>();
+        Random random = new Random(7);
+        for (HT.Node<String, FrequencyTable> entry : corpus.entrySet()) {
+            tables.add(entry.value);
+            for (int copy = 0; copy < COPIES; copy++) {
+                tables.add(perturb(entry.value, 0.1 + 0.15 * copy, random));
+            }
+        }
+        int n = tables.size();
+        SparseTermVector[] vectors = new SparseTermVector[n];
+        for (int i = 0; i < n; i++) {
+            vectors[i] = tables.get(i).freeze();
+            tables.get(i).getMinHashSignature();
+        }
+
+        long start = System.nanoTime();
+        List<Set<Integer>> exact = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double[] similarities = SimilarityMetricCalculator.similarities(vectors[i], vectors);
+            similarities[i] = Double.NEGATIVE_INFINITY;
+            exact.add(top(similarities, null));
+        }
+        double exactMicros = (System.nanoTime() - start) / 1e3 / n;
+        System.out.printf("%d documents; exact top-%d scan: %.1f us/query%n", n, TOP_N, exactMicros);
+
+        for (int[] configuration : CONFIGURATIONS) {
+            LshIndex index = new LshIndex(configuration[0], configuration[1]);
+            for (FrequencyTable table : tables) {
+                index.add(table.getMinHashSignature());
+            }
+            long candidates = 0;
+            long found = 0;
+            long relevant = 0;
+            long copiesFound = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int[] docs = index.candidates(tables.get(i).getMinHashSignature(), 0, i);
+                candidates += docs.length;
+                SparseTermVector[] subset = new SparseTermVector[docs.length];
+                for (int c = 0; c < docs.length; c++) {
+                    subset[c] = vectors[docs[c]];
+                }
+                Set<Integer> approximate = top(SimilarityMetricCalculator.similarities(vectors[i], subset), docs);
+                for (int doc : exact.get(i)) {
+                    relevant++;
+                    if (approximate.contains(doc)) {
+                        found++;
+                    }
+                }
+                int family = i / (COPIES + 1) * (COPIES + 1); // The page and its perturbed copies
+                for (int doc = family; doc <= family + COPIES; doc++) {
+                    if (doc != i && approximate.contains(doc)) {
+                        copiesFound++;
+                    }
+                }
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / n;
+            System.out.printf("bands=%d rows=%d: recall@%d %.3f, near-copy recall %.3f, "
+                    + "%.1f candidates/query, %.1f us/query (%.1fx)%n",
+                    configuration[0], configuration[1], TOP_N, (double) found / relevant,
+                    (double) copiesFound / ((long) n * COPIES),
+                    (double) candidates / n, micros, exactMicros / micros);
+        }
+    }
+
+    /**
+     * Returns the documents with the N highest similarities.
+     */
+    private static Set<Integer> top(double[] similarities, int[] docs)
+    {
+        InvertedIndex.TopHeap heap = new InvertedIndex.TopHeap(TOP_N);
+        for (int i = 0; i < similarities.length; i++) {
+            if (similarities[i] > 0) {
+                heap.offer(docs == null ? i : docs[i], (float) similarities[i]);
+            }
+        }
+        InvertedIndex.Matches matches = new InvertedIndex.Matches();
+        heap.drainDescending(matches);
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < matches.size(); i++) {
+            result.add(matches.docAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * Copies a table, dropping each word with the given probability and adding
+     * as many unrelated words.
+     */
+    private static FrequencyTable perturb(FrequencyTable table, double rate, Random random)
+    {
+        FrequencyTable copy = new FrequencyTable();
+        for (String word : table.keySet()) {
+            if (random.nextDouble() < rate) {
+                copy.addWord("noise" + random.nextInt(50_000), 1);
+            } else {
+                copy.addWord(word, table.getFrequency(word));
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,87 @@
+package websimilaritiespj3;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All-pairs cosine similarity benchmark over the bundled corpus in
+ * data/frequencyTableMap.ser, comparing the original keySet/getFrequency
+ * computation with the merge-join kernel and the one-vs-many batch API. Run
+ * from the project root after {@code mvn test-compile} with:
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes websimilaritiespj3.SimilarityBenchmark
+ * </pre>
+ */
+public class SimilarityBenchmark
+{
+    private static final int ROUNDS = 5;
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception
+    {
+        HT<String, FrequencyTable> corpus;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream("data/frequencyTableMap.ser"))) {
+            corpus = (HT<String, FrequencyTable>) in.readObject();
+        }
+        List<FrequencyTable> tables = new ArrayList<>();
+        for (HT.Node<String, FrequencyTable> entry : corpus.entrySet()) {
+            tables.add(entry.value);
+        }
+        int n = tables.size();
+        System.out.println(n + " documents, " + (long) n * n + " comparisons per pass");
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            double checksum = 0;
+            long start = System.nanoTime();
+            for (FrequencyTable a : tables) {
+                for (FrequencyTable b : tables) {
+                    checksum += legacyCosine(a, b);
+                }
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (FrequencyTable a : tables) {
+                for (FrequencyTable b : tables) {
+                    checksum -= SimilarityMetricCalculator.calculateCosineSimilarity(a, b);
+                }
+            }
+            long pairwiseNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (FrequencyTable a : tables) {
+                for (double similarity : SimilarityMetricCalculator.similarities(a, tables)) {
+                    checksum += similarity;
+                }
+            }
+            long batchNanos = System.nanoTime() - start;
+
+            System.out.printf("round %d: original %.1f ms, merge join %.1f ms (%.1fx), batch %.1f ms (%.1fx), checksum %.3f%n",
+                    round, legacyNanos / 1e6, pairwiseNanos / 1e6, (double) legacyNanos / pairwiseNanos,
+                    batchNanos / 1e6, (double) legacyNanos / batchNanos, checksum / n / n);
+        }
+    }
+
+    /**
+     * The cosine similarity as originally computed, minus the per-pair console
+     * output.
+     */
+    private static double legacyCosine(FrequencyTable table1, FrequencyTable table2)
+    {
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (String word : table1.keySet()) {
+            int freqA = table1.getFrequency(word);
+            normA += Math.pow(freqA, 2);
+            dotProduct += freqA * table2.getFrequency(word);
+        }
+        for (String word : table2.keySet()) {
+            normB += Math.pow(table2.getFrequency(word), 2);
+        }
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
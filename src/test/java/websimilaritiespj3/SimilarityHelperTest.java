@@ -0,0 +1,75 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the most-similar URL search of SimilarityHelper.
+ */
+public class SimilarityHelperTest
+{
+    /**
+     * A page with no words has a NaN similarity to every page; it must not
+     * take a place in the top URLs or keep better pages out of them.
+     */
+    @Test
+    public void emptyPageDoesNotBlockTheTopUrls()
+    {
+        List<String> urls = Arrays.asList("empty", "query", "close", "near", "far", "farther", "farthest");
+        List<FrequencyTable> tables = new ArrayList<>();
+        tables.add(new FrequencyTable());
+        tables.add(page("apple banana cherry date elderberry fig grape"));
+        tables.add(page("apple banana cherry date elderberry"));
+        tables.add(page("apple banana cherry kiwi lemon"));
+        tables.add(page("apple mango nectarine orange papaya"));
+        tables.add(page("quince raspberry strawberry apple"));
+        tables.add(page("tangerine ugli vanilla watermelon"));
+        HT<String, FrequencyTable> frequencyTables = new HT<>();
+        for (int i = 0; i < urls.size(); i++) {
+            frequencyTables.put(urls.get(i), tables.get(i));
+        }
+        SimilarityHelper.setClusters(frequencyTables, OnlineKMeansClustering.build(urls, tables, 1, 0));
+
+        assertEquals(Arrays.asList("close", "near", "farther", "far"),
+                SimilarityHelper.findMostSimilarUrls("query", 4));
+        assertEquals(Arrays.asList("close", "near"), SimilarityHelper.findMostSimilarUrls("query", 2));
+    }
+
+    /**
+     * A URL loaded after the clusters were set has no cluster and is not in
+     * the inverted index, so it is compared with every page; the empty page
+     * must not block that scan either.
+     */
+    @Test
+    public void emptyPageDoesNotBlockTheScanOfUnclusteredUrls()
+    {
+        List<String> urls = Arrays.asList("empty", "close", "near", "far");
+        List<FrequencyTable> tables = new ArrayList<>();
+        tables.add(new FrequencyTable());
+        tables.add(page("apple banana cherry date elderberry"));
+        tables.add(page("apple banana cherry kiwi lemon"));
+        tables.add(page("apple mango nectarine orange papaya"));
+        HT<String, FrequencyTable> frequencyTables = new HT<>();
+        for (int i = 0; i < urls.size(); i++) {
+            frequencyTables.put(urls.get(i), tables.get(i));
+        }
+        SimilarityHelper.setClusters(frequencyTables, OnlineKMeansClustering.build(urls, tables, 1, 0));
+        frequencyTables.put("query", page("apple banana cherry date elderberry fig grape"));
+
+        assertEquals(Arrays.asList("close", "near", "far"), SimilarityHelper.findMostSimilarUrls("query", 3));
+    }
+
+    private static FrequencyTable page(String words)
+    {
+        FrequencyTable table = new FrequencyTable();
+        for (String word : words.split(" ")) {
+            table.addWord(word, 1);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,74 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that Kruskal's and Borůvka's algorithms return the same spanning
+ * forest, since ties between equal weights are broken by edge number.
+ */
+public class SpanningForestTest
+{
+    @Test
+    public void kruskalAndBoruvkaReturnTheSameForest()
+    {
+        Random random = new Random(19);
+        for (int round = 0; round < 30; round++) {
+            SiteGraph graph = randomGraph(random, 1 + random.nextInt(round < 15 ? 50 : 2000));
+            for (boolean maximum : new boolean[] { true, false }) {
+                SpanningForest kruskal = SpanningForest.compute(graph, maximum, false);
+                SpanningForest boruvka = SpanningForest.compute(graph, maximum, true);
+
+                assertEquals(edges(kruskal, graph), edges(boruvka, graph));
+                assertEquals(kruskal.totalWeight(), boruvka.totalWeight(), 0.0);
+                assertEquals(kruskal.treeCount(), boruvka.treeCount());
+                assertEquals(graph.liveVertexCount() - kruskal.treeCount(), kruskal.edgeCount());
+            }
+        }
+    }
+
+    /**
+     * Builds a graph whose vertices fall into several groups with edges only
+     * inside a group, some vertices left alone, and weights drawn from a few
+     * values so that many edges tie.
+     */
+    private static SiteGraph randomGraph(Random random, int n)
+    {
+        SiteGraph graph = SiteGraph.build(new GraphData());
+        for (int v = 0; v < n; v++) {
+            graph.addVertex("v" + v);
+        }
+        int groups = 1 + random.nextInt(8);
+        int m = random.nextInt(3 * n + 1);
+        for (int e = 0; e < m; e++) {
+            int from = random.nextInt(n);
+            int to = random.nextInt(n);
+            if (from % groups == to % groups && from != to) {
+                graph.addEdge("v" + from, "v" + to, (1 + random.nextInt(4)) / 4.0);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the forest's edges, each with its ends in order, sorted.
+     */
+    private static List<String> edges(SpanningForest forest, SiteGraph graph)
+    {
+        List<String> edges = new ArrayList<>();
+        for (SiteEdge edge : forest.toGraphData(graph, Collections.<SiteRecord>emptyList()).getEdges()) {
+            String a = edge.getSite1();
+            String b = edge.getSite2();
+            edges.add(a.compareTo(b) < 0 ? a + " " + b + " " + edge.getSimilarityScore()
+                    : b + " " + a + " " + edge.getSimilarityScore());
+        }
+        Collections.sort(edges);
+        return edges;
+    }
+}
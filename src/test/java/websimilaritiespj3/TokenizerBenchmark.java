@@ -0,0 +1,73 @@
+package websimilaritiespj3;
+
+import java.util.Random;
+
+/**
+ * Throughput benchmark comparing WordTokenizer with the split/regex pipeline
+ * it replaced, reported in tokens per second. Run after {@code mvn test-compile}
+ * with:
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes websimilaritiespj3.TokenizerBenchmark
+ * </pre>
+ */
+public class TokenizerBenchmark
+{
+    private static final int WORDS = 2_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args)
+    {
+        String content = generateContent(new Random(42));
+        WordTokenizer tokenizer = new WordTokenizer();
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            FrequencyTable legacy = new FrequencyTable();
+            int legacyTokens = 0;
+            for (String word : content.split("\\s+")) {
+                String normalized = word.toLowerCase().replaceAll("[^a-zA-Z0-9]", "");
+                if (!normalized.isEmpty()) {
+                    legacy.addWord(normalized, 1);
+                    legacyTokens++;
+                }
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FrequencyTable streamed = new FrequencyTable();
+            int streamedTokens = tokenizer.tokenize(content, streamed);
+            long streamedNanos = System.nanoTime() - start;
+
+            System.out.printf("round %d: split/regex %,.0f tokens/sec, WordTokenizer %,.0f tokens/sec (%.1fx)%n",
+                    round, legacyTokens * 1e9 / legacyNanos, streamedTokens * 1e9 / streamedNanos,
+                    (double) legacyNanos / streamedNanos);
+        }
+    }
+
+    /**
+     * Builds text from a Zipf-like vocabulary with mixed case and punctuation,
+     * roughly resembling extracted page text.
+     */
+    private static String generateContent(Random random)
+    {
+        String[] vocabulary = new String[20_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(9);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        String[] punctuation = { "", "", "", ",", ".", ")", "'s" };
+        StringBuilder text = new StringBuilder(WORDS * 8);
+        for (int i = 0; i < WORDS; i++) {
+            String word = vocabulary[(int) (vocabulary.length * Math.pow(random.nextDouble(), 3))];
+            if (random.nextInt(10) == 0) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+            text.append(word).append(punctuation[random.nextInt(punctuation.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests UnionFind against a plain map from each URL to a label of its set,
+ * over random adds and unions, both on its own vertices and keyed by the
+ * vertex numbers of a site graph that also holds URLs that are not members.
+ */
+public class UnionFindTest
+{
+    @Test
+    public void matchesLabelsOverOwnVertices()
+    {
+        Random random = new Random(17);
+        for (int round = 0; round < 20; round++) {
+            int n = 1 + random.nextInt(300);
+            Set<String> vertices = new HashSet<>();
+            for (int v = 0; v < n / 2; v++) {
+                vertices.add("v" + v);
+            }
+            UnionFind unionFind = new UnionFind(vertices);
+            Labels expected = new Labels(vertices);
+            for (int step = 0; step < 3 * n; step++) {
+                // Half the URLs are not vertices, and unions with them are ignored
+                String url = "v" + random.nextInt(n);
+                String other = "v" + random.nextInt(n);
+                unionFind.union(url, other);
+                expected.union(url, other);
+            }
+            assertSame(expected, unionFind, n);
+        }
+    }
+
+    @Test
+    public void matchesLabelsOverSiteGraphVertices()
+    {
+        Random random = new Random(71);
+        for (int round = 0; round < 20; round++) {
+            int n = 1 + random.nextInt(300);
+            SiteGraph graph = SiteGraph.build(new GraphData());
+            UnionFind unionFind = new UnionFind(graph);
+            Labels expected = new Labels(new HashSet<String>());
+            for (int step = 0; step < 3 * n; step++) {
+                String url = "v" + random.nextInt(n);
+                switch (random.nextInt(3)) {
+                case 0: // A site
+                    unionFind.add(graph.addVertex(url));
+                    expected.add(url);
+                    break;
+                case 1: // A vertex that is only the end of an edge
+                    graph.addVertex(url);
+                    break;
+                default:
+                    String other = "v" + random.nextInt(n);
+                    unionFind.union(url, other);
+                    expected.union(url, other);
+                    break;
+                }
+            }
+            assertSame(expected, unionFind, n);
+        }
+    }
+
+    private static void assertSame(Labels expected, UnionFind unionFind, int n)
+    {
+        assertEquals(expected.countSets(), unionFind.countDisjointSets());
+        for (int a = 0; a < n; a++) {
+            String url = "v" + a;
+            if (!expected.contains(url)) {
+                assertNull(unionFind.find(url));
+                assertEquals(0, unionFind.componentSize(url));
+                continue;
+            }
+            assertEquals(expected.size(url), unionFind.componentSize(url));
+            assertEquals(url, expected.label(url), expected.label(unionFind.find(url)));
+            for (int b = a % 7; b < n; b += 7) {
+                String other = "v" + b;
+                boolean connected = expected.contains(other) && expected.label(url).equals(expected.label(other));
+                assertEquals(connected, unionFind.connected(url, other));
+            }
+        }
+    }
+
+    /**
+     * Sets kept as a label per URL, relabelled in full on every union.
+     */
+    private static final class Labels
+    {
+        private final Map<String, String> labels = new HashMap<>();
+
+        Labels(Set<String> vertices)
+        {
+            for (String vertex : vertices) {
+                add(vertex);
+            }
+        }
+
+        void add(String url)
+        {
+            if (!labels.containsKey(url)) {
+                labels.put(url, url);
+            }
+        }
+
+        boolean contains(String url)
+        {
+            return labels.containsKey(url);
+        }
+
+        String label(String url)
+        {
+            return labels.get(url);
+        }
+
+        void union(String a, String b)
+        {
+            String from = labels.get(a);
+            String to = labels.get(b);
+            if (from == null || to == null || from.equals(to)) {
+                return;
+            }
+            for (Map.Entry<String, String> entry : labels.entrySet()) {
+                if (entry.getValue().equals(from)) {
+                    entry.setValue(to);
+                }
+            }
+        }
+
+        int size(String url)
+        {
+            int size = 0;
+            for (String label : labels.values()) {
+                if (label.equals(labels.get(url))) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        int countSets()
+        {
+            return new HashSet<>(labels.values()).size();
+        }
+    }
+}
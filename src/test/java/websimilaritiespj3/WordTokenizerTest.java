@@ -0,0 +1,73 @@
+package websimilaritiespj3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that WordTokenizer produces the same words as the split/regex
+ * pipeline it replaced.
+ */
+public class WordTokenizerTest
+{
+    private static final String ALPHABET = "aZ09 \t\n\u000B\f\r.,'-_ İKéÉΣ😀";
+
+    private static Map<String, Integer> legacyTokens(String content)
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : content.split("\\s+")) {
+            String normalized = word.toLowerCase().replaceAll("[^a-zA-Z0-9]", "");
+            if (!normalized.isEmpty()) {
+                counts.merge(normalized, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static void assertSameWords(Map<String, Integer> expected, FrequencyTable table)
+    {
+        assertEquals(expected.keySet(), table.keySet());
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), (int) entry.getValue(), table.getFrequency(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void matchesLegacyTokensOnRandomText() throws IOException
+    {
+        Random random = new Random(365);
+        WordTokenizer tokenizer = new WordTokenizer();
+        for (int round = 0; round < 500; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(400);
+            for (int i = 0; i < length; i++) {
+                text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            String content = text.toString();
+            Map<String, Integer> expected = legacyTokens(content);
+
+            FrequencyTable fromString = new FrequencyTable();
+            tokenizer.tokenize(content, fromString);
+            assertSameWords(expected, fromString);
+
+            FrequencyTable fromReader = new FrequencyTable();
+            tokenizer.tokenize(new StringReader(content), fromReader);
+            assertSameWords(expected, fromReader);
+        }
+    }
+
+    @Test
+    public void normalizeMatchesLegacyForEveryChar()
+    {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            String word = "Ab" + (char) c + "9";
+            assertEquals(word.toLowerCase().replaceAll("[^a-zA-Z0-9]", ""), WordTokenizer.normalize(word));
+        }
+    }
+}